@@ -0,0 +1,119 @@
+package com.company;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The worlds and command scripts the benchmarks run against.
+ *
+ * The small world is the game's own data. The medium and large worlds are
+ * square grids of rooms made by the WorldGenerator and written to a
+ * temporary directory in the format of RoomData.csv and WorldMap.csv, so
+ * they are loaded the same way as the real world. The size of the large world can be set with the system
+ * property bench.large.rooms.
+ *
+ * @author  Kwinn Danforth
+ * @version 1.0.01
+ */
+public class BenchWorlds
+{
+    public static final int MEDIUM_ROOMS = 10000;
+    public static final int LARGE_ROOMS = Integer.getInteger("bench.large.rooms", 1000000);
+
+    private static final String SCRIPTS = "bench/scripts/";
+    private static final long SEED = 42;           // every run gets the same grid
+
+    /**
+     * @param size "small", "medium" or "large".
+     * @return A world of that size.
+     * @throws IOException if the world can not be written or loaded.
+     */
+    public static World load(String size) throws IOException
+    {
+        switch (size) {
+            case "small": return new World();
+            case "medium": return grid(MEDIUM_ROOMS);
+            case "large": return grid(LARGE_ROOMS);
+            default: throw new IllegalArgumentException("unknown world size " + size);
+        }
+    }
+
+    /**
+     * @param size "small", "medium" or "large".
+     * @return The recorded commands that are replayed in a world of that size.
+     * @throws IOException if the script can not be read.
+     */
+    public static List<String> script(String size) throws IOException
+    {
+        Path script = Paths.get(SCRIPTS + (size.equals("small") ? "small.txt" : "grid.txt"));
+        List<String> lines = new ArrayList<>();
+        for (String line : Files.readAllLines(script, StandardCharsets.UTF_8)) {
+            if (!line.trim().isEmpty()) {
+                lines.add(line);
+            }
+        }
+        return lines;
+    }
+
+    /**
+     * Write and load a square grid of rooms. Every room has exits to its
+     * neighbours, one room in seven has an item of its own and players
+     * start in the middle.
+     * @param rooms The number of rooms.
+     * @return The world.
+     * @throws IOException if the world can not be written or loaded.
+     */
+    public static World grid(int rooms) throws IOException
+    {
+        Path directory = Files.createTempDirectory("hogwarts-bench");
+        writeGrid(directory, rooms);
+        Path roomData = directory.resolve("RoomData.csv");
+        Path worldMap = directory.resolve("WorldMap.csv");
+        World world = new World(roomData, worldMap);
+        Files.delete(roomData);
+        Files.delete(worldMap);
+        Files.delete(directory);
+        return world;
+    }
+
+    /**
+     * Write the data files of the grid that grid(rooms) loads: a world made
+     * by the WorldGenerator with every exit of the grid and no transporters.
+     * @param directory Where RoomData.csv and WorldMap.csv are written.
+     * @param rooms The number of rooms.
+     * @throws IOException if the files can not be written.
+     */
+    public static void writeGrid(Path directory, int rooms) throws IOException
+    {
+        WorldGenerator generator = new WorldGenerator(rooms, SEED);
+        generator.setBranching(4);
+        generator.setTransporterDensity(0);
+        generator.write(directory);
+    }
+
+    /**
+     * A game output that throws the text away, counting how much there was.
+     */
+    public static class Sink implements GameOutput
+    {
+        private long characters;
+
+        public void write(CharSequence text)
+        {
+            characters += text.length();
+        }
+
+        /**
+         * @return How many characters were written.
+         */
+        public long getCharacters()
+        {
+            return characters;
+        }
+    }
+}
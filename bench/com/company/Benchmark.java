@@ -0,0 +1,189 @@
+package com.company;
+
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * A small benchmark harness for the game's hot paths.
+ *
+ * A benchmark repeats one operation. The harness first runs it for a while
+ * to warm up, then times it in batches of a few operations: the time of each
+ * batch divided by its size is one latency sample. The result holds the
+ * throughput, the latency percentiles and how many bytes the operation
+ * allocates, measured with the JVM's per-thread allocation counter (the same
+ * numbers JMH's gc profiler reports), and can be written as JSON.
+ *
+ * @author  Kwinn Danforth
+ * @version 1.0.01
+ */
+public abstract class Benchmark
+{
+    private static final int MAX_SAMPLES = 1 << 20;
+
+    private final String name;
+    private final String world;
+    private final int batchSize;
+
+    /**
+     * Create a benchmark.
+     * @param name What is measured, for example "parser.getCommand".
+     * @param world The world it runs against, for example "small".
+     * @param batchSize How many operations are timed together; larger for
+     *                  operations that take only a few nanoseconds.
+     */
+    protected Benchmark(String name, String world, int batchSize)
+    {
+        this.name = name;
+        this.world = world;
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Run the operation once.
+     * @param i How many operations ran before this one.
+     * @return Anything computed by the operation, so the JIT can not drop it.
+     */
+    protected abstract int operation(long i);
+
+    /**
+     * @return The name of this benchmark.
+     */
+    public String getName()
+    {
+        return name;
+    }
+
+    /**
+     * Warm up and then measure the operation.
+     * @param warmupMillis How long to warm up.
+     * @param measureMillis How long to measure.
+     * @return The measurements.
+     */
+    public Result run(long warmupMillis, long measureMillis)
+    {
+        long operations = 0;
+        int blackhole = 0;
+        long warmupEnd = System.nanoTime() + warmupMillis * 1000000L;
+        while (System.nanoTime() < warmupEnd) {
+            for (int b = 0; b < batchSize; b++) {
+                blackhole += operation(operations++);
+            }
+        }
+
+        double[] samples = new double[MAX_SAMPLES];
+        int sampleCount = 0;
+        long measured = 0;
+        long allocatedBefore = allocatedBytes();
+        long started = System.nanoTime();
+        long end = started + measureMillis * 1000000L;
+        long now = started;
+        while (now < end && sampleCount < MAX_SAMPLES) {
+            long batchStarted = now;
+            for (int b = 0; b < batchSize; b++) {
+                blackhole += operation(operations++);
+            }
+            now = System.nanoTime();
+            samples[sampleCount++] = (double) (now - batchStarted) / batchSize;
+            measured += batchSize;
+        }
+        long nanos = now - started;
+        long allocated = allocatedBytes() - allocatedBefore;
+
+        Arrays.sort(samples, 0, sampleCount);
+        return new Result(name, world, measured, nanos, allocated, samples, sampleCount, blackhole);
+    }
+
+    private static long allocatedBytes()
+    {
+        java.lang.management.ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        if (threads instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) threads).getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return 0;
+    }
+
+    /**
+     * The measurements of one benchmark run.
+     */
+    public static class Result
+    {
+        private final String name;
+        private final String world;
+        private final long operations;
+        private final long nanos;
+        private final long allocatedBytes;
+        private final double p50, p90, p99, p999, max;
+        private final int blackhole;
+
+        private Result(String name, String world, long operations, long nanos, long allocatedBytes,
+                       double[] sortedSamples, int samples, int blackhole)
+        {
+            this.name = name;
+            this.world = world;
+            this.operations = operations;
+            this.nanos = nanos;
+            this.allocatedBytes = allocatedBytes;
+            this.blackhole = blackhole;
+            p50 = percentile(sortedSamples, samples, 0.50);
+            p90 = percentile(sortedSamples, samples, 0.90);
+            p99 = percentile(sortedSamples, samples, 0.99);
+            p999 = percentile(sortedSamples, samples, 0.999);
+            max = samples == 0 ? 0 : sortedSamples[samples - 1];
+        }
+
+        private static double percentile(double[] sorted, int samples, double fraction)
+        {
+            if (samples == 0) {
+                return 0;
+            }
+            return sorted[Math.min(samples - 1, (int) Math.ceil(fraction * samples) - 1)];
+        }
+
+        /**
+         * @return Operations per second.
+         */
+        public double getThroughput()
+        {
+            return operations * 1e9 / nanos;
+        }
+
+        /**
+         * @return The median time of one operation, in nanoseconds.
+         */
+        public double getMedianNanos()
+        {
+            return p50;
+        }
+
+        /**
+         * @return Bytes allocated by one operation.
+         */
+        public double getBytesPerOperation()
+        {
+            return (double) allocatedBytes / operations;
+        }
+
+        /**
+         * @return The result as a JSON object on one line.
+         */
+        public String toJson()
+        {
+            return String.format(Locale.ROOT,
+                    "{\"benchmark\":\"%s\",\"world\":\"%s\",\"operations\":%d,\"throughputOpsPerSec\":%.1f,"
+                    + "\"latencyNanos\":{\"p50\":%.1f,\"p90\":%.1f,\"p99\":%.1f,\"p99.9\":%.1f,\"max\":%.1f},"
+                    + "\"allocBytesPerOp\":%.1f,\"allocRateMBPerSec\":%.1f}",
+                    name, world, operations, getThroughput(), p50, p90, p99, p999, max,
+                    getBytesPerOperation(), allocatedBytes * 1e3 / nanos);
+        }
+
+        /**
+         * @return The result as one readable line.
+         */
+        public String toString()
+        {
+            return String.format(Locale.ROOT, "%-32s %-7s %,14.0f ops/s  p50 %9.1f ns  p99 %9.1f ns  %8.1f B/op%s",
+                    name, world, getThroughput(), p50, p99, getBytesPerOperation(), blackhole == 42 ? " " : "");
+        }
+    }
+}
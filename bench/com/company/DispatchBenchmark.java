@@ -0,0 +1,106 @@
+package com.company;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Compares the two ways of finding what a command does: the switch over
+ * the command word that Game.processCommand used to have, where every case
+ * calls its own command directly, and the CommandRegistry, an array of
+ * handlers indexed by the command word's ordinal with one interface call.
+ * Both run the same standard handlers on the same mix of commands, so the
+ * difference is the dispatch alone; game.processCommand is the registry
+ * with everything around it. The frame each command prints is written to
+ * a sink after every command.
+ *
+ *     java -cp out/production/bench:out/production/untitled com.company.DispatchBenchmark
+ *
+ * @author  Kwinn Danforth
+ * @version 1.0.01
+ */
+public class DispatchBenchmark
+{
+    private static final long WARMUP_MILLIS = Long.getLong("bench.warmup", 1000);
+    private static final long MEASURE_MILLIS = Long.getLong("bench.measure", 2000);
+    private static final String[] LINES = {"look", "go east", "inventory", "go west", "dance", "help", "quit now"};
+
+    public static void main(String[] args) throws IOException
+    {
+        World world = BenchWorlds.load("small");
+        final Command[] commands = new Command[LINES.length];
+        for (int i = 0; i < LINES.length; i++) {
+            commands[i] = Parser.parse(LINES[i]);
+        }
+        final Game game = new Game(world, new BenchWorlds.Sink());
+        game.setHeadless(true);
+        final CommandRegistry registry = CommandRegistry.getDefault();
+        final SwitchDispatch dispatch = new SwitchDispatch();
+
+        List<Benchmark> benchmarks = new ArrayList<>();
+        benchmarks.add(new Benchmark("dispatch.switch", "small", 16) {
+            protected int operation(long i)
+            {
+                boolean quit = dispatch.execute(game, commands[(int) (i % commands.length)]);
+                game.flush();
+                return quit ? 1 : 0;
+            }
+        });
+        benchmarks.add(new Benchmark("dispatch.registry", "small", 16) {
+            protected int operation(long i)
+            {
+                Command command = commands[(int) (i % commands.length)];
+                boolean quit = registry.get(command.getCommandWord()).execute(game, command);
+                game.flush();
+                return quit ? 1 : 0;
+            }
+        });
+        benchmarks.add(new Benchmark("game.processCommand", "small", 16) {
+            protected int operation(long i)
+            {
+                boolean quit = game.processCommand(commands[(int) (i % commands.length)]);
+                game.flush();
+                return quit ? 1 : 0;
+            }
+        });
+
+        List<String> json = new ArrayList<>();
+        for (Benchmark benchmark : benchmarks) {
+            Benchmark.Result result = benchmark.run(WARMUP_MILLIS, MEASURE_MILLIS);
+            System.out.println(result);
+            json.add(result.toJson());
+        }
+        GameBenchmarks.writeResults(json);
+    }
+
+    /**
+     * The switch processCommand had, with a call site of its own for each command.
+     */
+    private static class SwitchDispatch
+    {
+        private final StandardCommands.Unknown unknown = new StandardCommands.Unknown();
+        private final StandardCommands.Help help = new StandardCommands.Help();
+        private final StandardCommands.Go go = new StandardCommands.Go();
+        private final StandardCommands.Look look = new StandardCommands.Look();
+        private final StandardCommands.ShowInventory inventory = new StandardCommands.ShowInventory();
+        private final StandardCommands.Quit quit = new StandardCommands.Quit();
+
+        boolean execute(Game game, Command command)
+        {
+            switch (command.getCommandWord()) {
+                case HELP:
+                    return help.execute(game, command);
+                case GO:
+                    return go.execute(game, command);
+                case LOOK:
+                    return look.execute(game, command);
+                case INVENTORY:
+                    return inventory.execute(game, command);
+                case QUIT:
+                    return quit.execute(game, command);
+                default:
+                    return unknown.execute(game, command);
+            }
+        }
+    }
+}
@@ -0,0 +1,150 @@
+package com.company;
+
+import java.util.HashMap;
+
+/**
+ * Compares the compact RoomGraph with the per-room HashMap of exits it
+ * replaced: the heap each takes for a generated grid of rooms, and how
+ * long it takes to look up an exit.
+ *
+ * Run with the number of rooms as the only argument (default 1000000):
+ *     java -Xmx2g -cp out/production/bench:out/production/untitled com.company.ExitLookupBenchmark 1000000
+ *
+ * @author  Kwinn Danforth
+ * @version 1.0.01
+ */
+public class ExitLookupBenchmark
+{
+    private static final String[] DIRECTIONS = {"north", "east", "south", "west"};
+    private static final int LOOKUPS = 20000000;
+
+    public static void main(String[] args)
+    {
+        int rooms = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+        int width = (int) Math.ceil(Math.sqrt(rooms));
+
+        long before = usedHeap();
+        HashMapRoom[] mapRooms = buildHashMapRooms(rooms, width);
+        long mapBytes = usedHeap() - before;
+
+        before = usedHeap();
+        RoomGraph graph = buildGraph(rooms, width);
+        long graphBytes = usedHeap() - before;
+
+        System.out.printf("%d rooms%n", rooms);
+        System.out.printf("HashMap exits: %,d bytes (%.1f per room)%n", mapBytes, (double) mapBytes / rooms);
+        System.out.printf("RoomGraph:     %,d bytes (%.1f per room)%n", graphBytes, (double) graphBytes / rooms);
+
+        for (int round = 0; round < 3; round++) {   // the first rounds warm up
+            long started = System.nanoTime();
+            int at = walkHashMap(mapRooms, rooms);
+            long mapNanos = System.nanoTime() - started;
+            started = System.nanoTime();
+            int graphAt = walkGraph(graph, rooms);
+            long graphNanos = System.nanoTime() - started;
+            System.out.printf("round %d: HashMap %.2f ns/lookup, RoomGraph %.2f ns/lookup (%d %d)%n", round,
+                    (double) mapNanos / LOOKUPS, (double) graphNanos / LOOKUPS, at, graphAt);
+        }
+    }
+
+    /**
+     * The way rooms kept their exits before RoomGraph.
+     */
+    private static class HashMapRoom
+    {
+        private final HashMap<String, HashMapRoom> exits = new HashMap<>();
+        private final int number;
+
+        HashMapRoom(int number)
+        {
+            this.number = number;
+        }
+    }
+
+    private static HashMapRoom[] buildHashMapRooms(int rooms, int width)
+    {
+        HashMapRoom[] built = new HashMapRoom[rooms];
+        for (int r = 0; r < rooms; r++) {
+            built[r] = new HashMapRoom(r);
+        }
+        for (int r = 0; r < rooms; r++) {
+            for (int d = 0; d < DIRECTIONS.length; d++) {
+                int neighbor = neighbor(r, d, width, rooms);
+                if (neighbor >= 0) {
+                    built[r].exits.put(DIRECTIONS[d], built[neighbor]);
+                }
+            }
+        }
+        return built;
+    }
+
+    private static RoomGraph buildGraph(int rooms, int width)
+    {
+        Room[] built = new Room[rooms];
+        for (int r = 0; r < rooms; r++) {
+            built[r] = new Room(r, "Room " + r, "in a room.", "no one", "no item");
+        }
+        int[] from = new int[rooms * 4];
+        int[] to = new int[rooms * 4];
+        byte[] directions = new byte[rooms * 4];
+        int exits = 0;
+        for (int r = 0; r < rooms; r++) {
+            for (int d = 0; d < DIRECTIONS.length; d++) {
+                int neighbor = neighbor(r, d, width, rooms);
+                if (neighbor >= 0) {
+                    from[exits] = r;
+                    to[exits] = neighbor;
+                    directions[exits] = (byte) Direction.fromString(DIRECTIONS[d]).ordinal();
+                    exits++;
+                }
+            }
+        }
+        return new RoomGraph(built, from, directions, to, exits);
+    }
+
+    // the room next to room r on the grid, or -1 at the edge
+    private static int neighbor(int r, int direction, int width, int rooms)
+    {
+        int neighbor;
+        switch (direction) {
+            case 0: neighbor = r - width; break;
+            case 1: neighbor = r % width == width - 1 ? -1 : r + 1; break;
+            case 2: neighbor = r + width; break;
+            default: neighbor = r % width == 0 ? -1 : r - 1; break;
+        }
+        return neighbor >= 0 && neighbor < rooms ? neighbor : -1;
+    }
+
+    private static int walkHashMap(HashMapRoom[] rooms, int count)
+    {
+        HashMapRoom at = rooms[count / 2];
+        for (int i = 0; i < LOOKUPS; i++) {
+            HashMapRoom next = at.exits.get(DIRECTIONS[i & 3]);
+            if (next != null) {
+                at = next;
+            }
+        }
+        return at.number;
+    }
+
+    private static int walkGraph(RoomGraph graph, int count)
+    {
+        Room at = graph.getRoom(count / 2);
+        for (int i = 0; i < LOOKUPS; i++) {
+            Room next = at.getExit(DIRECTIONS[i & 3]);
+            if (next != null) {
+                at = next;
+            }
+        }
+        return at.getNumber();
+    }
+
+    private static long usedHeap()
+    {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
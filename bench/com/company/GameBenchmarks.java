@@ -0,0 +1,147 @@
+package com.company;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Runs the benchmarks of the game's hot paths against the small, medium and
+ * large worlds, replaying the recorded command scripts in bench/scripts:
+ *
+ *     parser.getCommand             reading and parsing a command line
+ *     commandWordz.getCommandWord   looking up the command word
+ *     game.processCommand           executing a parsed command and writing its frame
+ *     room.getLongDescription       rendering a room
+ *
+ * Every result is printed and all of them are written as a JSON array to
+ * bench/results/&lt;date&gt;.json. Arguments limit the run to the benchmarks
+ * whose name contains one of them, for example "parser". Run it from the
+ * project directory, after building both modules:
+ *
+ *     java -cp out/production/bench:out/production/untitled com.company.GameBenchmarks
+ *
+ * @author  Kwinn Danforth
+ * @version 1.0.01
+ */
+public class GameBenchmarks
+{
+    private static final String[] WORLDS = {"small", "medium", "large"};
+    private static final long WARMUP_MILLIS = Long.getLong("bench.warmup", 1000);
+    private static final long MEASURE_MILLIS = Long.getLong("bench.measure", 2000);
+
+    public static void main(String[] args) throws IOException
+    {
+        List<String> json = new ArrayList<>();
+        for (String size : WORLDS) {
+            World world = BenchWorlds.load(size);
+            List<String> script = BenchWorlds.script(size);
+            for (Benchmark benchmark : benchmarks(size, world, script)) {
+                if (selected(benchmark.getName(), args)) {
+                    Benchmark.Result result = benchmark.run(WARMUP_MILLIS, MEASURE_MILLIS);
+                    System.out.println(result);
+                    json.add(result.toJson());
+                }
+            }
+        }
+        writeResults(json);
+    }
+
+    /**
+     * @return The benchmarks for one world.
+     */
+    static List<Benchmark> benchmarks(String size, final World world, final List<String> script)
+    {
+        final String[] lines = script.toArray(new String[script.size()]);
+        final Command[] commands = new Command[lines.length];
+        final String[] firstWords = new String[lines.length];
+        for (int i = 0; i < lines.length; i++) {
+            commands[i] = Parser.parse(lines[i]);
+            firstWords[i] = lines[i].trim().split("\\s+")[0];
+        }
+        List<Benchmark> benchmarks = new ArrayList<>();
+
+        benchmarks.add(new Benchmark("parser.getCommand", size, 16) {
+            private final Parser parser = new Parser(new GameInput() {
+                private int next;
+
+                public String readLine()
+                {
+                    String line = lines[next];
+                    next = (next + 1) % lines.length;
+                    return line;
+                }
+            }, null);
+
+            protected int operation(long i)
+            {
+                return parser.getCommand().getCommandWord().ordinal();
+            }
+        });
+
+        benchmarks.add(new Benchmark("commandWordz.getCommandWord", size, 64) {
+            private final CommandWordz commandWords = new CommandWordz();
+
+            protected int operation(long i)
+            {
+                return commandWords.getCommandWord(firstWords[(int) (i % firstWords.length)]).ordinal();
+            }
+        });
+
+        benchmarks.add(new Benchmark("game.processCommand", size, 4) {
+            private final BenchWorlds.Sink sink = new BenchWorlds.Sink();
+            private final Game game = new Game(world, sink);
+
+            protected int operation(long i)
+            {
+                return game.handleCommand(commands[(int) (i % commands.length)]) ? 1 : 0;
+            }
+        });
+
+        benchmarks.add(new Benchmark("room.getLongDescription", size, 16) {
+            protected int operation(long i)
+            {
+                Room room = world.getRoom((int) (i % world.getRoomCount()));
+                return room == null ? 0 : room.getLongDescription().length();
+            }
+        });
+        return benchmarks;
+    }
+
+    private static boolean selected(String name, String[] filters)
+    {
+        if (filters.length == 0) {
+            return true;
+        }
+        for (String filter : filters) {
+            if (name.contains(filter)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Write the results as a JSON array to bench/results.
+     * @param json The results, each a JSON object.
+     * @throws IOException if the file can not be written.
+     */
+    static void writeResults(List<String> json) throws IOException
+    {
+        Path results = Paths.get("bench/results");
+        Files.createDirectories(results);
+        Path file = results.resolve(new SimpleDateFormat("yyyyMMdd-HHmmss").format(new Date()) + ".json");
+        StringBuilder array = new StringBuilder("[\n");
+        for (int i = 0; i < json.size(); i++) {
+            array.append("  ").append(json.get(i)).append(i + 1 < json.size() ? ",\n" : "\n");
+        }
+        array.append("]\n");
+        Files.write(file, array.toString().getBytes(StandardCharsets.UTF_8));
+        System.out.println("Results written to " + file);
+    }
+}
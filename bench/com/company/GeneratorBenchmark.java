@@ -0,0 +1,88 @@
+package com.company;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Measures the WorldGenerator: a world of 1,000,000 rooms is written with
+ * 1, 2, 4 ... threads, up to the number of processors, and then loaded,
+ * and the rooms written and loaded per second are printed. Every thread
+ * count must write exactly the same files, and the loaded world must have
+ * every room.
+ *
+ *     java -cp out/production/bench:out/production/untitled com.company.GeneratorBenchmark [rooms]
+ *
+ * @author  Kwinn Danforth
+ * @version 1.0.01
+ */
+public class GeneratorBenchmark
+{
+    public static void main(String[] args) throws IOException
+    {
+        int rooms = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+        int processors = Runtime.getRuntime().availableProcessors();
+        Path directory = Files.createTempDirectory("hogwarts-generated");
+        Path roomData = directory.resolve("RoomData.csv");
+        Path worldMap = directory.resolve("WorldMap.csv");
+        List<String> json = new ArrayList<>();
+
+        new WorldGenerator(Math.min(rooms, 100000), 7).write(directory);     // warm up
+        long expected = 0;
+        for (int threads = 1; threads <= Math.max(4, processors); threads *= 2) {
+            WorldGenerator generator = new WorldGenerator(rooms, 7);
+            generator.setThreads(threads);
+            long started = System.nanoTime();
+            generator.write(directory);
+            double seconds = (System.nanoTime() - started) / 1e9;
+            long bytes = Files.size(roomData) + Files.size(worldMap);
+            System.out.printf("%2d threads: %,d rooms in %.2f s, %,.0f rooms/s, %,d bytes%n",
+                    threads, rooms, seconds, rooms / seconds, bytes);
+            json.add(String.format("{\"benchmark\":\"world.generate\",\"rooms\":%d,\"threads\":%d,"
+                    + "\"processors\":%d,\"seconds\":%.3f,\"roomsPerSecond\":%.1f,\"bytes\":%d}",
+                    rooms, threads, processors, seconds, rooms / seconds, bytes));
+
+            long hash = hash(roomData) * 31 + hash(worldMap);
+            if (threads == 1) {
+                expected = hash;
+            } else if (hash != expected) {
+                throw new IllegalStateException(threads + " threads wrote a different world");
+            }
+        }
+
+        long started = System.nanoTime();
+        World world = new World(roomData, worldMap);
+        double seconds = (System.nanoTime() - started) / 1e9;
+        System.out.printf("loaded %,d rooms in %.2f s, %,.0f rooms/s%n", world.getRoomCount(), seconds, rooms / seconds);
+        json.add(String.format("{\"benchmark\":\"world.load\",\"world\":\"generated\",\"rooms\":%d,"
+                + "\"seconds\":%.3f,\"roomsPerSecond\":%.1f}", rooms, seconds, rooms / seconds));
+        if (world.getRoomCount() != rooms) {
+            throw new IllegalStateException("loaded " + world.getRoomCount() + " of " + rooms + " rooms");
+        }
+        Files.delete(roomData);
+        Files.delete(worldMap);
+        Files.delete(directory);
+        GameBenchmarks.writeResults(json);
+    }
+
+    private static long hash(Path file) throws IOException
+    {
+        long hash = 0;
+        ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            while (channel.read(buffer) > 0) {
+                buffer.flip();
+                while (buffer.hasRemaining()) {
+                    hash = hash * 31 + buffer.get();
+                }
+                buffer.clear();
+            }
+        }
+        return hash;
+    }
+}
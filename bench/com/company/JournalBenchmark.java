@@ -0,0 +1,139 @@
+package com.company;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Measures the journal and checks that recovery works.
+ *
+ * First a command that moves the player is timed without a journal and with
+ * one, so the difference is what recording an event adds to a command, and
+ * the bytes per event and the forces to disk are reported. Then a server
+ * with a journal runs many sessions, writes a checkpoint halfway and
+ * "crashes" without closing anything; a second server on a freshly loaded
+ * world recovers from the checkpoint and the journal, and every session
+ * must be back in the same room with the same items.
+ *
+ *     java -cp out/production/bench:out/production/untitled com.company.JournalBenchmark [sessions]
+ *
+ * @author  Kwinn Danforth
+ * @version 1.0.01
+ */
+public class JournalBenchmark
+{
+    private static final long WARMUP_MILLIS = Long.getLong("bench.warmup", 1000);
+    private static final long MEASURE_MILLIS = Long.getLong("bench.measure", 2000);
+    private static final int ROOMS = 10000;
+    private static final int SEGMENT_SIZE = 16 * 1024 * 1024;
+    private static final String[] MOVES = {"go north", "go east", "go south", "go west", "pickup", "drop chocolate frog 0"};
+
+    public static void main(String[] args) throws IOException
+    {
+        int sessions = args.length > 0 ? Integer.parseInt(args[0]) : 10000;
+        Path directory = Files.createTempDirectory("hogwarts-journal");
+        List<String> json = new ArrayList<>();
+
+        World world = BenchWorlds.grid(ROOMS);
+        final Command east = Parser.parse("go east");
+        final Command west = Parser.parse("go west");
+        final Game plain = new Game(world, new BenchWorlds.Sink());
+        final Game recorded = new Game(world, new BenchWorlds.Sink());
+        plain.setHeadless(true);
+        recorded.setHeadless(true);
+        Journal journal = new Journal(directory.resolve("timing"), SEGMENT_SIZE, 4096, 10);
+        recorded.setJournal(journal, 1);
+        for (Benchmark benchmark : Arrays.asList(
+                moves("game.move", plain, east, west),
+                moves("game.move.journal", recorded, east, west))) {
+            Benchmark.Result result = benchmark.run(WARMUP_MILLIS, MEASURE_MILLIS);
+            System.out.println(result);
+            json.add(result.toJson());
+        }
+        System.out.printf("%,d events, %.1f bytes per event, %,d forces to disk%n", journal.getEventCount(),
+                (double) journal.getByteCount() / journal.getEventCount(), journal.getSyncCount());
+        journal.close();
+
+        // a server that crashes after a checkpoint and some more play
+        Path checkpoint = directory.resolve("checkpoint");
+        Path journalDirectory = directory.resolve("journal");
+        GameServer server = new GameServer(world, 2, sessions);
+        Journal serverJournal = new Journal(journalDirectory, SEGMENT_SIZE, 4096, 10);
+        server.setJournal(serverJournal);
+        List<GameServer.Session> opened = new ArrayList<>();
+        Random random = new Random(1);
+        for (int s = 0; s < sessions; s++) {
+            opened.add(server.open(new BenchWorlds.Sink()));
+        }
+        play(opened, random, 20);
+        server.checkpoint(checkpoint);
+        play(opened, random, 20);
+        serverJournal.sync();   // what a crash keeps: everything forced to disk
+
+        World reloaded = BenchWorlds.grid(ROOMS);
+        GameServer recovering = new GameServer(reloaded, 2, sessions);
+        long started = System.nanoTime();
+        int recovered = recovering.recover(checkpoint, journalDirectory);
+        long nanos = System.nanoTime() - started;
+        int wrong = 0;
+        for (GameServer.Session session : opened) {
+            SessionState before = session.getGame().getState();
+            GameServer.Session resumed = recovering.resume(session.getId(), new BenchWorlds.Sink());
+            SessionState after = resumed == null ? null : resumed.getGame().getState();
+            if (after == null || after.getRoom() != before.getRoom()
+                    || !Arrays.equals(after.getItems(), before.getItems())) {
+                wrong++;
+            }
+        }
+        System.out.printf("recovered %d sessions in %.1f ms, %d different from before the crash%n",
+                recovered, nanos / 1e6, wrong);
+        server.shutdown();
+        recovering.shutdown();
+        serverJournal.close();
+        delete(directory);
+        GameBenchmarks.writeResults(json);
+        if (wrong != 0) {
+            System.out.println("FAILED");
+            System.exit(1);
+        }
+    }
+
+    private static Benchmark moves(String name, final Game game, final Command east, final Command west)
+    {
+        return new Benchmark(name, "grid", 4) {
+            protected int operation(long i)
+            {
+                game.handleCommand((i & 1) == 0 ? east : west);
+                return game.getCurrentRoom().getNumber();
+            }
+        };
+    }
+
+    private static void play(List<GameServer.Session> sessions, Random random, int moves)
+    {
+        for (int m = 0; m < moves; m++) {
+            for (GameServer.Session session : sessions) {
+                session.getGame().handleLine(MOVES[random.nextInt(MOVES.length)]);
+            }
+        }
+    }
+
+    private static void delete(Path directory) throws IOException
+    {
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+            for (Path file : files) {
+                if (Files.isDirectory(file)) {
+                    delete(file);
+                } else {
+                    Files.delete(file);
+                }
+            }
+        }
+        Files.delete(directory);
+    }
+}
@@ -0,0 +1,143 @@
+package com.company;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Measures worlds whose rooms are read when they are needed.
+ *
+ * For grids of growing size it times three ways to start: reading every
+ * room, opening the rooms for the first time (which reads the room data
+ * once to write the sidecar index) and opening them again with the sidecar.
+ * The exits are read every time, so what the sidecar saves is the rooms.
+ * Then players walk the largest grid, once with every room in memory and
+ * once with a small room cache, and the cache's hit rate is reported.
+ * Last, rooms are looked up by name in both worlds, which in the one with
+ * the cache goes through the name hashes of the sidecar.
+ *
+ *     java -cp out/production/bench:out/production/untitled com.company.LazyWorldBenchmark [rooms...]
+ *
+ * @author  Kwinn Danforth
+ * @version 1.0.01
+ */
+public class LazyWorldBenchmark
+{
+    private static final long WARMUP_MILLIS = Long.getLong("bench.warmup", 1000);
+    private static final long MEASURE_MILLIS = Long.getLong("bench.measure", 2000);
+    private static final int CACHE_SIZE = 4096;
+    private static final String[] MOVES = {"go north", "go east", "go south", "go west", "pickup"};
+
+    public static void main(String[] args) throws IOException
+    {
+        int[] sizes = {10000, 100000, 1000000};
+        if (args.length > 0) {
+            sizes = new int[args.length];
+            for (int i = 0; i < args.length; i++) {
+                sizes[i] = Integer.parseInt(args[i]);
+            }
+        }
+        List<String> json = new ArrayList<>();
+        Path directory = null;
+        for (int rooms : sizes) {
+            if (directory != null) {
+                delete(directory);
+            }
+            directory = Files.createTempDirectory("hogwarts-lazy");
+            BenchWorlds.writeGrid(directory, rooms);
+            Path roomData = directory.resolve("RoomData.csv");
+            Path worldMap = directory.resolve("WorldMap.csv");
+
+            long started = System.nanoTime();
+            new World(roomData, worldMap);
+            long eagerNanos = System.nanoTime() - started;
+            started = System.nanoTime();
+            new World(roomData, worldMap, CACHE_SIZE);
+            long indexNanos = System.nanoTime() - started;
+            started = System.nanoTime();
+            new World(roomData, worldMap, CACHE_SIZE);
+            long sidecarNanos = System.nanoTime() - started;
+            System.out.printf("%,d rooms: all rooms %.1f ms, first open %.1f ms, with sidecar %.1f ms (%,d bytes)%n",
+                    rooms, eagerNanos / 1e6, indexNanos / 1e6, sidecarNanos / 1e6,
+                    Files.size(RoomStore.sidecar(roomData)));
+            json.add(String.format("{\"benchmark\":\"world.open\",\"world\":\"grid\",\"rooms\":%d,"
+                    + "\"eagerMillis\":%.3f,\"indexMillis\":%.3f,\"sidecarMillis\":%.3f}",
+                    rooms, eagerNanos / 1e6, indexNanos / 1e6, sidecarNanos / 1e6));
+        }
+
+        Path roomData = directory.resolve("RoomData.csv");
+        Path worldMap = directory.resolve("WorldMap.csv");
+        World eager = new World(roomData, worldMap);
+        World lazy = new World(roomData, worldMap, CACHE_SIZE);
+        for (Benchmark benchmark : new Benchmark[] {walk("game.walk", eager), walk("game.walk.lazy", lazy),
+                find("world.findRoom", eager), find("world.findRoom.lazy", lazy)}) {
+            Benchmark.Result result = benchmark.run(WARMUP_MILLIS, MEASURE_MILLIS);
+            System.out.println(result);
+            json.add(result.toJson());
+        }
+        RoomStore store = lazy.getGraph().getStore();
+        long hits = store.getHitCount();
+        long misses = store.getMissCount();
+        System.out.printf("room cache of %d: %,d hits, %,d reads, %.1f%% hit rate%n",
+                CACHE_SIZE, hits, misses, 100.0 * hits / (hits + misses));
+        store.close();
+        delete(directory);
+        GameBenchmarks.writeResults(json);
+    }
+
+    /**
+     * Many players walking at random, one move each in turn.
+     */
+    private static Benchmark walk(String name, World world)
+    {
+        final Game[] players = new Game[64];
+        for (int p = 0; p < players.length; p++) {
+            players[p] = new Game(world, new BenchWorlds.Sink());
+            players[p].setHeadless(true);
+            players[p].setSeed(p);
+            players[p].start();
+        }
+        return new Benchmark(name, "grid", 16) {
+            private long moves = 0x9E3779B97F4A7C15L;
+
+            protected int operation(long i)
+            {
+                moves = moves * 6364136223846793005L + 1442695040888963407L;
+                Game player = players[(int) (i % players.length)];
+                player.handleLine(MOVES[(int) ((moves >>> 33) % MOVES.length)]);
+                player.flush();
+                return player.getCurrentRoom().getNumber();
+            }
+        };
+    }
+
+    /**
+     * Rooms looked up by the names of rooms from all over the world.
+     */
+    private static Benchmark find(String name, final World world)
+    {
+        final String[] names = new String[256];
+        for (int n = 0; n < names.length; n++) {
+            names[n] = world.getRoom((int) ((long) n * world.getRoomCount() / names.length)).getName().toUpperCase();
+        }
+        return new Benchmark(name, "grid", 16) {
+            protected int operation(long i)
+            {
+                return world.findRoom(names[(int) (i % names.length)]).getNumber();
+            }
+        };
+    }
+
+    private static void delete(Path directory) throws IOException
+    {
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+            for (Path file : files) {
+                Files.delete(file);
+            }
+        }
+        Files.delete(directory);
+    }
+}
@@ -0,0 +1,77 @@
+package com.company;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Measures what counting with GameMetrics costs a game: the same mix of
+ * commands is processed by a game without metrics and by one with them,
+ * which times every command, counts it by its command word and counts the
+ * rooms the player enters. The difference in throughput is printed as the
+ * overhead, which should stay under 2%. The two take turns for a number
+ * of rounds and the best round of each is compared, since the difference
+ * is smaller than the noise of a single round. The metrics of the second game are
+ * printed at the end, to show they were actually counted.
+ *
+ *     java -cp out/production/bench:out/production/untitled com.company.MetricsBenchmark
+ *
+ * @author  Kwinn Danforth
+ * @version 1.0.01
+ */
+public class MetricsBenchmark
+{
+    private static final long WARMUP_MILLIS = Long.getLong("bench.warmup", 1000);
+    private static final long MEASURE_MILLIS = Long.getLong("bench.measure", 2000);
+    private static final int ROUNDS = Integer.getInteger("bench.rounds", 5);
+    private static final String[] LINES = {"look", "go east", "inventory", "go west", "dance", "help"};
+
+    public static void main(String[] args) throws IOException
+    {
+        World world = BenchWorlds.load("small");
+        final Command[] commands = new Command[LINES.length];
+        for (int i = 0; i < LINES.length; i++) {
+            commands[i] = Parser.parse(LINES[i]);
+        }
+        GameMetrics metrics = new GameMetrics(world.getRoomCount());
+        final Game plain = new Game(world, new BenchWorlds.Sink());
+        plain.setHeadless(true);
+        final Game counted = new Game(world, new BenchWorlds.Sink());
+        counted.setHeadless(true);
+        counted.setMetrics(metrics);
+
+        List<String> json = new ArrayList<>();
+        Benchmark[] benchmarks = {process("game.processCommand", plain, commands),
+                process("game.processCommand.metrics", counted, commands)};
+        Benchmark.Result[] results = new Benchmark.Result[2];
+        // alternate the two so neither gets a quieter machine, and keep the best round of each
+        for (int round = 0; round < ROUNDS; round++) {
+            for (int b = 0; b < benchmarks.length; b++) {
+                Benchmark.Result result = benchmarks[b].run(WARMUP_MILLIS, MEASURE_MILLIS);
+                if (results[b] == null || result.getThroughput() > results[b].getThroughput()) {
+                    results[b] = result;
+                }
+            }
+        }
+        for (Benchmark.Result result : results) {
+            System.out.println(result);
+            json.add(result.toJson());
+        }
+        double overhead = 100 * (1 - results[1].getThroughput() / results[0].getThroughput());
+        System.out.printf("metrics overhead: %.2f%%%n", overhead);
+        System.out.print(metrics.getText());
+        GameBenchmarks.writeResults(json);
+    }
+
+    private static Benchmark process(String name, final Game game, final Command[] commands)
+    {
+        return new Benchmark(name, "small", 16) {
+            protected int operation(long i)
+            {
+                boolean quit = game.processCommand(commands[(int) (i % commands.length)]);
+                game.flush();
+                return quit ? 1 : 0;
+            }
+        };
+    }
+}
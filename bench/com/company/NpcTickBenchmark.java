@@ -0,0 +1,105 @@
+package com.company;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Measures how the NPC tick scales with threads: 100,000 NPCs spread over a
+ * grid of 1,000,000 rooms are ticked with 1, 2, 4 ... threads, up to the
+ * number of processors, and the time per tick is compared with that of one
+ * thread. Every simulation has the same seed and must end with its NPCs in
+ * the same rooms, whatever the number of threads. Last, players look at
+ * rooms with three NPCs each, between ticks, which should allocate nothing
+ * once each room's text is made.
+ *
+ *     java -cp out/production/bench:out/production/untitled com.company.NpcTickBenchmark [rooms] [npcs]
+ *
+ * @author  Kwinn Danforth
+ * @version 1.0.01
+ */
+public class NpcTickBenchmark
+{
+    private static final long WARMUP_MILLIS = Long.getLong("bench.warmup", 1000);
+    private static final long MEASURE_MILLIS = Long.getLong("bench.measure", 3000);
+
+    public static void main(String[] args) throws IOException
+    {
+        int rooms = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+        int count = args.length > 1 ? Integer.parseInt(args[1]) : 100000;
+        World world = BenchWorlds.grid(rooms);
+        String[] names = new String[count];
+        int[] starts = new int[count];
+        for (int npc = 0; npc < count; npc++) {
+            names[npc] = "Ghost " + npc;
+            starts[npc] = (int) ((npc * 2654435761L) % rooms);
+        }
+
+        List<String> json = new ArrayList<>();
+        int processors = Runtime.getRuntime().availableProcessors();
+        double single = 0;
+        long expected = 0;
+        for (int threads = 1; threads <= Math.max(4, processors); threads *= 2) {
+            NpcSimulation npcs = new NpcSimulation(world.getGraph(), names, starts, 42, threads);
+            run(npcs, WARMUP_MILLIS);
+            long ticks = npcs.getTicks();
+            long started = System.nanoTime();
+            run(npcs, MEASURE_MILLIS);
+            double millis = (System.nanoTime() - started) / 1e6 / (npcs.getTicks() - ticks);
+            single = threads == 1 ? millis : single;
+            System.out.printf("%2d threads: %.2f ms per tick, %.2fx one thread%n", threads, millis, single / millis);
+            json.add(String.format("{\"benchmark\":\"npc.tick\",\"world\":\"grid\",\"rooms\":%d,\"npcs\":%d,"
+                    + "\"threads\":%d,\"processors\":%d,\"millisPerTick\":%.3f,\"speedup\":%.2f}",
+                    rooms, count, threads, processors, millis, single / millis));
+
+            // the same seed after the same number of ticks puts every NPC in the same room
+            NpcSimulation check = new NpcSimulation(world.getGraph(), names, starts, 42, threads);
+            for (int t = 0; t < 10; t++) {
+                check.tick();
+            }
+            long hash = 0;
+            for (int npc = 0; npc < count; npc++) {
+                hash = hash * 31 + check.getRoom(npc);
+            }
+            if (threads == 1) {
+                expected = hash;
+            } else if (hash != expected) {
+                throw new IllegalStateException(threads + " threads moved the NPCs differently");
+            }
+            npcs.close();
+            check.close();
+        }
+
+        // the NPCs in threes, so every room they are in describes a group
+        int[] crowded = new int[count];
+        for (int npc = 0; npc < count; npc++) {
+            crowded[npc] = starts[npc - npc % 3];
+        }
+        NpcSimulation npcs = new NpcSimulation(world.getGraph(), names, crowded, 42, processors);
+        world.getGraph().setNpcs(npcs);
+        Benchmark.Result result = look(world, crowded).run(WARMUP_MILLIS, MEASURE_MILLIS);
+        System.out.println(result);
+        json.add(result.toJson());
+        world.getGraph().setNpcs(null);
+        npcs.close();
+        GameBenchmarks.writeResults(json);
+    }
+
+    private static Benchmark look(final World world, final int[] rooms)
+    {
+        return new Benchmark("npc.describe", "grid", 64) {
+            protected int operation(long i)
+            {
+                return world.getRoom(rooms[(int) (i * 3 % rooms.length)]).getLongDescription().length();
+            }
+        };
+    }
+
+    private static void run(NpcSimulation npcs, long millis)
+    {
+        long end = System.nanoTime() + millis * 1000000L;
+        do {
+            npcs.tick();
+        } while (System.nanoTime() < end);
+    }
+}
@@ -0,0 +1,122 @@
+package com.company;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * A stress run of item pickup in a world shared by many players.
+ *
+ * Every room of a ring of rooms holds its own item. Many players, spread
+ * over a number of threads, start in the same room and wander around the
+ * ring picking up whatever they find. When they are done every item must be
+ * either in exactly one player's collection or still in its room: none
+ * duplicated, none lost. The run exits with status 1 if that is not so.
+ *
+ *     java com.company.PickupStress [rooms] [players] [threads] [moves]
+ *
+ * @author  Kwinn Danforth
+ * @version 1.0.01
+ */
+public class PickupStress
+{
+    private static final Command PICKUP = Parser.parse("pickup");
+    private static final Command EAST = Parser.parse("go east");
+    private static final Command WEST = Parser.parse("go west");
+
+    public static void main(String[] args) throws IOException, InterruptedException
+    {
+        int rooms = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+        int players = args.length > 1 ? Integer.parseInt(args[1]) : 2000;
+        int threads = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors() * 2;
+        final int moves = args.length > 3 ? Integer.parseInt(args[3]) : 2000;
+
+        WorldBuilder builder = new WorldBuilder();
+        for (int r = 0; r < rooms; r++) {
+            builder.addRoom(new Room(r, "Room " + r, "in room " + r + " of the ring", "no one", "Item " + r));
+            builder.addExit(r, Direction.EAST, (r + 1) % rooms);
+            builder.addExit(r, Direction.WEST, (r + rooms - 1) % rooms);
+        }
+        builder.setStart(0);
+        final World world = new World(builder);
+
+        final List<Game> games = new ArrayList<>();
+        GameOutput discard = new GameOutput() {
+            public void write(CharSequence text)
+            {
+            }
+        };
+        for (int p = 0; p < players; p++) {
+            Game game = new Game(world, discard);
+            game.setHeadless(true);
+            games.add(game);
+        }
+
+        // each thread plays its share of the players, one move of each in turn
+        final CountDownLatch start = new CountDownLatch(1);
+        List<Thread> workers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            final List<Game> mine = games.subList(t * players / threads, (t + 1) * players / threads);
+            final Random random = new Random(t);
+            Thread worker = new Thread() {
+                public void run()
+                {
+                    try {
+                        start.await();
+                    } catch (InterruptedException ex) {
+                        return;
+                    }
+                    for (int m = 0; m < moves; m++) {
+                        for (Game game : mine) {
+                            game.handleCommand(PICKUP);
+                            game.handleCommand(random.nextBoolean() ? EAST : WEST);
+                        }
+                    }
+                }
+            };
+            worker.start();
+            workers.add(worker);
+        }
+        long started = System.nanoTime();
+        start.countDown();
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        long nanos = System.nanoTime() - started;
+
+        Set<String> seen = new HashSet<>();
+        int duplicates = 0;
+        for (Game game : games) {
+            for (String item : game.getItems()) {
+                if (!seen.add(item)) {
+                    duplicates++;
+                }
+            }
+        }
+        int collected = seen.size();
+        int remaining = 0;
+        for (int r = 0; r < rooms; r++) {
+            String item = world.getRoom(r).getItem();
+            if (!item.equals(Room.NO_ITEM)) {
+                remaining++;
+                if (!seen.add(item)) {
+                    duplicates++;
+                }
+            }
+        }
+        int lost = rooms - collected - remaining;
+
+        System.out.printf("%d players on %d threads, %d moves each in %.0f ms: %d collected, %d left, "
+                        + "%d duplicated, %d lost%n", players, threads, moves, nanos / 1e6,
+                collected, remaining, duplicates, lost);
+        if (duplicates != 0 || lost != 0) {
+            System.out.println("FAILED");
+            System.exit(1);
+        }
+        System.out.println("OK");
+    }
+}
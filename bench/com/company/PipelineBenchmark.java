@@ -0,0 +1,68 @@
+package com.company;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Measures what running several commands from one line saves. One action
+ * is a walk of four moves through the small world that ends where it
+ * started. It is sent three ways: as four lines of one command each, as
+ * one line of four commands separated by semicolons, and as the name of a
+ * macro of the four. For each the actions per second, the latency of an
+ * action and the characters the player is shown per action are printed.
+ * The screen is cleared the way a terminal without ANSI codes needs it.
+ *
+ *     java -cp out/production/bench:out/production/untitled com.company.PipelineBenchmark
+ *
+ * @author  Kwinn Danforth
+ * @version 1.0.01
+ */
+public class PipelineBenchmark
+{
+    private static final long WARMUP_MILLIS = Long.getLong("bench.warmup", 1000);
+    private static final long MEASURE_MILLIS = Long.getLong("bench.measure", 2000);
+    private static final String[] MOVES = {"go east", "go north", "go south", "go west"};
+    private static final String LINE = "go east; go north; go south; go west";
+
+    public static void main(String[] args) throws IOException
+    {
+        World world = BenchWorlds.load("small");
+        List<String> json = new ArrayList<>();
+        String[][] ways = {MOVES, {LINE}, {"tour"}};
+        String[] names = {"game.action.lines", "game.action.pipelined", "game.action.macro"};
+        for (int w = 0; w < ways.length; w++) {
+            BenchWorlds.Sink sink = new BenchWorlds.Sink();
+            Game game = new Game(world, sink);
+            game.handleLine("macro tour " + LINE);
+            Benchmark.Result result = action(names[w], game, ways[w]).run(WARMUP_MILLIS, MEASURE_MILLIS);
+
+            long before = sink.getCharacters();
+            for (int i = 0; i < 1000; i++) {
+                for (String line : ways[w]) {
+                    game.handleLine(line);
+                }
+            }
+            long characters = (sink.getCharacters() - before) / 1000;
+            System.out.println(result);
+            System.out.printf("%s: %,d characters per action%n", names[w], characters);
+            json.add(result.toJson());
+            json.add(String.format("{\"benchmark\":\"%s.output\",\"world\":\"small\",\"charactersPerAction\":%d}",
+                    names[w], characters));
+        }
+        GameBenchmarks.writeResults(json);
+    }
+
+    private static Benchmark action(String name, final Game game, final String[] lines)
+    {
+        return new Benchmark(name, "small", 4) {
+            protected int operation(long i)
+            {
+                for (String line : lines) {
+                    game.handleLine(line);
+                }
+                return game.getCurrentRoom().getNumber();
+            }
+        };
+    }
+}
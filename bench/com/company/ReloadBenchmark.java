@@ -0,0 +1,169 @@
+package com.company;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Measures reloading the room data of a world that is being played.
+ *
+ * First the descriptions of 1, 100 and 10,000 rooms of a generated grid are
+ * edited and the reload is timed; the file is read whole every time, but
+ * rooms are only made for the lines that changed. Then players walk the
+ * grid and pick up items, once without reloads and once while another
+ * thread edits and reloads 100 rooms every 10 ms, so the difference shows
+ * what the swaps cost the players. At the end every item must be in
+ * exactly one room or with exactly one player.
+ *
+ *     java -cp out/production/bench:out/production/untitled com.company.ReloadBenchmark [rooms]
+ *
+ * @author  Kwinn Danforth
+ * @version 1.0.01
+ */
+public class ReloadBenchmark
+{
+    private static final long WARMUP_MILLIS = Long.getLong("bench.warmup", 1000);
+    private static final long MEASURE_MILLIS = Long.getLong("bench.measure", 2000);
+    private static final String[] MOVES = {"go north", "go east", "go south", "go west", "pickup"};
+
+    public static void main(String[] args) throws Exception
+    {
+        int rooms = args.length > 0 ? Integer.parseInt(args[0]) : 100000;
+        Path directory = Files.createTempDirectory("hogwarts-reload");
+        BenchWorlds.writeGrid(directory, rooms);
+        final Path roomData = directory.resolve("RoomData.csv");
+        final World world = new World(roomData, directory.resolve("WorldMap.csv"));
+        final List<String> lines = Files.readAllLines(roomData, StandardCharsets.UTF_8);
+        final RoomDataWatcher watcher = new RoomDataWatcher(world);
+        List<String> json = new ArrayList<>();
+
+        int version = 0;
+        for (int changed : new int[] {1, 100, 10000, 1, 100, 10000}) {   // the first three warm up
+            edit(roomData, lines, ++version, changed);
+            long started = System.nanoTime();
+            int replaced = watcher.reload();
+            long nanos = System.nanoTime() - started;
+            System.out.printf("%,d rooms edited: %d replaced in %.2f ms%n", changed, replaced, nanos / 1e6);
+            if (version > 3) {
+                json.add(String.format("{\"benchmark\":\"world.reload\",\"world\":\"grid\",\"rooms\":%d,"
+                        + "\"changed\":%d,\"millis\":%.3f}", rooms, changed, nanos / 1e6));
+            }
+        }
+
+        final Game[] players = new Game[64];
+        for (int p = 0; p < players.length; p++) {
+            players[p] = new Game(world, new BenchWorlds.Sink());
+            players[p].setHeadless(true);
+            players[p].start();
+        }
+        Benchmark.Result quiet = walk("game.walk", players).run(WARMUP_MILLIS, MEASURE_MILLIS);
+        System.out.println(quiet);
+        json.add(quiet.toJson());
+
+        final AtomicBoolean stop = new AtomicBoolean();
+        final int[] reloads = {0};
+        Thread editor = new Thread("editor") {
+            public void run()
+            {
+                int next = 100;
+                try {
+                    while (!stop.get()) {
+                        edit(roomData, lines, ++next, 100);
+                        watcher.reload();
+                        reloads[0]++;
+                        Thread.sleep(10);
+                    }
+                } catch (IOException | InterruptedException ex) {
+                    throw new IllegalStateException(ex);
+                }
+            }
+        };
+        editor.start();
+        Benchmark.Result reloading = walk("game.walk.reloading", players).run(WARMUP_MILLIS, MEASURE_MILLIS);
+        stop.set(true);
+        editor.join();
+        System.out.println(reloading);
+        System.out.printf("%d reloads while walking%n", reloads[0]);
+        json.add(reloading.toJson());
+
+        int wrong = checkItems(world, players);
+        System.out.printf("%d items lost or copied%n", wrong);
+        delete(directory);
+        GameBenchmarks.writeResults(json);
+        if (wrong != 0) {
+            System.out.println("FAILED");
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Change the description of some rooms, spread over the grid, and write the file.
+     */
+    private static void edit(Path roomData, List<String> lines, int version, int changed) throws IOException
+    {
+        int step = Math.max(1, lines.size() / changed);
+        List<String> edited = new ArrayList<>(lines);
+        for (int i = 0, r = version % step; i < changed && r < lines.size(); i++, r += step) {
+            String line = lines.get(r);
+            int description = line.indexOf(".,");          // where the description ends
+            edited.set(r, line.substring(0, description) + " - version " + version + line.substring(description));
+        }
+        Files.write(roomData, edited, StandardCharsets.UTF_8);
+    }
+
+    private static Benchmark walk(String name, final Game[] players)
+    {
+        return new Benchmark(name, "grid", 16) {
+            private long moves = 0x9E3779B97F4A7C15L;
+
+            protected int operation(long i)
+            {
+                moves = moves * 6364136223846793005L + 1442695040888963407L;
+                Game player = players[(int) (i % players.length)];
+                player.handleLine(MOVES[(int) ((moves >>> 33) % MOVES.length)]);
+                player.flush();
+                return player.getCurrentRoom().getNumber();
+            }
+        };
+    }
+
+    /**
+     * @return How many items of the world are nowhere or in more than one place.
+     */
+    private static int checkItems(World world, Game[] players)
+    {
+        int wrong = 0;
+        Set<String> found = new HashSet<>();
+        for (int r = 0; r < world.getRoomCount(); r++) {
+            String item = world.getRoom(r).getItem();
+            if (!item.equals(Room.NO_ITEM) && !found.add(item)) {
+                wrong++;
+            }
+        }
+        for (Game player : players) {
+            for (String item : player.getItems()) {
+                if (!found.add(item)) {
+                    wrong++;
+                }
+            }
+        }
+        return wrong + world.getItems().size() - found.size();
+    }
+
+    private static void delete(Path directory) throws IOException
+    {
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+            for (Path file : files) {
+                Files.delete(file);
+            }
+        }
+        Files.delete(directory);
+    }
+}
@@ -0,0 +1,73 @@
+package com.company;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Measures the RouteIndex: how long it takes to build for the game's own
+ * world and for a generated grid, and how long a route query takes once it
+ * is built. The small world gets the full table of first steps; the grid is
+ * large enough to use the per-target searches and their cache, so queries
+ * there are timed both for a few popular targets (mostly cache hits) and
+ * for targets spread over the whole grid (mostly misses).
+ *
+ *     java -cp out/production/bench:out/production/untitled com.company.RouteBenchmark [rooms]
+ *
+ * @author  Kwinn Danforth
+ * @version 1.0.01
+ */
+public class RouteBenchmark
+{
+    private static final long WARMUP_MILLIS = Long.getLong("bench.warmup", 1000);
+    private static final long MEASURE_MILLIS = Long.getLong("bench.measure", 2000);
+    private static final long CACHE_BYTES = 64L * 1024 * 1024;
+
+    public static void main(String[] args) throws IOException
+    {
+        int gridRooms = args.length > 0 ? Integer.parseInt(args[0]) : 100000;
+        List<String> json = new ArrayList<>();
+
+        World small = BenchWorlds.load("small");
+        World grid = BenchWorlds.grid(gridRooms);
+        reportBuild("small", small.getGraph());
+        reportBuild("grid", grid.getGraph());
+
+        List<Benchmark> benchmarks = new ArrayList<>();
+        benchmarks.add(queries("small", small.getRoutes(), small.getRoomCount(), small.getRoomCount()));
+        benchmarks.add(queries("grid.popular", grid.getRoutes(), gridRooms, grid.getRoutes().getCacheSize() / 2));
+        benchmarks.add(queries("grid.spread", grid.getRoutes(), gridRooms, gridRooms));
+        for (Benchmark benchmark : benchmarks) {
+            Benchmark.Result result = benchmark.run(WARMUP_MILLIS, MEASURE_MILLIS);
+            System.out.println(result);
+            json.add(result.toJson());
+        }
+        GameBenchmarks.writeResults(json);
+    }
+
+    private static void reportBuild(String name, RoomGraph graph)
+    {
+        long started = System.nanoTime();
+        RouteIndex index = new RouteIndex(graph, CACHE_BYTES);
+        long nanos = System.nanoTime() - started;
+        System.out.printf("%s: %d rooms, index built in %.2f ms (%s)%n", name, graph.size(), nanos / 1e6,
+                index.isAllPairs() ? "all pairs" : "per-target cache");
+    }
+
+    /**
+     * Routes from random rooms to one of the first targets rooms.
+     */
+    private static Benchmark queries(String world, final RouteIndex index, final int rooms, final int targets)
+    {
+        return new Benchmark("routeIndex.route", world, 1) {
+            private final Random random = new Random(42);
+
+            protected int operation(long i)
+            {
+                RouteIndex.Route route = index.route(random.nextInt(rooms), random.nextInt(targets));
+                return route == null ? -1 : route.length();
+            }
+        };
+    }
+}
@@ -0,0 +1,91 @@
+package com.company;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Measures a ShardedServer with 1, 2, 4 and 8 shards, each of which reads
+ * its own slice of a grid from the data files. Thousands of players
+ * start in the middle of a grid and each walk a random path of commands,
+ * picking up what they find, then quit; the time until every player has
+ * quit gives the commands per second. Players who walk across the edge of
+ * a shard are handed off, and how many handoffs there were and how long
+ * they took is printed with the throughput.
+ *
+ *     java -cp out/production/bench:out/production/untitled com.company.ShardBenchmark [rooms] [players] [commands]
+ *
+ * @author  Kwinn Danforth
+ * @version 1.0.01
+ */
+public class ShardBenchmark
+{
+    private static final String[] LINES = {"go north", "go east", "go south", "go west", "pickup"};
+
+    public static void main(String[] args) throws IOException, InterruptedException
+    {
+        int rooms = args.length > 0 ? Integer.parseInt(args[0]) : 10000;
+        int players = args.length > 1 ? Integer.parseInt(args[1]) : 2000;
+        int commands = args.length > 2 ? Integer.parseInt(args[2]) : 200;
+        Path directory = Files.createTempDirectory("hogwarts-shards");
+        BenchWorlds.writeGrid(directory, rooms);
+        Path roomData = directory.resolve("RoomData.csv");
+        Path worldMap = directory.resolve("WorldMap.csv");
+        int processors = Runtime.getRuntime().availableProcessors();
+
+        List<String> json = new ArrayList<>();
+        run(roomData, worldMap, 1, players, commands);      // warm up
+        for (int shards = 1; shards <= 8; shards *= 2) {
+            ShardedServer server = new ShardedServer(roomData, worldMap, shards);
+            double seconds = play(server, players, commands);
+            double throughput = (double) players * (commands + 1) / seconds;
+            LatencyHistogram.Snapshot latency = server.getHandoffLatency();
+            System.out.printf("%d shards: %.0f commands/s, %d handoffs, handoff p50 %.3f ms, p99 %.3f ms%n",
+                    shards, throughput, server.getHandoffCount(),
+                    latency.getPercentile(50) / 1e6, latency.getPercentile(99) / 1e6);
+            json.add(String.format("{\"benchmark\":\"shard.play\",\"world\":\"grid\",\"rooms\":%d,\"players\":%d,"
+                    + "\"shards\":%d,\"processors\":%d,\"commandsPerSecond\":%.1f,\"handoffs\":%d,"
+                    + "\"handoffP50Millis\":%.3f,\"handoffP99Millis\":%.3f}",
+                    rooms, players, shards, processors, throughput, server.getHandoffCount(),
+                    latency.getPercentile(50) / 1e6, latency.getPercentile(99) / 1e6));
+            server.close();
+        }
+        Files.delete(roomData);
+        Files.delete(worldMap);
+        Files.delete(directory);
+        GameBenchmarks.writeResults(json);
+    }
+
+    private static void run(Path roomData, Path worldMap, int shards, int players, int commands)
+            throws IOException, InterruptedException
+    {
+        try (ShardedServer server = new ShardedServer(roomData, worldMap, shards)) {
+            play(server, players, commands);
+        }
+    }
+
+    /**
+     * @return The seconds it took every player to play their commands and quit.
+     */
+    private static double play(ShardedServer server, int players, int commands) throws InterruptedException
+    {
+        long started = System.nanoTime();
+        long random = 42;
+        for (int p = 0; p < players; p++) {
+            ShardedServer.Session session = server.open(new BenchWorlds.Sink());
+            for (int c = 0; c < commands; c++) {
+                random ^= random << 13;
+                random ^= random >>> 7;
+                random ^= random << 17;
+                session.submit(LINES[(int) ((random >>> 1) % LINES.length)]);
+            }
+            session.submit("quit");
+        }
+        while (server.getSessionCount() > 0) {
+            Thread.sleep(1);
+        }
+        return (System.nanoTime() - started) / 1e9;
+    }
+}
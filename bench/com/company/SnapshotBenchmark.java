@@ -0,0 +1,96 @@
+package com.company;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Measures checkpoints: how long a server with many sessions on a generated
+ * grid takes to write one and to read it back, how large the file is, and
+ * how long restoring a single session takes once its bytes are in memory.
+ *
+ *     java -cp out/production/bench:out/production/untitled com.company.SnapshotBenchmark [sessions] [rooms]
+ *
+ * @author  Kwinn Danforth
+ * @version 1.0.01
+ */
+public class SnapshotBenchmark
+{
+    private static final long WARMUP_MILLIS = Long.getLong("bench.warmup", 1000);
+    private static final long MEASURE_MILLIS = Long.getLong("bench.measure", 2000);
+    private static final String[] MOVES = {"go north", "go east", "go south", "go west", "pickup"};
+
+    public static void main(String[] args) throws IOException
+    {
+        int sessions = args.length > 0 ? Integer.parseInt(args[0]) : 100000;
+        int rooms = args.length > 1 ? Integer.parseInt(args[1]) : 100000;
+        World world = BenchWorlds.grid(rooms);
+        GameServer server = new GameServer(world, 4, sessions);
+        BenchWorlds.Sink sink = new BenchWorlds.Sink();
+        Random random = new Random(1);
+        for (int s = 0; s < sessions; s++) {
+            Game game = server.open(sink).getGame();
+            for (int m = 0; m < 20; m++) {
+                game.handleLine(MOVES[random.nextInt(MOVES.length)]);
+            }
+        }
+
+        Path file = Files.createTempFile("hogwarts", ".checkpoint");
+        List<String> json = new ArrayList<>();
+        for (int round = 0; round < 3; round++) {   // the first rounds warm up
+            long started = System.nanoTime();
+            int written = server.checkpoint(file);
+            long writeNanos = System.nanoTime() - started;
+
+            GameServer restarted = new GameServer(world, 1, sessions);
+            started = System.nanoTime();
+            int read = restarted.restore(file);
+            long readNanos = System.nanoTime() - started;
+            restarted.shutdown();
+
+            System.out.printf("round %d: %d sessions checkpointed in %.1f ms, %d restored in %.1f ms, %,d bytes%n",
+                    round, written, writeNanos / 1e6, read, readNanos / 1e6, Files.size(file));
+            if (round == 2) {
+                json.add(String.format("{\"benchmark\":\"gameServer.checkpoint\",\"world\":\"grid\","
+                        + "\"sessions\":%d,\"writeMillis\":%.3f,\"readMillis\":%.3f,\"bytes\":%d}",
+                        written, writeNanos / 1e6, readNanos / 1e6, Files.size(file)));
+            }
+        }
+        Files.delete(file);
+        server.shutdown();
+
+        // one session's state, after the header of a saved game
+        final World singleWorld = world;
+        final Game game = new Game(world, sink);
+        for (int m = 0; m < 200; m++) {
+            game.handleLine(MOVES[random.nextInt(MOVES.length)]);
+        }
+        ByteArrayOutputStream saved = new ByteArrayOutputStream();
+        SnapshotWriter out = new SnapshotWriter(Channels.newChannel(saved), SnapshotWriter.SAVED_GAME);
+        game.getState().write(out);
+        out.flush();
+        final ByteBuffer bytes = ByteBuffer.wrap(saved.toByteArray());
+        Benchmark restore = new Benchmark("game.restore", "grid", 16) {
+            protected int operation(long i)
+            {
+                try {
+                    SnapshotReader in = new SnapshotReader(bytes.duplicate(), SnapshotWriter.SAVED_GAME);
+                    game.restore(SessionState.read(in, singleWorld));
+                } catch (IOException ex) {
+                    throw new IllegalStateException(ex);
+                }
+                return game.getCurrentRoom().getNumber();
+            }
+        };
+        Benchmark.Result result = restore.run(WARMUP_MILLIS, MEASURE_MILLIS);
+        System.out.println(result);
+        json.add(result.toJson());
+        GameBenchmarks.writeResults(json);
+    }
+}
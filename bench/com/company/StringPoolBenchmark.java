@@ -0,0 +1,125 @@
+package com.company;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Measures how much heap the rooms of a world take with and without the
+ * StringPool. The room data is written the way generated worlds look:
+ * names, descriptions and occupants come from a few dozen templates and
+ * most rooms have no item. It is read once the way WorldBuilder reads it,
+ * through the pool, and once with a String of its own for every field, as
+ * the loader did before; the heap that is still in use after each, with
+ * the rooms kept, is the heap the rooms take.
+ *
+ *     java -cp out/production/bench:out/production/untitled com.company.StringPoolBenchmark [rooms]
+ *
+ * @author  Kwinn Danforth
+ * @version 1.0.01
+ */
+public class StringPoolBenchmark
+{
+    private static final String[] PLACES = {"corridor", "classroom", "staircase", "tower", "dungeon",
+            "courtyard", "greenhouse", "library aisle"};
+    private static final String[] DETAILS = {"lit by floating candles", "full of dusty portraits",
+            "where the floor creaks", "that smells of old parchment"};
+    private static final String[] OCCUPANTS = {"no one", "no one", "no one", "a ghost", "a house elf",
+            "Peeves", "a prefect", "Mrs Norris"};
+
+    public static void main(String[] args) throws IOException
+    {
+        int rooms = args.length > 0 ? Integer.parseInt(args[0]) : 500000;
+        Path roomData = Files.createTempFile("hogwarts-pool", ".csv");
+        write(roomData, rooms);
+        List<String> json = new ArrayList<>();
+
+        long before = usedHeap();
+        long started = System.nanoTime();
+        Room[] plain = read(roomData, rooms, null);
+        long plainNanos = System.nanoTime() - started;
+        long plainBytes = usedHeap() - before;
+        json.add(report("rooms.unpooled", rooms, plainBytes, plainNanos));
+        check(plain);
+        plain = null;
+
+        before = usedHeap();
+        started = System.nanoTime();
+        Room[] pooled = read(roomData, rooms, new StringPool(4096));
+        long pooledNanos = System.nanoTime() - started;
+        long pooledBytes = usedHeap() - before;
+        json.add(report("rooms.pooled", rooms, pooledBytes, pooledNanos));
+        System.out.printf("the pool saves %.0f%% of the heap the rooms take%n",
+                100.0 * (plainBytes - pooledBytes) / plainBytes);
+
+        check(pooled);
+        Files.delete(roomData);
+        GameBenchmarks.writeResults(json);
+    }
+
+    private static void write(Path roomData, int rooms) throws IOException
+    {
+        try (BufferedWriter out = Files.newBufferedWriter(roomData, StandardCharsets.UTF_8)) {
+            for (int r = 0; r < rooms; r++) {
+                String place = PLACES[r % PLACES.length];
+                out.write("The " + place + "," + "in a " + place + " " + DETAILS[(r / 8) % DETAILS.length] + ".,"
+                        + OCCUPANTS[(r / 3) % OCCUPANTS.length] + ","
+                        + (r % 97 == 0 ? "Chocolate Frog " + r : "no item") + "," + r + "\n");
+            }
+        }
+    }
+
+    /**
+     * Read the rooms as WorldBuilder does, through the pool, or with new Strings if it is null.
+     */
+    private static Room[] read(Path roomData, int rooms, final StringPool pool) throws IOException
+    {
+        final Room[] read = new Room[rooms];
+        final ItemCatalog items = new ItemCatalog();
+        new CsvReader(roomData).read(new CsvReader.RowHandler() {
+            public void row(CsvReader.Row row) throws IOException
+            {
+                int number = row.getInt(4);
+                String[] fields = new String[4];
+                for (int f = 0; f < fields.length; f++) {
+                    fields[f] = pool != null ? row.getString(f, pool) : row.getString(f);
+                }
+                read[number] = new Room(number, fields[0], fields[1], fields[2], items.intern(fields[3]));
+            }
+        });
+        return read;
+    }
+
+    /**
+     * Use the rooms after the heap was measured, so they are still there while it is.
+     */
+    private static void check(Room[] rooms)
+    {
+        for (Room room : rooms) {
+            if (room == null) {
+                throw new IllegalStateException("a room is missing");
+            }
+        }
+    }
+
+    private static String report(String name, int rooms, long bytes, long nanos)
+    {
+        System.out.printf("%-16s %,d rooms: %,d bytes (%.1f per room) in %.0f ms%n", name, rooms, bytes,
+                (double) bytes / rooms, nanos / 1e6);
+        return String.format("{\"benchmark\":\"%s\",\"world\":\"templated\",\"rooms\":%d,\"bytes\":%d,"
+                + "\"bytesPerRoom\":%.1f,\"millis\":%.3f}", name, rooms, bytes, (double) bytes / rooms, nanos / 1e6);
+    }
+
+    private static long usedHeap()
+    {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
@@ -0,0 +1,127 @@
+package com.company;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Measures where transporters send players, and how fast.
+ *
+ * First the transporter of the game's own world is sampled many times and
+ * the share of each destination is printed: every one should come up about
+ * equally often, the last one included. Then many threads sample a
+ * transporter at once, drawing their random numbers from one Random shared
+ * by all of them (as every transporter used to), from ThreadLocalRandom, and
+ * from a Random of their own (as a seeded game does), once with equal
+ * weights and once with weights that need the alias table.
+ *
+ *     java -cp out/production/bench:out/production/untitled com.company.TeleportBenchmark [threads]
+ *
+ * @author  Kwinn Danforth
+ * @version 1.0.01
+ */
+public class TeleportBenchmark
+{
+    private static final int FAIRNESS_SAMPLES = 7000000;
+    private static final int SAMPLES_PER_THREAD = 5000000;
+    private static final int DESTINATIONS = 1000;
+
+    public static void main(String[] args) throws IOException, InterruptedException
+    {
+        int threads = args.length > 0 ? Integer.parseInt(args[0]) : Runtime.getRuntime().availableProcessors();
+
+        TransporterRoom transporter = findTransporter(new World());
+        List<Room> rooms = transporter.getRooms();
+        int[] counts = new int[rooms.size()];
+        Random random = new Random(1);
+        for (int i = 0; i < FAIRNESS_SAMPLES; i++) {
+            Room room = transporter.findRandomRoom(random);
+            counts[rooms.indexOf(room)]++;
+        }
+        System.out.println(transporter.getName() + ", " + FAIRNESS_SAMPLES + " transports:");
+        for (int i = 0; i < counts.length; i++) {
+            System.out.printf("  %-20s %6.2f%%%n", rooms.get(i).getName(), counts[i] * 100.0 / FAIRNESS_SAMPLES);
+        }
+
+        TransporterRoom uniform = transporter(false);
+        TransporterRoom weighted = transporter(true);
+        for (int round = 0; round < 2; round++) {   // the first round warms up
+            System.out.println("round " + round + ", " + threads + " threads:");
+            for (String source : new String[] {"shared", "threadLocal", "perSession"}) {
+                System.out.printf("  %-12s uniform %6.1f M/s   weighted %6.1f M/s%n", source,
+                        run(uniform, source, threads), run(weighted, source, threads));
+            }
+        }
+    }
+
+    private static TransporterRoom findTransporter(World world)
+    {
+        for (int r = 0; r < world.getRoomCount(); r++) {
+            if (world.getRoom(r) instanceof TransporterRoom) {
+                return (TransporterRoom) world.getRoom(r);
+            }
+        }
+        throw new IllegalStateException("the world has no transporter");
+    }
+
+    private static TransporterRoom transporter(boolean weighted)
+    {
+        TransporterRoom transporter = new TransporterRoom(0, "Transporter", "in a transporter", "no one", Room.NO_ITEM);
+        for (int d = 0; d < DESTINATIONS; d++) {
+            Room room = new Room(d + 1, "Room " + d, "in a room", "no one", Room.NO_ITEM);
+            transporter.setRooms(room, weighted ? 1 + d % 10 : 1);
+        }
+        return transporter;
+    }
+
+    /**
+     * @return Millions of transports per second over all threads.
+     */
+    private static double run(final TransporterRoom transporter, final String source, int threads)
+            throws InterruptedException
+    {
+        final Random shared = new Random(1);
+        final CountDownLatch start = new CountDownLatch(1);
+        List<Thread> workers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            final long seed = t;
+            Thread worker = new Thread() {
+                public void run()
+                {
+                    try {
+                        start.await();
+                    } catch (InterruptedException ex) {
+                        return;
+                    }
+                    Random random;
+                    if (source.equals("shared")) {
+                        random = shared;
+                    } else if (source.equals("threadLocal")) {
+                        random = ThreadLocalRandom.current();
+                    } else {
+                        random = new Random(seed);
+                    }
+                    int sum = 0;
+                    for (int i = 0; i < SAMPLES_PER_THREAD; i++) {
+                        sum += transporter.findRandomRoom(random).getNumber();
+                    }
+                    if (sum == 42) {
+                        System.out.print("");   // keeps the JIT from dropping the loop
+                    }
+                }
+            };
+            worker.start();
+            workers.add(worker);
+        }
+        long started = System.nanoTime();
+        start.countDown();
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        long nanos = System.nanoTime() - started;
+        return (double) SAMPLES_PER_THREAD * threads * 1000 / nanos;
+    }
+}
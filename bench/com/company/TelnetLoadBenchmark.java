@@ -0,0 +1,347 @@
+package com.company;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Random;
+
+/**
+ * Drives a TelnetServer with thousands of simulated players over loopback.
+ *
+ * The server runs in a JVM of its own, so that its sockets and the
+ * players' sockets do not share one process's limit of open files. The
+ * players are all served by one thread with a Selector: each connects,
+ * waits for the welcome and then sends a command every PERIOD milliseconds,
+ * starting at a random moment so they do not all send at once. The time
+ * from sending a command to the first byte of the answer is its latency. A
+ * player whose last answer has not come yet when the next command is due
+ * skips that command, so a slow server shows as skipped commands as well
+ * as latency.
+ *
+ * Afterwards two more players check the server's limits: one sends a few
+ * hundred commands at once and must have most of them ignored, the other
+ * sends nothing and must be disconnected once the idle timeout has passed.
+ *
+ *     java -cp out/production/bench:out/production/untitled com.company.TelnetLoadBenchmark [players]
+ *
+ * @author  Kwinn Danforth
+ * @version 1.0.01
+ */
+public class TelnetLoadBenchmark
+{
+    private static final long WARMUP_MILLIS = Long.getLong("bench.warmup", 5000);
+    private static final long MEASURE_MILLIS = Long.getLong("bench.measure", 10000);
+    private static final long PERIOD = Long.getLong("bench.period", 2000);
+    private static final int IDLE_SECONDS = 5;
+    private static final int BURST = 40;
+    private static final int FLOOD = 400;
+    private static final String[] COMMANDS = {"look", "go east", "inventory", "go west"};
+
+    public static void main(String[] args) throws Exception
+    {
+        int players = args.length > 0 ? Integer.parseInt(args[0]) : 10000;
+        Process server = startServer(players);
+        try {
+            int port = readPort(server);
+            InetSocketAddress address = new InetSocketAddress("127.0.0.1", port);
+            Load load = new Load(address, players);
+            load.connect();
+            System.out.printf("%,d players connected in %.1f s%n", load.connected, load.connectNanos / 1e9);
+            load.run(WARMUP_MILLIS, false);
+            load.run(MEASURE_MILLIS, true);
+            LatencyHistogram.Snapshot latency = load.latency.snapshot();
+            double perSecond = latency.getCount() * 1000.0 / MEASURE_MILLIS;
+            System.out.printf("%,d players: %,.0f commands/s, p50 %.2f ms, p99 %.2f ms, max %.2f ms, "
+                    + "%,d skipped, %,d disconnected%n", load.connected, perSecond,
+                    latency.getPercentile(50) / 1e6, latency.getPercentile(99) / 1e6, latency.getMax() / 1e6,
+                    load.skipped, load.disconnected);
+            load.close();
+
+            int answered = flood(address);
+            System.out.printf("%d of %d flooded commands answered%n", answered, FLOOD);
+            double idle = idle(address);
+            System.out.printf("an idle player was disconnected after %.1f s%n", idle);
+
+            List<String> json = new ArrayList<>();
+            json.add(String.format("{\"benchmark\":\"telnet.loopback\",\"world\":\"small\",\"players\":%d,"
+                    + "\"commandsPerSecond\":%.1f,\"p50Nanos\":%d,\"p99Nanos\":%d,\"maxNanos\":%d,"
+                    + "\"skipped\":%d,\"disconnected\":%d,\"floodAnswered\":%d,\"idleSeconds\":%.1f}",
+                    load.connected, perSecond, latency.getPercentile(50), latency.getPercentile(99),
+                    latency.getMax(), load.skipped, load.disconnected, answered, idle));
+            GameBenchmarks.writeResults(json);
+            if (load.connected < players || load.disconnected > 0 || answered > BURST + 5
+                    || idle < IDLE_SECONDS || idle > IDLE_SECONDS + 2) {
+                System.out.println("FAILED");
+                System.exit(1);
+            }
+        } finally {
+            server.destroy();
+        }
+    }
+
+    private static Process startServer(int players) throws IOException
+    {
+        String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+        ProcessBuilder builder = new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"),
+                "-Dhogwarts.idleSeconds=" + IDLE_SECONDS, "-Dhogwarts.maxSessions=" + (players + 10),
+                "-Dhogwarts.burst=" + BURST, "com.company.TelnetServer", "0");
+        builder.redirectErrorStream(true);
+        return builder.start();
+    }
+
+    private static int readPort(Process server) throws IOException
+    {
+        BufferedReader out = new BufferedReader(new InputStreamReader(server.getInputStream(), StandardCharsets.UTF_8));
+        String line;
+        while ((line = out.readLine()) != null) {
+            if (line.startsWith("Listening on port ")) {
+                return Integer.parseInt(line.substring("Listening on port ".length()).trim());
+            }
+            System.out.println("server: " + line);
+        }
+        throw new IOException("the server did not start");
+    }
+
+    /**
+     * Send many commands at once and count the answers that come back.
+     */
+    private static int flood(InetSocketAddress address) throws IOException, InterruptedException
+    {
+        try (SocketChannel channel = SocketChannel.open(address)) {
+            String text = readFor(channel, 500);
+            StringBuilder lines = new StringBuilder();
+            for (int i = 0; i < FLOOD; i++) {
+                lines.append("look\r\n");
+            }
+            channel.write(ByteBuffer.wrap(lines.toString().getBytes(StandardCharsets.UTF_8)));
+            text = readFor(channel, 2000);
+            if (!text.contains("too fast")) {
+                throw new IllegalStateException("the flood was not noticed");
+            }
+            return count(text, "Exits:");
+        }
+    }
+
+    /**
+     * Connect, send nothing, and see how long it takes to be disconnected.
+     */
+    private static double idle(InetSocketAddress address) throws IOException
+    {
+        long started = System.nanoTime();
+        try (SocketChannel channel = SocketChannel.open(address)) {
+            ByteBuffer buffer = ByteBuffer.allocate(8192);
+            while (channel.read(buffer) >= 0) {
+                buffer.clear();
+            }
+        }
+        return (System.nanoTime() - started) / 1e9;
+    }
+
+    private static String readFor(SocketChannel channel, long millis) throws IOException, InterruptedException
+    {
+        channel.configureBlocking(false);
+        StringBuilder text = new StringBuilder();
+        ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+        long end = System.currentTimeMillis() + millis;
+        while (System.currentTimeMillis() < end) {
+            buffer.clear();
+            int read = channel.read(buffer);
+            if (read < 0) {
+                break;
+            }
+            if (read == 0) {
+                Thread.sleep(10);
+            }
+            text.append(new String(buffer.array(), 0, buffer.position(), StandardCharsets.UTF_8));
+        }
+        channel.configureBlocking(true);
+        return text.toString();
+    }
+
+    private static int count(String text, String part)
+    {
+        int count = 0;
+        for (int at = text.indexOf(part); at >= 0; at = text.indexOf(part, at + 1)) {
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * The simulated players, all on the calling thread.
+     */
+    private static class Load
+    {
+        private final InetSocketAddress address;
+        private final Player[] players;
+        private final Selector selector;
+        private final ByteBuffer buffer = ByteBuffer.allocateDirect(64 * 1024);
+        private final ByteBuffer[] commands = new ByteBuffer[COMMANDS.length];
+        private final PriorityQueue<Player> due = new PriorityQueue<>();
+        private final Random random = new Random(42);
+        private LatencyHistogram latency = new LatencyHistogram();
+        private int connected;
+        private long connectNanos;
+        private long skipped;
+        private long disconnected;
+
+        Load(InetSocketAddress address, int count) throws IOException
+        {
+            this.address = address;
+            players = new Player[count];
+            selector = Selector.open();
+            for (int i = 0; i < COMMANDS.length; i++) {
+                commands[i] = ByteBuffer.wrap((COMMANDS[i] + "\r\n").getBytes(StandardCharsets.UTF_8));
+            }
+        }
+
+        /**
+         * Connect every player, a few hundred at a time, and wait for their welcomes.
+         */
+        void connect() throws IOException
+        {
+            long started = System.nanoTime();
+            int opened = 0;
+            int welcomed = 0;
+            while (welcomed < players.length) {
+                while (opened < players.length && opened - welcomed < 500) {
+                    SocketChannel channel = SocketChannel.open();
+                    channel.configureBlocking(false);
+                    Player player = new Player(channel);
+                    players[opened++] = player;
+                    channel.connect(address);
+                    channel.register(selector, SelectionKey.OP_CONNECT, player);
+                }
+                selector.select(100);
+                for (SelectionKey key : selector.selectedKeys()) {
+                    Player player = (Player) key.attachment();
+                    if (key.isConnectable()) {
+                        player.channel.finishConnect();
+                        key.interestOps(SelectionKey.OP_READ);
+                        connected++;
+                    } else if (key.isReadable() && read(player) && !player.welcomed) {
+                        player.welcomed = true;
+                        welcomed++;
+                        player.nextSend = System.nanoTime() + (long) (random.nextDouble() * PERIOD * 1000000L);
+                        due.add(player);
+                    }
+                }
+                selector.selectedKeys().clear();
+            }
+            connectNanos = System.nanoTime() - started;
+        }
+
+        /**
+         * Let the players play for a while.
+         * @param record Whether to record the latencies.
+         */
+        void run(long millis, boolean record) throws IOException
+        {
+            latency = record ? new LatencyHistogram() : latency;
+            skipped = 0;
+            long end = System.nanoTime() + millis * 1000000L;
+            long now;
+            while ((now = System.nanoTime()) < end) {
+                while (!due.isEmpty() && due.peek().nextSend <= now) {
+                    Player player = due.poll();
+                    if (player.closed) {
+                        continue;
+                    }
+                    if (player.sentAt != 0) {
+                        skipped++;
+                    } else {
+                        ByteBuffer command = commands[player.commands++ % commands.length].duplicate();
+                        player.channel.write(command);
+                        player.sentAt = now;
+                    }
+                    player.nextSend += PERIOD * 1000000L;
+                    due.add(player);
+                }
+                long wait = due.isEmpty() ? 1 : Math.max(0, due.peek().nextSend - System.nanoTime()) / 1000000L;
+                if (wait > 0) {
+                    selector.select(wait);
+                } else {
+                    selector.selectNow();
+                }
+                for (SelectionKey key : selector.selectedKeys()) {
+                    Player player = (Player) key.attachment();
+                    if (key.isValid() && key.isReadable()) {
+                        long arrived = System.nanoTime();
+                        if (read(player) && player.sentAt != 0) {
+                            if (record) {
+                                latency.record(arrived - player.sentAt);
+                            }
+                            player.sentAt = 0;
+                        }
+                    }
+                }
+                selector.selectedKeys().clear();
+            }
+        }
+
+        /**
+         * @return true if something was read.
+         */
+        private boolean read(Player player) throws IOException
+        {
+            int total = 0;
+            int read;
+            do {
+                buffer.clear();
+                try {
+                    read = player.channel.read(buffer);
+                } catch (IOException ex) {
+                    read = -1;
+                }
+                if (read < 0) {
+                    player.closed = true;
+                    player.channel.close();
+                    disconnected++;
+                    return total > 0;
+                }
+                total += read;
+            } while (read == buffer.capacity());
+            return total > 0;
+        }
+
+        void close() throws IOException
+        {
+            for (Player player : players) {
+                if (player != null) {
+                    player.channel.close();
+                }
+            }
+            selector.close();
+        }
+    }
+
+    private static class Player implements Comparable<Player>
+    {
+        private final SocketChannel channel;
+        private boolean welcomed;
+        private boolean closed;
+        private long nextSend;
+        private long sentAt;            // when the unanswered command was sent; 0: none is
+        private int commands;
+
+        Player(SocketChannel channel)
+        {
+            this.channel = channel;
+        }
+
+        public int compareTo(Player other)
+        {
+            return Long.compare(nextSend, other.nextSend);
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package com.company;
+
+import java.util.Random;
+
+/**
+ * Chooses destinations that have different weights, in constant time.
+ *
+ * This is Vose's alias method. The weights are spread over one column per
+ * destination so that every column holds exactly the average weight: part
+ * of it belongs to the column's own destination and the rest, if any, to
+ * one other destination, its alias. A sample picks a column with one random
+ * number and the destination or its alias with a second one, however many
+ * destinations there are. Building the table takes time linear in the
+ * number of destinations and is done once.
+ *
+ * @author  Kwinn Danforth
+ * @version 1.0.01
+ */
+public class AliasSampler implements TeleportSampler
+{
+    private final double[] probability;     // the chance to keep a column's own destination
+    private final int[] alias;
+
+    /**
+     * Build the table.
+     * @param weights How likely each destination is; all greater than zero.
+     */
+    public AliasSampler(double[] weights)
+    {
+        int n = weights.length;
+        if (n == 0) {
+            throw new IllegalArgumentException("a transporter needs at least one destination");
+        }
+        double total = 0;
+        for (double weight : weights) {
+            if (!(weight > 0) || Double.isInfinite(weight)) {
+                throw new IllegalArgumentException("weight " + weight + " is not a positive number");
+            }
+            total += weight;
+        }
+
+        probability = new double[n];
+        alias = new int[n];
+        double[] scaled = new double[n];
+        int[] small = new int[n];
+        int[] large = new int[n];
+        int smallCount = 0;
+        int largeCount = 0;
+        for (int i = 0; i < n; i++) {
+            scaled[i] = weights[i] * n / total;
+            if (scaled[i] < 1) {
+                small[smallCount++] = i;
+            } else {
+                large[largeCount++] = i;
+            }
+        }
+        // fill each column that is too small with weight from one that is too large
+        while (smallCount > 0 && largeCount > 0) {
+            int less = small[--smallCount];
+            int more = large[--largeCount];
+            probability[less] = scaled[less];
+            alias[less] = more;
+            scaled[more] = scaled[more] + scaled[less] - 1;
+            if (scaled[more] < 1) {
+                small[smallCount++] = more;
+            } else {
+                large[largeCount++] = more;
+            }
+        }
+        // what is left is full, up to rounding errors
+        while (largeCount > 0) {
+            probability[large[--largeCount]] = 1;
+        }
+        while (smallCount > 0) {
+            probability[small[--smallCount]] = 1;
+        }
+    }
+
+    public int sample(Random random)
+    {
+        int column = random.nextInt(probability.length);
+        return random.nextDouble() < probability[column] ? column : alias[column];
+    }
+}
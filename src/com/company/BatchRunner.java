@@ -0,0 +1,163 @@
+package com.company;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Replays recorded commands through a game at full speed, without a player.
+ *
+ * There is no prompt and the screen is never cleared; what the game prints
+ * is thrown away unless it is asked for. When the commands run out (or one
+ * of them ends the game) a report tells how many commands ran, how fast,
+ * and where the player ended up. This is what regression and throughput
+ * tests are built on. With a seed, everything chance decides (where the
+ * transporter sends the player) is the same on every run:
+ *
+ *     java com.company.BatchRunner commands.txt [--echo] [--seed &lt;number&gt;]
+ *
+ * @author  Kwinn Danforth
+ * @version 1.0.01
+ */
+public class BatchRunner
+{
+    private final World world;
+    private boolean seeded;
+    private long seed;
+
+    /**
+     * Create a runner that plays in the given world.
+     * @param world The world to play in.
+     */
+    public BatchRunner(World world)
+    {
+        this.world = world;
+    }
+
+    /**
+     * Play every game with the same random numbers.
+     * @param seed The seed of the random numbers.
+     */
+    public void setSeed(long seed)
+    {
+        this.seed = seed;
+        seeded = true;
+    }
+
+    /**
+     * Run the commands in a new game.
+     * @param commands The commands to run.
+     * @param out Where the game's text goes, or null to throw it away.
+     * @return What happened.
+     */
+    public Report run(Iterator<Command> commands, GameOutput out)
+    {
+        if (out == null) {
+            out = new GameOutput() {
+                public void write(CharSequence text)
+                {
+                }
+            };
+        }
+        Game game = new Game(world, out);
+        game.setHeadless(true);
+        if (seeded) {
+            game.setSeed(seed);
+        }
+        long started = System.nanoTime();
+        long executed = game.runBatch(commands);
+        long nanos = System.nanoTime() - started;
+        return new Report(executed, nanos, game);
+    }
+
+    public static void main(String[] args) throws IOException
+    {
+        if (args.length == 0) {
+            System.out.println("Usage: BatchRunner <command file> [--echo] [--seed <number>]");
+            return;
+        }
+        boolean echo = false;
+        BatchRunner runner = new BatchRunner(new World());
+        for (int i = 1; i < args.length; i++) {
+            if (args[i].equals("--echo")) {
+                echo = true;
+            } else if (args[i].equals("--seed") && i + 1 < args.length) {
+                runner.setSeed(Long.parseLong(args[++i]));
+            }
+        }
+        try (CommandLog log = new CommandLog(Paths.get(args[0]))) {
+            Report report = runner.run(log, echo ? new ConsoleIO() : null);
+            System.out.println(report);
+        }
+    }
+
+    /**
+     * What happened in a batch run.
+     */
+    public static class Report
+    {
+        private final long commands;
+        private final long nanos;
+        private final int finalRoom;
+        private final List<String> items;
+        private final boolean finished;
+
+        private Report(long commands, long nanos, Game game)
+        {
+            this.commands = commands;
+            this.nanos = nanos;
+            finalRoom = game.getCurrentRoom().getNumber();
+            items = game.getItems();
+            finished = game.isFinished();
+        }
+
+        /**
+         * @return The number of commands that ran.
+         */
+        public long getCommands()
+        {
+            return commands;
+        }
+
+        /**
+         * @return How many commands ran per second.
+         */
+        public double getCommandsPerSecond()
+        {
+            return nanos == 0 ? 0 : commands * 1e9 / nanos;
+        }
+
+        /**
+         * @return The number of the room the player ended in.
+         */
+        public int getFinalRoom()
+        {
+            return finalRoom;
+        }
+
+        /**
+         * @return The items the player collected.
+         */
+        public List<String> getItems()
+        {
+            return items;
+        }
+
+        /**
+         * @return true if a command ended the game.
+         */
+        public boolean isFinished()
+        {
+            return finished;
+        }
+
+        public String toString()
+        {
+            return String.format("%d commands in %.2f ms (%.0f commands/s)%n"
+                    + "final room: %d, items: %s, game %s",
+                    commands, nanos / 1e6, getCommandsPerSecond(),
+                    finalRoom, items, finished ? "over" : "still running");
+        }
+    }
+}
@@ -5,9 +5,10 @@ package com.company;
  * "World of Zuul" is a very simple, text based adventure game.
  *
  * This class holds information about a command that was issued by the user.
- * A command currently consists of two parts: a CommandWord and a string
- * (for example, if the command was "take map", then the two parts
- * are TAKE and "map").
+ * A command consists of a CommandWord and the words that followed it
+ * (for example, if the command was "take old map", then the parts
+ * are TAKE, "old" and "map"). The first word after the command word is
+ * called the second word.
  *
  * The way this is used is: Commands are already checked for being valid
  * command words. If the user entered an invalid command (a word that is not
@@ -15,14 +16,20 @@ package com.company;
  *
  * If the command had only one word, then the second word is <null>.
  *
+ * A command word that is not a CommandWord is kept as typed, in lower
+ * case, so a handler registered for a verb of its own can be found.
+ *
  * @author  Michael Kölling and David J. Barnes
  * @version 2016.02.29
  */
 
 public class Command
 {
+    private static final String[] NO_WORDS = new String[0];
+
     private CommandWord commandWord;
-    private String secondWord;
+    private String verb;        // the command word as typed, when it is not a CommandWord
+    private String[] words;     // the words after the command word
 
     /**
      * Create a command object. First and second words must be supplied, but
@@ -32,9 +39,32 @@ public class Command
      * @param secondWord The second word of the command. May be null.
      */
     public Command(CommandWord commandWord, String secondWord)
+    {
+        this(commandWord, secondWord == null ? NO_WORDS : new String[] {secondWord});
+    }
+
+    /**
+     * Create a command object with any number of words after the command word.
+     * @param commandWord The CommandWord. UNKNOWN if the command word
+     *                  was not recognised.
+     * @param words The words after the command word. The array is kept, not copied.
+     */
+    public Command(CommandWord commandWord, String[] words)
     {
         this.commandWord = commandWord;
-        this.secondWord = secondWord;
+        this.words = words;
+    }
+
+    /**
+     * Create a command whose command word is not a CommandWord, such as a
+     * verb that a handler added or the name of a macro.
+     * @param verb The command word, in lower case.
+     * @param words The words after the command word. The array is kept, not copied.
+     */
+    public Command(String verb, String[] words)
+    {
+        this(CommandWord.UNKNOWN, words);
+        this.verb = verb;
     }
 
     /**
@@ -46,13 +76,72 @@ public class Command
         return commandWord;
     }
 
+    /**
+     * @return The command word in lower case, as typed, or null if the
+     * command was empty.
+     */
+    public String getVerb()
+    {
+        if(verb == null && commandWord != CommandWord.UNKNOWN) {
+            return commandWord.toString();
+        }
+        return verb;
+    }
+
     /**
      * @return The second word of this command. Returns null if there was no
      * second word.
      */
     public String getSecondWord()
     {
-        return secondWord;
+        return words.length > 0 ? words[0] : null;
+    }
+
+    /**
+     * @return The number of words after the command word.
+     */
+    public int getWordCount()
+    {
+        return words.length;
+    }
+
+    /**
+     * @param index The index of a word after the command word, starting at 0
+     *              for the second word.
+     * @return The word.
+     */
+    public String getWord(int index)
+    {
+        return words[index];
+    }
+
+    /**
+     * @return All words after the command word, separated by single spaces,
+     * or null if there are none. For example "the sorcerer's stone".
+     */
+    public String getRestOfLine()
+    {
+        if(words.length == 0) {
+            return null;
+        }
+        StringBuilder rest = new StringBuilder(words[0]);
+        for(int i = 1; i < words.length; i++) {
+            rest.append(' ').append(words[i]);
+        }
+        return rest.toString();
+    }
+
+    /**
+     * Add the command as it could be typed again: the command word and
+     * the words after it, separated by single spaces.
+     * @param text Where the command is added.
+     */
+    public void appendTo(StringBuilder text)
+    {
+        text.append(getVerb());
+        for(String word : words) {
+            text.append(' ').append(word);
+        }
     }
 
     /**
@@ -68,7 +157,7 @@ public class Command
      */
     public boolean hasSecondWord()
     {
-        return (secondWord != null);
+        return (words.length > 0);
     }
 }
 
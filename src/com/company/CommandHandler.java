@@ -0,0 +1,31 @@
+package com.company;
+
+/**
+ * What the game does when the player types one command word.
+ *
+ * A handler is registered in a CommandRegistry under the word it handles,
+ * either at startup or, for handlers in other jars, through ServiceLoader:
+ * such a jar lists its handler classes in
+ * META-INF/services/com.company.CommandHandler, and each needs a public
+ * constructor without parameters. A handler of a verb the game does not
+ * know itself implements VerbHandler. A handler may be used by many games at
+ * the same time, so it should keep no state of its own.
+ *
+ * @author  Kwinn Danforth
+ * @version 1.0.01
+ */
+public interface CommandHandler
+{
+    /**
+     * @return The command word this handler handles.
+     */
+    CommandWord getCommandWord();
+
+    /**
+     * Execute the command.
+     * @param game The game of the player who typed it.
+     * @param command The command, with the words that followed the command word.
+     * @return true if the command ends the game, false otherwise.
+     */
+    boolean execute(Game game, Command command);
+}
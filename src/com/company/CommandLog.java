@@ -0,0 +1,156 @@
+package com.company;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * A file of recorded commands, one per line, read as a stream of Commands.
+ *
+ * The file is memory-mapped and split into lines straight from the mapped
+ * bytes, and each line is decoded into one reusable buffer for the parser,
+ * so replaying a large log does not go through a Scanner or any other
+ * reader. Empty lines are skipped. Logs larger than 2 GB are mapped
+ * in pieces.
+ *
+ * @author  Kwinn Danforth
+ * @version 1.0.01
+ */
+public class CommandLog implements Iterator<Command>, AutoCloseable
+{
+    private static final long PIECE_SIZE = Integer.MAX_VALUE;
+
+    private final FileChannel channel;
+    private final long size;
+    private long pieceStart;
+    private MappedByteBuffer piece;
+    private byte[] line;
+    private CharBuffer chars;
+    private final CharsetDecoder decoder;
+    private Command next;
+
+    /**
+     * Open a command log.
+     * @param file The file to read.
+     * @throws IOException if the file can not be opened.
+     */
+    public CommandLog(Path file) throws IOException
+    {
+        channel = FileChannel.open(file, StandardOpenOption.READ);
+        size = channel.size();
+        line = new byte[256];
+        chars = CharBuffer.allocate(256);
+        decoder = StandardCharsets.UTF_8.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        map(0);
+        next = readCommand();
+    }
+
+    /**
+     * @return true if there is another command in the log.
+     */
+    public boolean hasNext()
+    {
+        return next != null;
+    }
+
+    /**
+     * @return The next command in the log.
+     */
+    public Command next()
+    {
+        if (next == null) {
+            throw new NoSuchElementException();
+        }
+        Command command = next;
+        next = readCommand();
+        return command;
+    }
+
+    /**
+     * Commands can not be removed from a log.
+     */
+    public void remove()
+    {
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * Close the file.
+     * @throws IOException if the file can not be closed.
+     */
+    public void close() throws IOException
+    {
+        channel.close();
+    }
+
+    private void map(long start)
+    {
+        pieceStart = start;
+        try {
+            piece = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(PIECE_SIZE, size - start));
+        } catch (IOException ex) {
+            throw new IllegalStateException("can not read the command log", ex);
+        }
+    }
+
+    /**
+     * Decode the bytes of a line into the reusable character buffer.
+     */
+    private CharBuffer decode(int length)
+    {
+        if (chars.capacity() < length) {
+            chars = CharBuffer.allocate(line.length);
+        }
+        chars.clear();
+        decoder.reset();
+        decoder.decode(ByteBuffer.wrap(line, 0, length), chars, true);
+        decoder.flush(chars);
+        chars.flip();
+        return chars;
+    }
+
+    private Command readCommand()
+    {
+        while (true) {
+            int length = 0;
+            boolean ended = false;
+            while (!ended) {
+                if (!piece.hasRemaining()) {
+                    long position = pieceStart + piece.position();
+                    if (position >= size) {
+                        break;
+                    }
+                    map(position);
+                }
+                byte b = piece.get();
+                if (b == '\n') {
+                    ended = true;
+                } else if (b != '\r') {
+                    if (length == line.length) {
+                        byte[] bigger = new byte[length * 2];
+                        System.arraycopy(line, 0, bigger, 0, length);
+                        line = bigger;
+                    }
+                    line[length++] = b;
+                }
+            }
+            if (length > 0) {
+                return Parser.parse(decode(length));
+            }
+            if (!ended) {
+                return null;    // the end of the log
+            }
+        }
+    }
+}
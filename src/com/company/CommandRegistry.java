@@ -0,0 +1,129 @@
+package com.company;
+
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.ServiceLoader;
+
+/**
+ * The handlers of the command words, kept in an array indexed by the
+ * ordinal of the CommandWord, so that finding the handler of a command is
+ * one array load whatever the number of commands. Handlers of verbs the
+ * game does not know itself (VerbHandler) are kept in a map by their verb,
+ * which is only looked in for commands the game did not recognise.
+ *
+ * The default registry holds the game's own commands (StandardCommands)
+ * and then every CommandHandler that ServiceLoader finds; a handler found
+ * that way replaces the standard one for its word. Registries are filled at
+ * startup and only read after that, by any number of games at once.
+ *
+ * @author  Kwinn Danforth
+ * @version 1.0.01
+ */
+public class CommandRegistry
+{
+    private static CommandRegistry defaultRegistry;
+
+    private final CommandHandler[] handlers;
+    private final Map<String, CommandHandler> verbs;     // new verbs, in the order they were registered
+
+    /**
+     * Create an empty registry.
+     */
+    public CommandRegistry()
+    {
+        handlers = new CommandHandler[CommandWord.values().length];
+        verbs = new LinkedHashMap<>();
+    }
+
+    /**
+     * @return The registry of the standard commands and those found by ServiceLoader.
+     */
+    public static synchronized CommandRegistry getDefault()
+    {
+        if (defaultRegistry == null) {
+            CommandRegistry registry = new CommandRegistry();
+            StandardCommands.registerAll(registry);
+            for (CommandHandler handler : ServiceLoader.load(CommandHandler.class)) {
+                registry.register(handler);
+            }
+            defaultRegistry = registry;
+        }
+        return defaultRegistry;
+    }
+
+    /**
+     * Register a handler under its command word, or a VerbHandler under its
+     * verb, replacing the handler that was registered for it before, if any.
+     * @param handler The handler.
+     */
+    public void register(CommandHandler handler)
+    {
+        if (!(handler instanceof VerbHandler)) {
+            handlers[handler.getCommandWord().ordinal()] = handler;
+            return;
+        }
+        String verb = ((VerbHandler) handler).getVerb().toLowerCase(Locale.ROOT);
+        if (verb.isEmpty() || verb.equals(CommandWord.UNKNOWN.toString())) {
+            throw new IllegalArgumentException("a handler can not handle the verb \"" + verb + "\"");
+        }
+        for (CommandWord command : CommandWord.values()) {
+            if (command.toString().equals(verb)) {
+                handlers[command.ordinal()] = handler;
+                return;
+            }
+        }
+        verbs.put(verb, handler);
+    }
+
+    /**
+     * @param commandWord A command word.
+     * @return The handler of the word, or null if it has none.
+     */
+    public CommandHandler get(CommandWord commandWord)
+    {
+        return handlers[commandWord.ordinal()];
+    }
+
+    /**
+     * @param command A command.
+     * @return The handler of its command word or of its verb, or null if it has none.
+     */
+    public CommandHandler get(Command command)
+    {
+        if (command.isUnknown() && !verbs.isEmpty() && command.getVerb() != null) {
+            CommandHandler handler = verbs.get(command.getVerb());
+            if (handler != null) {
+                return handler;
+            }
+        }
+        return handlers[command.getCommandWord().ordinal()];
+    }
+
+    /**
+     * @param verb A word, in lower case.
+     * @return true if a VerbHandler was registered for the word.
+     */
+    public boolean hasVerb(String verb)
+    {
+        return verbs.containsKey(verb);
+    }
+
+    /**
+     * @return The command words that have a handler, for example "go  quit  help  ",
+     *         on one line.
+     */
+    public String showAll()
+    {
+        StringBuilder words = new StringBuilder();
+        for (CommandWord command : CommandWord.values()) {
+            if (command != CommandWord.UNKNOWN && handlers[command.ordinal()] != null) {
+                words.append(command).append("  ");
+            }
+        }
+        for (String verb : verbs.keySet()) {
+            words.append(verb).append("  ");
+        }
+        return words.append("\n").toString();
+    }
+}
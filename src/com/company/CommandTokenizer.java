@@ -0,0 +1,104 @@
+package com.company;
+
+/**
+ * Splits a line of input into a Command.
+ *
+ * The tokenizer walks the characters of the line once. The command word is
+ * looked up straight from the line, so a known one never becomes a String;
+ * only the words after it, and a command word the game does not know, are
+ * copied out, in lower case. Words are separated by any
+ * amount of white space and there may be any number of them. Upper and lower
+ * case do not matter, so "GO North" is the same as "go north".
+ *
+ * @author  Kwinn Danforth
+ * @version 1.0.01
+ */
+public class CommandTokenizer
+{
+    private static final String[] NO_WORDS = new String[0];
+
+    private final CommandWordz commands;
+
+    /**
+     * Create a tokenizer that recognises the given command words.
+     * @param commands The command words.
+     */
+    public CommandTokenizer(CommandWordz commands)
+    {
+        this.commands = commands;
+    }
+
+    /**
+     * Split a line into a command.
+     * @param line The line that was typed.
+     * @return The command on the line. An empty line is an UNKNOWN command.
+     */
+    public Command tokenize(CharSequence line)
+    {
+        return tokenize(line, 0, line.length());
+    }
+
+    /**
+     * Split part of a line into a command, such as one of the commands of
+     * a line with several.
+     * @param line The line that was typed.
+     * @param from Where the command starts.
+     * @param length Where the command ends.
+     * @return The command. An empty part is an UNKNOWN command.
+     */
+    public Command tokenize(CharSequence line, int from, int length)
+    {
+        int start = skipSpace(line, from, length);
+        if (start == length) {
+            return new Command(CommandWord.UNKNOWN, NO_WORDS);
+        }
+        int end = skipWord(line, start, length);
+        CommandWord commandWord = commands.getCommandWord(line, start, end);
+        String verb = commandWord == CommandWord.UNKNOWN ? copyWord(line, start, end) : null;
+
+        // count the words after the command word, then copy them out
+        int count = 0;
+        for (int i = skipSpace(line, end, length); i < length; i = skipSpace(line, skipWord(line, i, length), length)) {
+            count++;
+        }
+        if (count == 0) {
+            return verb != null ? new Command(verb, NO_WORDS) : new Command(commandWord, NO_WORDS);
+        }
+        String[] words = new String[count];
+        int word = 0;
+        char[] chars = new char[length - end];
+        for (int i = skipSpace(line, end, length); i < length; i = skipSpace(line, end, length)) {
+            end = skipWord(line, i, length);
+            for (int c = i; c < end; c++) {
+                chars[c - i] = Character.toLowerCase(line.charAt(c));
+            }
+            words[word++] = new String(chars, 0, end - i);
+        }
+        return verb != null ? new Command(verb, words) : new Command(commandWord, words);
+    }
+
+    private static String copyWord(CharSequence line, int start, int end)
+    {
+        char[] chars = new char[end - start];
+        for (int c = start; c < end; c++) {
+            chars[c - start] = Character.toLowerCase(line.charAt(c));
+        }
+        return new String(chars);
+    }
+
+    private static int skipSpace(CharSequence line, int i, int length)
+    {
+        while (i < length && Character.isWhitespace(line.charAt(i))) {
+            i++;
+        }
+        return i;
+    }
+
+    private static int skipWord(CharSequence line, int i, int length)
+    {
+        while (i < length && !Character.isWhitespace(line.charAt(i))) {
+            i++;
+        }
+        return i;
+    }
+}
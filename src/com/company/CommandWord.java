@@ -11,7 +11,7 @@ public enum CommandWord
 {
     // A value for each command word along with its
     // corresponding user interface string.
-    GO("go"), QUIT("quit"), HELP("help"), PICKUP("pickup"), UNKNOWN("?");
+    GO("go"), QUIT("quit"), HELP("help"), LOOK("look"), PICKUP("pickup"), DROP("drop"), INVENTORY("inventory"), SAVE("save"), LOAD("load"), PATH("path"), HINT("hint"), MACRO("macro"), UNKNOWN("?");
 
     // The command string.
     private String commandString;
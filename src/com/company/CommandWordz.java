@@ -1,7 +1,5 @@
 package com.company;
 
-import java.util.HashMap;
-
 /**
  * This class is part of the "World of Zuul" application.
  * "World of Zuul" is a very simple, text based adventure game.
@@ -15,21 +13,57 @@ import java.util.HashMap;
 
 public class CommandWordz
 {
-    // A mapping between a command word and the CommandWord
-    // associated with it.
-    private HashMap<String, CommandWord> validCommands;
+    // The command words in a table indexed by a case
+    // insensitive hash of the word. The table is made large enough that no
+    // two words share a slot, so a lookup checks exactly one slot.
+    private final CommandWord[] table;
+    private final int mask;
 
     /**
      * Constructor - initialise the command words.
      */
     public CommandWordz()
     {
-        validCommands = new HashMap<>();
+        int size = Integer.highestOneBit(CommandWord.values().length) * 2;
+        CommandWord[] built = null;
+        while (built == null) {
+            built = fill(size);
+            size *= 2;
+        }
+        table = built;
+        mask = table.length - 1;
+    }
+
+    /**
+     * Place every command word in a table of the given size.
+     * @return The table, or null if two words would share a slot.
+     */
+    private static CommandWord[] fill(int size)
+    {
+        CommandWord[] slots = new CommandWord[size];
         for(CommandWord command : CommandWord.values()) {
             if(command != CommandWord.UNKNOWN) {
-                validCommands.put(command.toString(), command);
+                String word = command.toString();
+                int slot = hash(word, 0, word.length()) & (size - 1);
+                if(slots[slot] != null) {
+                    return null;
+                }
+                slots[slot] = command;
             }
         }
+        return slots;
+    }
+
+    /**
+     * A hash of part of a word that ignores upper and lower case.
+     */
+    private static int hash(CharSequence text, int start, int end)
+    {
+        int hash = end - start;
+        for(int i = start; i < end; i++) {
+            hash = hash * 31 + Character.toLowerCase(text.charAt(i));
+        }
+        return hash ^ (hash >>> 16);
     }
 
     /**
@@ -40,13 +74,36 @@ public class CommandWordz
      */
     public CommandWord getCommandWord(String commandWord)
     {
-        CommandWord command = validCommands.get(commandWord);
-        if(command != null) {
-            return command;
+        if(commandWord == null) {
+            return CommandWord.UNKNOWN;
         }
-        else {
+        return getCommandWord(commandWord, 0, commandWord.length());
+    }
+
+    /**
+     * Find the CommandWord for part of a line, without making a String of it.
+     * Upper and lower case are the same.
+     * @param text The text the word is in.
+     * @param start Where the word starts.
+     * @param end Where the word ends (exclusive).
+     * @return The CommandWord, or UNKNOWN if it is not a valid command word.
+     */
+    public CommandWord getCommandWord(CharSequence text, int start, int end)
+    {
+        CommandWord command = table[hash(text, start, end) & mask];
+        if(command == null) {
+            return CommandWord.UNKNOWN;
+        }
+        String word = command.toString();
+        if(word.length() != end - start) {
             return CommandWord.UNKNOWN;
         }
+        for(int i = 0; i < word.length(); i++) {
+            if(Character.toLowerCase(text.charAt(start + i)) != word.charAt(i)) {
+                return CommandWord.UNKNOWN;
+            }
+        }
+        return command;
     }
 
     /**
@@ -55,18 +112,20 @@ public class CommandWordz
      */
     public boolean isCommand(String aString)
     {
-        return validCommands.containsKey(aString);
+        return getCommandWord(aString) != CommandWord.UNKNOWN;
     }
 
     /**
-     * Print all valid commands to System.out.
+     * @return All valid commands, on one line.
      */
-    public void showAll()
+    public String showAll()
     {
-        for(String command : validCommands.keySet()) {
-            System.out.print(command + "  ");
+        StringBuilder commandList = new StringBuilder();
+        for(CommandWord command : CommandWord.values()) {
+            if(command != CommandWord.UNKNOWN) {
+                commandList.append(command).append("  ");
+            }
         }
-        System.out.println();
+        return commandList.append("\n").toString();
     }
 }
-
@@ -0,0 +1,81 @@
+package com.company;
+
+import java.io.BufferedReader;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+
+/**
+ * Input and output for a game played in the terminal window.
+ *
+ * Output does not go through System.out: each piece of text is encoded into
+ * one reusable buffer and written to the terminal with a single write, so a
+ * whole frame reaches the terminal at once.
+ *
+ * @author  Kwinn Danforth
+ * @version 1.0.01
+ */
+public class ConsoleIO implements GameInput, GameOutput
+{
+    private final BufferedReader reader;
+    private final FileChannel terminal;
+    private final CharsetEncoder encoder;
+    private ByteBuffer bytes;
+
+    /**
+     * Create console input and output on the standard input and output.
+     */
+    public ConsoleIO()
+    {
+        reader = new BufferedReader(new InputStreamReader(System.in));
+        terminal = new FileOutputStream(FileDescriptor.out).getChannel();
+        encoder = Charset.defaultCharset().newEncoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        bytes = ByteBuffer.allocateDirect(8192);
+    }
+
+    /**
+     * @return The next line typed in the terminal, or null at the end of input.
+     */
+    public String readLine()
+    {
+        try {
+            return reader.readLine();
+        } catch (IOException ex) {
+            return null;
+        }
+    }
+
+    /**
+     * Write the text to the terminal.
+     * @param text The text to write.
+     */
+    public synchronized void write(CharSequence text)
+    {
+        int needed = (int) Math.ceil(text.length() * encoder.maxBytesPerChar());
+        if (needed > bytes.capacity()) {
+            bytes = ByteBuffer.allocateDirect(Math.max(needed, bytes.capacity() * 2));
+        }
+        bytes.clear();
+        encoder.reset();
+        CharBuffer chars = CharBuffer.wrap(text);
+        encoder.encode(chars, bytes, true);
+        encoder.flush(bytes);
+        bytes.flip();
+        try {
+            while (bytes.hasRemaining()) {
+                terminal.write(bytes);
+            }
+        } catch (IOException ex) {
+            // the terminal is gone; there is no one left to tell
+        }
+    }
+}
@@ -0,0 +1,388 @@
+package com.company;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A streaming reader for the game's csv files.
+ *
+ * The file is read through a FileChannel into one reusable buffer and parsed
+ * in a single pass. The fields of a line are collected in a reusable Row and
+ * handed to a RowHandler, so the only objects made per line are the ones the
+ * handler asks for. Fields may be quoted ("a, b") to contain commas, and a
+ * quote inside a quoted field is written twice (""). A malformed line is
+ * reported with its line number. Every row knows the byte offset of its
+ * line in the file, so a few rows can later be read again from there
+ * without reading the whole file.
+ *
+ * @author  Kwinn Danforth
+ * @version 1.0.01
+ */
+public class CsvReader
+{
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final int SMALL_BUFFER_SIZE = 512;  // for reading a few rows
+
+    private final Path file;
+    private long rows;
+    private long nanos;
+
+    /**
+     * Create a reader for a csv file.
+     * @param file The file to read.
+     */
+    public CsvReader(Path file)
+    {
+        this.file = file;
+    }
+
+    /**
+     * Read the whole file, handing every non-empty line to the handler.
+     * @param handler Receives the lines of the file.
+     * @throws IOException if the file can not be read or a line is malformed.
+     */
+    public void read(RowHandler handler) throws IOException
+    {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            read(channel, 0, Long.MAX_VALUE, ByteBuffer.allocateDirect(BUFFER_SIZE),
+                    CharBuffer.allocate(BUFFER_SIZE), handler);
+        }
+    }
+
+    /**
+     * Read a few lines of a file that is already open, starting at a line
+     * whose offset a Row gave earlier. The channel's own position is not
+     * changed, so many threads may read from it at once. Line numbers are
+     * counted from the first line read.
+     * @param channel The open file.
+     * @param offset The byte offset of the first line to read.
+     * @param maxRows The most non-empty lines to hand to the handler.
+     * @param handler Receives the lines.
+     * @throws IOException if the file can not be read or a line is malformed.
+     */
+    public void read(FileChannel channel, long offset, long maxRows, RowHandler handler) throws IOException
+    {
+        read(channel, offset, maxRows, ByteBuffer.allocate(SMALL_BUFFER_SIZE),
+                CharBuffer.allocate(SMALL_BUFFER_SIZE), handler);
+    }
+
+    private void read(FileChannel channel, long offset, long maxRows, ByteBuffer bytes, CharBuffer chars,
+                      RowHandler handler) throws IOException
+    {
+        long started = System.nanoTime();
+        Row row = new Row();
+        row.offset = offset;
+        CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPORT)
+                .onUnmappableCharacter(CodingErrorAction.REPORT);
+        boolean quoted = false;         // inside a quoted field
+        boolean afterQuote = false;     // just saw a quote inside a quoted field
+        long position = offset;         // of the next byte to read from the file
+        rows = 0;
+
+        boolean endOfFile = false;
+        while (!endOfFile) {
+            int read = channel.read(bytes, position);
+            endOfFile = read < 0;
+            position += Math.max(read, 0);
+            bytes.flip();
+            CoderResult result = decoder.decode(bytes, chars, endOfFile);
+            if (result.isError()) {
+                throw row.error("the file is not valid UTF-8");
+            }
+            bytes.compact();
+            chars.flip();
+            while (chars.hasRemaining()) {
+                char c = chars.get();
+                offset += c < 0x80 ? 1 : c < 0x800 || Character.isSurrogate(c) ? 2 : 3;
+                if (quoted) {
+                    if (afterQuote) {
+                        afterQuote = false;
+                        if (c == '"') {
+                            row.append('"');    // "" is a quote
+                            continue;
+                        }
+                        quoted = false;         // the closing quote
+                    } else if (c == '"') {
+                        afterQuote = true;
+                        continue;
+                    } else {
+                        row.append(c);
+                        continue;
+                    }
+                }
+                if (c == ',') {
+                    row.endField();
+                } else if (c == '\n') {
+                    if (row.endLine()) {
+                        rows++;
+                        handler.row(row);
+                        row.nextLine();
+                        if (rows == maxRows) {
+                            nanos = System.nanoTime() - started;
+                            return;
+                        }
+                    }
+                    row.offset = offset;
+                } else if (c == '"' && row.atFieldStart()) {
+                    quoted = true;
+                } else if (c != '\r') {
+                    row.append(c);
+                }
+            }
+            chars.clear();
+        }
+        if (quoted && !afterQuote) {
+            throw row.error("a quoted field is not closed");
+        }
+        if (row.endLine()) {    // the last line had no line break
+            rows++;
+            handler.row(row);
+        }
+        nanos = System.nanoTime() - started;
+    }
+
+    /**
+     * @return The number of lines handled by the last read.
+     */
+    public long getRowCount()
+    {
+        return rows;
+    }
+
+    /**
+     * @return How long the last read took, in nanoseconds.
+     */
+    public long getLoadNanos()
+    {
+        return nanos;
+    }
+
+    /**
+     * @return How many lines per second the last read handled.
+     */
+    public double getRowsPerSecond()
+    {
+        return nanos == 0 ? 0 : rows * 1e9 / nanos;
+    }
+
+    /**
+     * Receives the lines of a csv file as they are read.
+     */
+    public interface RowHandler
+    {
+        /**
+         * Handle one line. The row is reused for the next line, so it must
+         * not be kept.
+         * @param row The fields of the line.
+         * @throws IOException if the line is not what the handler expects.
+         */
+        void row(Row row) throws IOException;
+    }
+
+    /**
+     * The fields of one line, kept in a single reusable character buffer.
+     */
+    public static class Row
+    {
+        private char[] text = new char[256];
+        private int length;
+        private int[] fieldEnds = new int[8];
+        private int fields;
+        private int lineNumber;
+        private long offset;        // of the start of the line, in bytes
+
+        private Row()
+        {
+            lineNumber = 1;
+        }
+
+        /**
+         * @return The line number of this row in the file, starting at 1.
+         */
+        public int getLineNumber()
+        {
+            return lineNumber;
+        }
+
+        /**
+         * @return The byte offset of the start of this line in the file.
+         */
+        public long getOffset()
+        {
+            return offset;
+        }
+
+        /**
+         * @return The number of fields on the line.
+         */
+        public int size()
+        {
+            return fields;
+        }
+
+        /**
+         * @param field The index of the field, starting at 0.
+         * @return The text of the field.
+         */
+        public String getString(int field)
+        {
+            int start = start(field);
+            return new String(text, start, fieldEnds[field] - start);
+        }
+
+        /**
+         * Get the text of a field without making a String, if the pool
+         * already has one with that text.
+         * @param field The index of the field, starting at 0.
+         * @param pool The pool to take the String from.
+         * @return The text of the field.
+         */
+        public String getString(int field, StringPool pool)
+        {
+            int start = start(field);
+            return pool.intern(text, start, fieldEnds[field] - start);
+        }
+
+        /**
+         * Parse a field as a number without making a String of it.
+         * @param field The index of the field, starting at 0.
+         * @return The value of the field.
+         * @throws IOException if the field is not a number.
+         */
+        public int getInt(int field) throws IOException
+        {
+            int start = start(field);
+            int end = fieldEnds[field];
+            while (start < end && text[start] == ' ') {
+                start++;
+            }
+            while (end > start && text[end - 1] == ' ') {
+                end--;
+            }
+            boolean negative = start < end && text[start] == '-';
+            int i = negative ? start + 1 : start;
+            if (i == end) {
+                throw error("field " + (field + 1) + " is not a number");
+            }
+            long value = 0;
+            for (; i < end; i++) {
+                int digit = text[i] - '0';
+                if (digit < 0 || digit > 9 || value > Integer.MAX_VALUE) {
+                    throw error("field " + (field + 1) + " is not a number: " + getString(field));
+                }
+                value = value * 10 + digit;
+            }
+            value = negative ? -value : value;
+            if (value > Integer.MAX_VALUE || value < Integer.MIN_VALUE) {
+                throw error("field " + (field + 1) + " is out of range: " + getString(field));
+            }
+            return (int) value;
+        }
+
+        /**
+         * @return A 64-bit hash of the fields of the line, so a line can be
+         * told to have changed without keeping its text.
+         */
+        public long hash()
+        {
+            long hash = 0xcbf29ce484222325L;    // FNV-1a
+            int field = 0;
+            for (int i = 0; i < length; i++) {
+                while (field < fields && fieldEnds[field] == i) {
+                    hash = (hash ^ ',') * 0x100000001b3L;
+                    field++;
+                }
+                hash = (hash ^ text[i]) * 0x100000001b3L;
+            }
+            return (hash ^ fields) * 0x100000001b3L;
+        }
+
+        /**
+         * Check that the line has the expected number of fields.
+         * @param expected The number of fields the line should have.
+         * @throws IOException if it has another number of fields.
+         */
+        public void expectFields(int expected) throws IOException
+        {
+            if (fields != expected) {
+                throw error("expected " + expected + " fields but found " + fields);
+            }
+        }
+
+        /**
+         * @param message What is wrong with the line.
+         * @return An exception that reports the problem with this line's number.
+         */
+        public IOException error(String message)
+        {
+            return new IOException("line " + lineNumber + ": " + message);
+        }
+
+        private int start(int field)
+        {
+            if (field < 0 || field >= fields) {
+                throw new IndexOutOfBoundsException("line " + lineNumber + " has no field " + (field + 1));
+            }
+            return field == 0 ? 0 : fieldEnds[field - 1];
+        }
+
+        private void append(char c)
+        {
+            if (length == text.length) {
+                char[] bigger = new char[length * 2];
+                System.arraycopy(text, 0, bigger, 0, length);
+                text = bigger;
+            }
+            text[length++] = c;
+        }
+
+        private boolean atFieldStart()
+        {
+            return length == (fields == 0 ? 0 : fieldEnds[fields - 1]);
+        }
+
+        private void endField()
+        {
+            if (fields == fieldEnds.length) {
+                int[] bigger = new int[fields * 2];
+                System.arraycopy(fieldEnds, 0, bigger, 0, fields);
+                fieldEnds = bigger;
+            }
+            fieldEnds[fields++] = length;
+        }
+
+        /**
+         * End the current line.
+         * @return true if the line has something in it, false if it was
+         *         empty and has been skipped.
+         */
+        private boolean endLine()
+        {
+            if (length == 0 && fields == 0) {
+                lineNumber++;
+                return false;
+            }
+            endField();
+            return true;
+        }
+
+        /**
+         * Start collecting the next line.
+         */
+        private void nextLine()
+        {
+            fields = 0;
+            length = 0;
+            lineNumber++;
+        }
+    }
+}
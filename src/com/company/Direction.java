@@ -0,0 +1,65 @@
+package com.company;
+
+/**
+ * The directions in which a room can have exits.
+ *
+ * @author  Kwinn Danforth
+ * @version 1.0.01
+ */
+public enum Direction
+{
+    NORTH("north"), EAST("east"), SOUTH("south"), WEST("west"), UP("up"), DOWN("down");
+
+    // all directions, so looking one up by its number does not copy values()
+    private static final Direction[] DIRECTIONS = values();
+
+    // The direction as the player types it.
+    private String directionString;
+
+    /**
+     * Initialise with the corresponding direction string.
+     * @param directionString The direction string.
+     */
+    Direction(String directionString)
+    {
+        this.directionString = directionString;
+    }
+
+    /**
+     * Find the direction the player typed.
+     * @param direction The typed direction, for example "north".
+     * @return The direction, or null if it is not a direction.
+     */
+    public static Direction fromString(String direction)
+    {
+        if(direction == null) {
+            return null;
+        }
+        switch(direction) {
+            case "north": return NORTH;
+            case "east": return EAST;
+            case "south": return SOUTH;
+            case "west": return WEST;
+            case "up": return UP;
+            case "down": return DOWN;
+            default: return null;
+        }
+    }
+
+    /**
+     * @param ordinal The number of a direction, as given by ordinal().
+     * @return The direction with that number.
+     */
+    public static Direction fromOrdinal(int ordinal)
+    {
+        return DIRECTIONS[ordinal];
+    }
+
+    /**
+     * @return The direction as a string.
+     */
+    public String toString()
+    {
+        return directionString;
+    }
+}
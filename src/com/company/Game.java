@@ -1,177 +1,424 @@
 package com.company;
 
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
-import java.util.HashMap;
-import java.io.FileNotFoundException;
-import java.nio.file.Paths;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.Scanner;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
 
 /**
  *  This class is the Main class of the Hogwarts adventure application.
  *  This is a very simple, text based adventure game.  Users
  *  can walk around some scenery and pick up items.
  *
- *  This Main class creates and initialises all the others: it creates all
- *  rooms, creates the parser and starts the game.  It also evaluates and
- *  executes the commands that the parser returns.
+ *  A Game is one player's session in a World: it keeps track of where the
+ *  player is and what they have collected.  It evaluates and executes the
+ *  commands that the parser returns, either in its own loop (play) or one
+ *  line at a time when a GameServer feeds it input (start and handleLine).
+ *  What each command does is up to the CommandHandler registered for its
+ *  word; the game keeps the player's state and shows what happens.
+ *
+ *  A player who has the world to themselves can save their game to a file
+ *  and load it again, together with where every item in the world is; on a
+ *  server the state of all sessions is kept by its checkpoints instead.
+ *
+ *  When the room data is reloaded while the game runs, the player is moved
+ *  to the new version of their room, by its number, before the next
+ *  command is processed.
+ *
+ *  A line may hold several commands separated by semicolons, such as
+ *  "go east; go north; pickup", and a player may name such a run of
+ *  commands as a macro and run it by typing its name. The commands of a
+ *  line or a macro run as one batch: the screen is cleared and the room
+ *  shown once, as it is after the last of them, instead of after every
+ *  move. Macros are kept by the game and last as long as it does.
+ *
+ *  A game of a ShardedServer only plays in the rooms of its shard. A move
+ *  into a room of another shard ends the line or macro there, without
+ *  showing the room, and the commands after it are kept as text for the
+ *  shard that owns the room to run.
  *
  * @author  Kwinn Danforth
  * @version 1.0.01
  */
 
 public class Game {
-    private final ArrayList<String> rooms;
-    private final ArrayList<String> descriptions;
-    private final ArrayList<String> occupancies;
-    private final ArrayList<String> items;
-    private final ArrayList<Integer> numbers;
-
-    private final HashMap<String, String> roomToDesc;
-    private final HashMap<String, String> roomToOccupancy;
-    private final HashMap<String, String> roomToItem;
-    private final HashMap<String, Integer> roomToNumber;
-
-    private final ArrayList<String> PLAYERS_ITEMS;
+    private static final int MAX_MACROS = 32;
+    private static final int MAX_MACRO_COMMANDS = 64;
+
+    private final World world;
+    private final GameOutput out;
+    private final Inventory PLAYERS_ITEMS;
     private final Parser PARSER;
+    private final StringBuilder frame;      // everything one command shows, written at once
+    private final StringBuilder roomFrame;  // the room a batch shows, put into the frame when it ends
     private Room currentRoom;
+    private boolean finished;
+    private boolean ansiClear;
+    private boolean headless;
+    private Random random;                  // null: the thread's own ThreadLocalRandom
+    private Path saveFile;                  // null: this game can not be saved
+    private Journal journal;                // null: what happens is not recorded
+    private long sessionId;
+    private CommandRegistry commands;
+    private GameMetrics metrics;            // null: nothing is counted
+    private GameMetrics.Recorder recorder;  // counts this game's commands into metrics
+    private Map<String, Macro> macros;      // null: the player has defined none
+    private boolean batching;               // the commands of a line or a macro are running
+    private int batchStart;                 // where the text of the batch starts in the frame
+    private int roomAt;                     // where the batch shows the room, or -1 for nowhere
+    private ShardMap shardMap;              // null: the game may go to every room of its world
+    private int shard;
+    private boolean leftShard;              // a move took the player out of the shard; nothing more runs
+    private StringBuilder unfinished;       // the commands that did not run because of that
 
     /**
-     * Create the game and initialise its internal map
+     * Create a game for one player in the given world. The game reads its
+     * commands from the parser and shows everything on the output.
+     *
+     * @param world  The world to play in, which may be shared with other games
+     * @param parser The parser to read commands from
+     * @param out    Where the game shows its text
      */
-    public Game() {
-        rooms = new ArrayList<>();
-        descriptions = new ArrayList<>();
-        occupancies = new ArrayList<>();
-        items = new ArrayList<>();
-        numbers = new ArrayList<>();
-
-        roomToDesc = new HashMap<>();
-        roomToOccupancy = new HashMap<>();
-        roomToItem = new HashMap<>();
-        roomToNumber = new HashMap<>();
-
-        PARSER = new Parser();
-        PLAYERS_ITEMS = new ArrayList<>();
-
-        getRoomData();
-        createRooms();
-        play();
+    public Game(World world, Parser parser, GameOutput out) {
+        this.world = world;
+        this.out = out;
+
+        PARSER = parser;
+        PLAYERS_ITEMS = new Inventory(world.getItems());
+        frame = new StringBuilder(1024);
+        roomFrame = new StringBuilder(256);
+        currentRoom = world.getStartRoom();
+        commands = CommandRegistry.getDefault();
     }
 
-
     /**
-     * This method will retrieve the room data from a csv file
+     * Create a game for one player in the given world that is driven one
+     * line at a time through handleLine, for example by a GameServer.
+     *
+     * @param world  The world to play in, which may be shared with other games
+     * @param out    Where the game shows its text
      */
-    public void getRoomData() {
-        try (Scanner scanner = new Scanner(Paths.get("src/com/company/RoomData.csv").toFile())) {
-            while (scanner.hasNextLine()) {
-                getRecordFromLine(scanner.nextLine());
+    public Game(World world, GameOutput out) {
+        this(world, null, out);
+    }
+
+        /**
+         *  Main play routine.  Loops until end of play.
+         *  Only games created with a parser can be played this way.
+         */
+        public void play ()
+        {
+            printWelcome();
+
+            // Enter the Main command loop.  Here we repeatedly read commands and
+            // execute them until the game is over.  The prompt is part of each
+            // frame, so the parser should not show one of its own.
+
+            while (!finished) {
+                frame.append("> ");
+                flush();
+                long waited = System.nanoTime();
+                String inputLine = PARSER.getLine();
+                if (metrics != null) {
+                    metrics.recordInputWait(System.nanoTime() - waited);
+                }
+                if (inputLine == null) {
+                    finish();   // the input has ended
+                } else {
+                    finished = runLine(inputLine);
+                    if (finished) {
+                        finish();
+                    }
+                }
             }
-            for (int i = 0; i < (descriptions.size()); i++) {
-                roomToDesc.put(rooms.get(i), descriptions.get(i));
-                roomToOccupancy.put(rooms.get(i), occupancies.get(i));
-                roomToItem.put(rooms.get(i), items.get(i));
-                roomToNumber.put(rooms.get(i), numbers.get(i));
+            flush();
+        }
+
+        /**
+         * Start the game by welcoming the player.
+         */
+        public synchronized void start ()
+        {
+            printWelcome();
+            flush();
+        }
+
+        /**
+         * Execute one line of input typed by the player, with all the
+         * commands on it, and show everything they printed in one write.
+         * @param inputLine The line that was typed.
+         * @return true If the game is over, false otherwise.
+         */
+        public synchronized boolean handleLine (String inputLine)
+        {
+            if (!finished && !leftShard) {
+                finished = runLine(inputLine);
+                if (finished) {
+                    finish();
+                }
+                flush();
             }
-        } catch (FileNotFoundException ex) {
-            System.out.println("Sorry there seems to be a problem retrieving the game data..");
-            ex.printStackTrace();
+            return finished;
         }
-    }
 
-    /**
-     * This method will take out each record from the line and add each record to it's corresponding list
-     *
-     * @param line, the String value of the line
-     */
-        private void getRecordFromLine (String line){
-            List<String> values = new ArrayList<>();
-            try (Scanner rowScanner = new Scanner(line)) {
-                rowScanner.useDelimiter(",");
-                while (rowScanner.hasNext()) {
-                    values.add(rowScanner.next());
+        /**
+         * Execute a command and show everything it printed in one write.
+         * @param command The command to execute.
+         * @return true If the game is over, false otherwise.
+         */
+        public synchronized boolean handleCommand (Command command)
+        {
+            if (!finished && !leftShard) {
+                finished = processCommand(command);
+                if (finished) {
+                    finish();
                 }
-                rooms.add(values.get(0));
-                descriptions.add(values.get(1));
-                occupancies.add(values.get(2));
-                items.add(values.get(3));
-                numbers.add(Integer.valueOf(values.get(4)));
+                flush();
+            }
+            return finished;
+        }
+
+        /**
+         * Execute commands one after the other without a player at the
+         * terminal, until they run out or one of them ends the game.
+         * @param commands The commands to execute.
+         * @return The number of commands executed.
+         */
+        public long runBatch (Iterator<Command> commands)
+        {
+            long executed = 0;
+            while (!finished && commands.hasNext()) {
+                handleCommand(commands.next());
+                executed++;
             }
+            return executed;
         }
 
+        /**
+         * Run the game without a screen: entering a room does not clear it.
+         * Used when commands are replayed from a log.
+         * @param headless true for no screen clearing.
+         */
+        public void setHeadless (boolean headless)
+        {
+            this.headless = headless;
+        }
+
+        /**
+         * Make everything that chance decides in this game, such as where a
+         * transporter sends the player, the same every time the game is
+         * played with the same seed and the same commands.
+         * @param seed The seed of the game's random numbers.
+         */
+        public void setSeed (long seed)
+        {
+            random = new Random(seed);
+        }
 
         /**
-         * Create all the rooms and link their exits together.
+         * Choose the commands this game understands.
+         * @param commands The handlers of the command words.
          */
-        private void createRooms ()
+        public void setCommands (CommandRegistry commands)
         {
-            TransporterRoom transporterRoom;
-            Room outside, mainHall, commonRoom, potionsLab, broomCloset, boardingRoom, hagridsHut;
-            // create the rooms
-            outside = new Room(roomToDesc.get("Outside"), roomToOccupancy.get("Outside"), roomToItem.get("Outside"));
-            mainHall = new Room(roomToDesc.get("Main Hall"), roomToOccupancy.get("Main Hall"), roomToItem.get("Main Hall"));
-            commonRoom = new Room(roomToDesc.get("Common Room"), roomToOccupancy.get("Common Room"), roomToItem.get("Common Room"));
-            potionsLab = new Room(roomToDesc.get("Potions Lab"), roomToOccupancy.get("Potions Lab"), roomToItem.get("Potions Lab"));
-            broomCloset = new Room(roomToDesc.get("Broom Closet"), roomToOccupancy.get("Broom Closet"), roomToItem.get("Broom Closet"));
-            boardingRoom = new Room(roomToDesc.get("Boarding Room"), roomToOccupancy.get("Boarding Room"), roomToItem.get("Boarding Room"));
-            hagridsHut = new Room(roomToDesc.get("Hagrid's Hut"), roomToOccupancy.get("Hagrid's Hut"), roomToItem.get("Hagrid's Hut"));
+            this.commands = commands;
+        }
+
+        /**
+         * Count the commands of this game and the rooms the player enters.
+         * @param metrics The metrics to count in, or null to not count.
+         */
+        public void setMetrics (GameMetrics metrics)
+        {
+            if (recorder != null) {
+                recorder.flush();
+            }
+            this.metrics = metrics;
+            recorder = metrics != null ? metrics.newRecorder() : null;
+        }
+
+        /**
+         * Hand what this game counted so far to its metrics, which otherwise
+         * happens only every so many commands.
+         */
+        void flushMetrics ()
+        {
+            if (recorder != null) {
+                recorder.flush();
+            }
+        }
+
+        /**
+         * Let the game play only in the rooms of one shard.
+         * @param map How the rooms are split into shards.
+         * @param shard The shard this game plays in.
+         */
+        public void setShard (ShardMap map, int shard)
+        {
+            this.shardMap = map;
+            this.shard = shard;
+        }
 
-            transporterRoom = new TransporterRoom("in the transporter room, this room will transport you to a random room!");
+        /**
+         * @return true if a move took the player into a room of another
+         *         shard, after which the game runs nothing more.
+         */
+        public boolean hasLeftShard ()
+        {
+            return leftShard;
+        }
 
-            // initialise room exits
-            outside.setExit("east", mainHall);
-            outside.setExit("west", hagridsHut);
+        /**
+         * @return The commands that were left to run when the player left
+         *         the shard, separated by semicolons, or "" if there were none.
+         */
+        public String takeUnfinished ()
+        {
+            if (unfinished == null) {
+                return "";
+            }
+            String text = unfinished.toString();
+            unfinished = null;
+            return text;
+        }
 
-            mainHall.setExit("west", outside);
-            mainHall.setExit("east", commonRoom);
-            mainHall.setExit("north", boardingRoom);
-            mainHall.setExit("south", potionsLab);
+        /**
+         * Let the player save and load the game.
+         * @param saveFile The file the game is saved to, or null to not allow saving.
+         */
+        public void setSaveFile (Path saveFile)
+        {
+            this.saveFile = saveFile;
+        }
 
-            commonRoom.setExit("north", broomCloset);
-            commonRoom.setExit("west", mainHall);
-            commonRoom.setExit("south", transporterRoom);
+        /**
+         * Record everything that changes where the player is or what they
+         * carry in a journal.
+         * @param journal The journal, or null to stop recording.
+         * @param sessionId The id of this game's session in the journal.
+         */
+        public void setJournal (Journal journal, long sessionId)
+        {
+            this.journal = journal;
+            this.sessionId = sessionId;
+        }
 
-            potionsLab.setExit("north", mainHall);
-            potionsLab.setExit("east", transporterRoom);
-            potionsLab.setExit("west", outside);
+        /**
+         * @return Where the player is and what they carry, for a snapshot.
+         */
+        public synchronized SessionState getState ()
+        {
+            return new SessionState(currentRoom.getNumber(), PLAYERS_ITEMS.getWords());
+        }
 
-            boardingRoom.setExit("east", broomCloset);
-            boardingRoom.setExit("south", mainHall);
+        /**
+         * Put the player back where a snapshot says and give them its items.
+         * @param state The state to restore.
+         * @throws IOException if the state's room does not exist in this world.
+         */
+        public synchronized void restore (SessionState state) throws IOException
+        {
+            Room room = world.getRoom(state.getRoom());
+            if (room == null) {
+                throw new IOException("the snapshot has room " + state.getRoom() + ", which does not exist");
+            }
+            currentRoom = room;
+            PLAYERS_ITEMS.setWords(state.getItems());
+        }
 
-            broomCloset.setExit("west", boardingRoom);
-            broomCloset.setExit("south", commonRoom);
+        /**
+         * Choose how the screen is cleared when the player enters a room.
+         * @param ansiClear true to send the ANSI clear-screen sequence, false
+         *                  to push the old text away with empty lines.
+         */
+        public void setAnsiClear (boolean ansiClear)
+        {
+            this.ansiClear = ansiClear;
+        }
 
-            hagridsHut.setExit("east", outside);
+        /**
+         * @return true If the game is over, false otherwise.
+         */
+        public boolean isFinished ()
+        {
+            return finished;
+        }
 
-            transporterRoom.setRooms(mainHall);
-            transporterRoom.setRooms(boardingRoom);
-            transporterRoom.setRooms(commonRoom);
-            transporterRoom.setRooms(outside);
-            transporterRoom.setRooms(hagridsHut);
-            transporterRoom.setRooms(potionsLab);
-            transporterRoom.setRooms(broomCloset);
+        /**
+         * @return The items the player has collected.
+         */
+        public List<String> getItems ()
+        {
+            return Collections.unmodifiableList(PLAYERS_ITEMS.getNames());
+        }
 
-            currentRoom = mainHall;  // start game in main hall
+        /**
+         * @return The room the player is currently in.
+         */
+        public Room getCurrentRoom ()
+        {
+            return currentRoom;
         }
 
+        /**
+         * End the game and say good bye.
+         */
+        private void finish ()
+        {
+            finished = true;
+            println("Thank you for playing.  Good bye.");
+        }
 
         /**
-         *  Main play routine.  Loops until end of play.
+         * Tell the player that their last line failed, instead of whatever
+         * half of its text was put together before it did.
          */
-        public void play ()
+        public synchronized void reportFailure ()
         {
-            printWelcome();
+            frame.setLength(0);
+            batching = false;
+            println("Sorry, that went wrong. Please try something else.");
+            flush();
+        }
 
-            // Enter the Main command loop.  Here we repeatedly read commands and
-            // execute them until the game is over.
+        /**
+         * Write the frame to the output, if there is anything in it.
+         */
+        void flush ()
+        {
+            if (frame.length() > 0) {
+                out.write(frame);
+                frame.setLength(0);
+            }
+        }
 
-            boolean finished = false;
-            while (!finished) {
-                Command command = PARSER.getCommand();
-                finished = processCommand(command);
+        /**
+         * Add clearing the screen to some text.
+         */
+        private void clearScreen (StringBuilder text)
+        {
+            if (headless) {
+                return;
+            }
+            if (ansiClear) {
+                text.append("\u001b[H\u001b[2J");
+            } else {
+                for(int i = 0; i < 25; i++) {
+                    text.append("\n\n");
+                }
             }
-            System.out.println("Thank you for playing.  Good bye.");
         }
 
         /**
@@ -179,131 +426,478 @@ public class Game {
          */
         private void printWelcome ()
         {
-            System.out.println();
-            System.out.println("Welcome to Hogwarts!");
-            System.out.println("The magical place of witches and warlocks! Explore the grounds by typing commands and try to collect items. ('go <direction>' format)");
-            System.out.println("Type '" + CommandWord.HELP + "' if you need help.");
-            System.out.println();
-            System.out.println(currentRoom.getLongDescription());
+            println("");
+            println("Welcome to Hogwarts!");
+            println("The magical place of witches and warlocks! Explore the grounds by typing commands and try to collect items. ('go <direction>' format)");
+            println("Type '" + CommandWord.HELP + "' if you need help.");
+            println("");
+            println(currentRoom.getLongDescription());
         }
 
         /**
-         * Given a command, process (that is: execute) the command.
-         * @param command The command to be processed.
-         * @return true If the command ends the game, false otherwise.
+         * Execute the commands of a line: one, several separated by
+         * semicolons, or a macro. A macro definition takes the rest of the
+         * line, with its semicolons. Several commands run as a batch.
+         * @param line The line that was typed.
+         * @return true If a command ends the game, false otherwise.
+         */
+        private boolean runLine (CharSequence line)
+        {
+            int length = line.length();
+            int end = indexOf(line, ';', 0, length);
+            if (end == length) {
+                return runCommand(Parser.parse(line));     // the usual single command
+            }
+            beginBatch();
+            try {
+                for (int start = 0; start <= length; start = end + 1) {
+                    end = indexOf(line, ';', start, length);
+                    Command command = Parser.parse(line, start, end);
+                    if (command.getCommandWord() == CommandWord.MACRO) {
+                        end = length;
+                        command = Parser.parse(line, start, end);
+                    } else if (command.getVerb() == null) {
+                        continue;   // nothing between two semicolons
+                    }
+                    if (runCommand(command)) {
+                        return true;
+                    }
+                    if (leftShard) {
+                        if (end + 1 < length) {
+                            unfinished().append(line, end + 1, length);
+                        }
+                        return false;
+                    }
+                }
+                return false;
+            } finally {
+                endBatch();
+            }
+        }
+
+        /**
+         * Execute a command of a line, or the macro it names if it is not a command.
          */
-        private boolean processCommand (Command command)
+        private boolean runCommand (Command command)
         {
-            boolean wantToQuit = false;
+            if (command.isUnknown() && macros != null) {
+                String name = command.getVerb();
+                Macro macro = name != null ? macros.get(name) : null;
+                if (macro != null) {
+                    return runMacro(macro);
+                }
+            }
+            return processCommand(command);
+        }
 
-            CommandWord commandWord = command.getCommandWord();
+        /**
+         * Execute the commands of a macro as a batch, until one ends the game.
+         */
+        private boolean runMacro (Macro macro)
+        {
+            boolean outermost = !batching;
+            if (outermost) {
+                beginBatch();
+            }
+            try {
+                for (int i = 0; i < macro.size(); i++) {
+                    if (processCommand(macro.getCommand(i))) {
+                        return true;
+                    }
+                    if (leftShard) {
+                        for (i++; i < macro.size(); i++) {
+                            macro.getCommand(i).appendTo(unfinished());
+                        }
+                        return false;
+                    }
+                }
+                return false;
+            } finally {
+                if (outermost) {
+                    endBatch();
+                }
+            }
+        }
 
-            switch (commandWord) {
-                case UNKNOWN:
-                    System.out.println("I don't know what you mean...");
-                    break;
+        /**
+         * @return Where the next command that is left for the shard the
+         *         player went to is added, after those that already are.
+         */
+        private StringBuilder unfinished ()
+        {
+            if (unfinished == null) {
+                unfinished = new StringBuilder();
+            } else if (unfinished.length() > 0) {
+                unfinished.append("; ");
+            }
+            return unfinished;
+        }
 
-                case HELP:
-                    printHelp();
-                    break;
+        private void beginBatch ()
+        {
+            batching = true;
+            batchStart = frame.length();
+            roomAt = -1;
+        }
 
-                case GO:
-                    goRoom(command);
-                    break;
+        /**
+         * Show the room once for the whole batch, if any of its commands
+         * showed it: where the last of them did, after clearing the screen
+         * at the start of the batch.
+         */
+        private void endBatch ()
+        {
+            batching = false;
+            if (roomAt < 0 || leftShard) {
+                return;
+            }
+            roomFrame.setLength(0);
+            appendRoom(roomFrame);
+            frame.insert(roomAt, roomFrame);
+            roomFrame.setLength(0);
+            clearScreen(roomFrame);
+            frame.insert(batchStart, roomFrame);
+        }
 
-                case PICKUP:
-                    addItem(currentRoom.getItem());
-                    currentRoom.setItem("no item");
-                    break;
+        private static int indexOf (CharSequence line, char c, int start, int end)
+        {
+            while (start < end && line.charAt(start) != c) {
+                start++;
+            }
+            return start;
+        }
 
-                case QUIT:
-                    wantToQuit = quit(command);
-                    break;
+        /**
+         * Given a command, process (that is: execute) the command by
+         * handing it to the handler registered for its command word.
+         * @param command The command to be processed.
+         * @return true If the command ends the game, false otherwise.
+         */
+        boolean processCommand (Command command)
+        {
+            if (recorder != null) {
+                recorder.commandStarted();
+            }
+            currentRoom = latest(currentRoom);
+            CommandHandler handler = commands.get(command);
+            if (handler == null) {
+                handler = commands.get(CommandWord.UNKNOWN);
+            }
+            boolean wantToQuit = handler != null && handler.execute(this, command);
+            if (recorder != null) {
+                recorder.commandDone(command.getCommandWord());
+            }
+            if (wantToQuit && journal != null) {
+                journal.quit(sessionId);
             }
             return wantToQuit;
         }
 
-        // implementations of user commands:
+        // what the command handlers do the game through:
 
         /**
-         * Print out some help information.
-         * Here we print some stupid, cryptic message and a list of the
-         * command words.
+         * Add a line of text to the frame shown to the player.
+         * @param text The text to show.
          */
-        private void printHelp ()
+        public void println (String text)
         {
-            System.out.println("You are lost. You have no items. You wander");
-            System.out.println("around at Hogwarts and find Items.(there are four total!)");
-            System.out.println();
-            System.out.println("Your command words are:");
-            PARSER.showCommands();
+            frame.append(text).append('\n');
         }
 
-    /**
-     * Print out the players Items
-     * Here we print out a list of the players items that he/she has collected
-     */
-    private void printItems()
-    {
-        for(String item : PLAYERS_ITEMS){
-            if(!(item.equals("nothing"))) {
-                System.out.println(item);
+        /**
+         * Add text to the frame shown to the player, without a line break.
+         * @param text The text to show.
+         */
+        public void print (CharSequence text)
+        {
+            frame.append(text);
+        }
+
+        /**
+         * Clear the screen and show the room the player is in and the items
+         * they have collected.
+         */
+        public void showRoom ()
+        {
+            if (leftShard) {
+                return;                     // the shard that owns the room shows it
+            }
+            if (batching) {
+                roomAt = frame.length();    // shown when the batch ends
+                return;
             }
+            clearScreen(frame);
+            appendRoom(frame);
         }
-    }
+
+        private void appendRoom (StringBuilder text)
+        {
+            currentRoom.appendLongDescription(text);
+            text.append("\n\nCollected Items: \n");
+            PLAYERS_ITEMS.appendTo(text);
+        }
+
         /**
-         * Try to go in one direction. If there is an exit, enter the new
-         * room, otherwise print an error message.
+         * Define a macro: a name for a run of commands separated by
+         * semicolons. A macro the commands name is replaced by its own
+         * commands, as it is now.
+         * @param name The name of the macro, in lower case.
+         * @param text The commands, for example "go east; go north; pickup".
          */
-        private void goRoom (Command command)
+        public void defineMacro (String name, String text)
         {
-            if (!command.hasSecondWord()) {
-                // if there is no second word, we don't know where to go...
-                System.out.println("Go where?");
+            if (!Parser.parse(name).isUnknown() || commands.hasVerb(name)) {
+                println("A macro can not be called " + name + ", that is a command.");
                 return;
             }
+            if (macros != null && macros.size() >= MAX_MACROS && !macros.containsKey(name)) {
+                println("You can not have more than " + MAX_MACROS + " macros.");
+                return;
+            }
+            List<Command> commands = new ArrayList<>();
+            int length = text.length();
+            int end;
+            for (int start = 0; start <= length; start = end + 1) {
+                end = indexOf(text, ';', start, length);
+                Command command = Parser.parse(text, start, end);
+                String word = command.isUnknown() ? command.getVerb() : null;
+                Macro inner = word != null && macros != null ? macros.get(word) : null;
+                if (command.getCommandWord() == CommandWord.MACRO) {
+                    println("A macro can not define macros.");
+                    return;
+                } else if (inner != null) {
+                    for (int i = 0; i < inner.size(); i++) {
+                        commands.add(inner.getCommand(i));
+                    }
+                } else if (!command.isUnknown() || word != null) {
+                    commands.add(command);
+                }
+                if (commands.size() > MAX_MACRO_COMMANDS) {
+                    println("A macro can not have more than " + MAX_MACRO_COMMANDS + " commands.");
+                    return;
+                }
+            }
+            if (macros == null) {
+                macros = new LinkedHashMap<>();
+            }
+            macros.put(name, new Macro(name, text, commands.toArray(new Command[commands.size()])));
+            println("Macro " + name + ": " + text);
+        }
 
-            String direction = command.getSecondWord();
+        /**
+         * Give the player a macro without showing anything, for example one
+         * they defined before their session came from another shard.
+         * @param macro The macro; one of the same name is replaced.
+         */
+        public void addMacro (Macro macro)
+        {
+            if (macros == null) {
+                macros = new LinkedHashMap<>();
+            }
+            macros.put(macro.getName(), macro);
+        }
 
-            // Try to leave current room.
-            Room nextRoom = currentRoom.getExit(direction);
+        /**
+         * @return The macros the player defined, in the order they were first defined.
+         */
+        public Collection<Macro> getMacros ()
+        {
+            return macros != null ? Collections.unmodifiableCollection(macros.values())
+                    : Collections.<Macro>emptyList();
+        }
 
-            if (nextRoom == null) {
-                System.out.println("There is no door!");
+        /**
+         * Show a macro, or all of them.
+         * @param name The name of the macro, or null for all.
+         */
+        public void showMacros (String name)
+        {
+            if (name != null) {
+                Macro macro = macros != null ? macros.get(name) : null;
+                println(macro == null ? "There is no macro called " + name + "." : "Macro " + name + ": " + macro.getText());
+            } else if (macros == null) {
+                println("You have no macros. Type 'macro <name> <command>; <command>' to define one.");
             } else {
-                currentRoom = nextRoom;
-                for(int i = 0; i < 25; i++) {
-                    System.out.println("\n");
+                for (Macro macro : macros.values()) {
+                    println("Macro " + macro.getName() + ": " + macro.getText());
                 }
-                System.out.println(currentRoom.getLongDescription());
-                System.out.println("\n" + "Collected Items: ");
-                printItems();
             }
         }
 
+    /**
+     * Print out the players Items
+     * Here we add a list of the players items that he/she has collected to the frame
+     */
+    public void printItems()
+    {
+        PLAYERS_ITEMS.appendTo(frame);
+    }
+
         /**
-         * "Quit" was entered. Check the rest of the command to see
-         * whether we really quit the game.
-         * @return true, if this command quits the game, false otherwise.
+         * Move the player to another room.
+         * @param room The room the player is in now.
          */
-        private boolean quit (Command command)
+        public void moveTo (Room room)
         {
-            if (command.hasSecondWord()) {
-                System.out.println("Quit what?");
-                return false;
-            } else {
-                return true;  // signal that we want to quit
+            currentRoom = latest(room);
+            if (shardMap != null && shardMap.shardOf(room.getNumber()) != shard) {
+                leftShard = true;
+            }
+            if (recorder != null) {
+                recorder.visited(room.getNumber());
             }
+            if (journal != null) {
+                journal.moved(sessionId, room.getNumber());
+            }
+        }
+
+        /**
+         * @param room A room of the world.
+         * @return The room, or the version of it that replaced it when the room data was reloaded.
+         */
+        private Room latest (Room room)
+        {
+            if (room.isRetired()) {
+                Room replacement = world.getRoom(room.getNumber());
+                if (replacement != null) {
+                    return replacement;
+                }
+            }
+            return room;
+        }
+
+        /**
+         * @param item The name of an item.
+         * @return true if the player carries the item.
+         */
+        public boolean hasItem (String item)
+        {
+            int id = world.getItems().getId(item);
+            return id >= 0 && PLAYERS_ITEMS.contains(id);
         }
 
      /**
-      * "Yes" was entered. So, we add the item to the list of items
+      * Add an item that the player took from the room they are in.
       *
       * @param item, the item to add
+      * @return true if the item was added, false if the player already had it.
      */
-        private void addItem (String item)
+        public boolean addItem (String item)
         {
-            PLAYERS_ITEMS.add(item);
+            int id = world.getItems().getId(item);
+            if (!PLAYERS_ITEMS.add(id)) {
+                return false;
+            }
+            if (journal != null) {
+                journal.took(sessionId, currentRoom.getNumber(), id);
+            }
+            if (PLAYERS_ITEMS.isComplete()) {
+                println("You have found all " + PLAYERS_ITEMS.size() + " items. You win!");
+            }
+            return true;
         }
-}
 
+        /**
+         * Remove an item that the player put down in the room they are in.
+         * @param id The ID of the item.
+         */
+        public void removeItem (int id)
+        {
+            if (PLAYERS_ITEMS.remove(id) && journal != null) {
+                journal.dropped(sessionId, currentRoom.getNumber(), id);
+            }
+        }
+
+        /**
+         * Save the game: write where the player is, what they carry and
+         * where the items of the world are to the save file. The file is
+         * written next to the old one first, so a failed save keeps the old game.
+         */
+        public void save ()
+        {
+            if (saveFile == null) {
+                println("This game can not be saved.");
+                return;
+            }
+            Path written = saveFile.resolveSibling(saveFile.getFileName() + ".new");
+            try {
+                try (FileChannel channel = FileChannel.open(written, StandardOpenOption.CREATE,
+                        StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                    SnapshotWriter snapshot = new SnapshotWriter(channel, SnapshotWriter.SAVED_GAME);
+                    world.writeItems(snapshot);
+                    getState().write(snapshot);
+                    snapshot.flush();
+                }
+                Files.move(written, saveFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                println("Your game has been saved.");
+            } catch (IOException ex) {
+                println("Sorry, the game could not be saved: " + ex.getMessage());
+            }
+        }
+
+        /**
+         * Load the saved game: put the player and the items of the world back
+         * to where they were when the game was saved.
+         */
+        public void load ()
+        {
+            if (saveFile == null) {
+                println("This game can not be loaded.");
+                return;
+            }
+            if (!Files.exists(saveFile)) {
+                println("There is no saved game yet.");
+                return;
+            }
+            try (FileChannel channel = FileChannel.open(saveFile, StandardOpenOption.READ)) {
+                SnapshotReader snapshot = new SnapshotReader(channel, SnapshotWriter.SAVED_GAME);
+                // read the whole file before anything changes, so a damaged one changes nothing
+                int[] places = world.readItemPlaces(snapshot);
+                SessionState state = SessionState.read(snapshot, world);
+                if (world.getRoom(state.getRoom()) == null) {
+                    throw new IOException("the saved game has room " + state.getRoom() + ", which does not exist");
+                }
+                world.placeItems(places);
+                restore(state);
+                world.reconcileItems(BitSet.valueOf(state.getItems()));
+            } catch (IOException ex) {
+                println("Sorry, the saved game could not be loaded: " + ex.getMessage());
+                return;
+            }
+            showRoom();
+            println("Your saved game has been loaded.");
+        }
+
+        /**
+         * @return The world the game is played in.
+         */
+        public World getWorld ()
+        {
+            return world;
+        }
+
+        /**
+         * @return The items the player carries.
+         */
+        public Inventory getInventory ()
+        {
+            return PLAYERS_ITEMS;
+        }
+
+        /**
+         * @return The random numbers of this game: its own if it was given a
+         *         seed, otherwise those of the thread it runs on.
+         */
+        public Random getRandom ()
+        {
+            return random != null ? random : ThreadLocalRandom.current();
+        }
+
+        /**
+         * @return The commands this game understands.
+         */
+        public CommandRegistry getCommands ()
+        {
+            return commands;
+        }
+}
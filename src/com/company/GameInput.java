@@ -0,0 +1,18 @@
+package com.company;
+
+/**
+ * A source of input lines for a game, for example the terminal
+ * or a network connection.
+ *
+ * @author  Kwinn Danforth
+ * @version 1.0.01
+ */
+public interface GameInput
+{
+    /**
+     * Read the next line typed by the player, blocking until one is available.
+     * @return The line without its line terminator, or null when there is
+     *         no more input.
+     */
+    String readLine();
+}
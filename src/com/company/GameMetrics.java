@@ -0,0 +1,465 @@
+package com.company;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * Where the time of a game server goes: how many commands of each kind
+ * were processed and how long they took, how long players took to type
+ * them, which rooms are entered most, gauges such as the number of active
+ * sessions, and how long loading, reloading and checkpoints took.
+ *
+ * A command takes about a tenth of a microsecond, so counting on its way
+ * has to be nearly free. Each game counts into a Recorder of its own with
+ * plain fields, and only about one command in SAMPLE the recorder reads
+ * the clock, records the time in the LatencyHistogram of its command word
+ * and adds its counts to the shared StripedCounters. The gap between two
+ * timed commands is random, so a player who repeats the same few commands
+ * does not always have the same one timed. Counts are therefore exact but
+ * may be behind by up to 2 * SAMPLE commands per game, and the percentiles
+ * are those of a sample of the commands. In the same way only about one in
+ * VISIT_SAMPLE rooms entered is counted for the hottest rooms, whose counts
+ * are estimates; the number of moves is exact. Games that are not
+ * given metrics do not count anything at all. The numbers can be read over JMX (register) and written
+ * to a file every so often as text or, if the file name ends in .json, as
+ * JSON (startDump).
+ *
+ * @author  Kwinn Danforth
+ * @version 1.0.01
+ */
+public class GameMetrics implements GameMetricsMXBean, AutoCloseable
+{
+    /** The name the metrics are registered under over JMX. */
+    public static final String OBJECT_NAME = "com.company:type=GameMetrics";
+
+    /** About every how many commands a recorder times one and publishes its counts; a power of two. */
+    public static final int SAMPLE = 64;
+    /** About every how many rooms entered a recorder counts one for the hottest rooms; a power of two. */
+    public static final int VISIT_SAMPLE = 8;
+
+    private static final int HEAT_LIMIT = 1 << 22;     // rooms beyond this are not counted one by one
+    private static final int HOTTEST = 10;
+
+    private final LatencyHistogram[] commands;          // by command word ordinal, sampled
+    private final StripedCounter[] commandCounts;       // by command word ordinal, every command
+    private final LatencyHistogram inputWait;
+    private final StripedCounter moves;
+    private final AtomicIntegerArray visits;            // by room number, sampled
+    private final ConcurrentHashMap<String, LatencyHistogram> timings;
+    private final ConcurrentHashMap<String, Gauge> gauges;
+    private ScheduledExecutorService dumper;
+    private ObjectName registered;
+
+    /**
+     * Create empty metrics.
+     * @param rooms The number of rooms of the world, so room visits can be counted.
+     */
+    public GameMetrics(int rooms)
+    {
+        commands = new LatencyHistogram[CommandWord.values().length];
+        commandCounts = new StripedCounter[commands.length];
+        for (int i = 0; i < commands.length; i++) {
+            commands[i] = new LatencyHistogram();
+            commandCounts[i] = new StripedCounter();
+        }
+        inputWait = new LatencyHistogram();
+        moves = new StripedCounter();
+        visits = new AtomicIntegerArray(Math.min(rooms, HEAT_LIMIT));
+        timings = new ConcurrentHashMap<>();
+        gauges = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * @return A recorder for one game to count its commands and moves with.
+     */
+    public Recorder newRecorder()
+    {
+        return new Recorder();
+    }
+
+    /**
+     * @param nanos How long a player took to type a command.
+     */
+    public void recordInputWait(long nanos)
+    {
+        inputWait.record(nanos);
+    }
+
+    /**
+     * Record how long something that is not a command took, such as loading the world.
+     * @param name What took the time, for example "world.load".
+     * @param nanos How long it took.
+     */
+    public void time(String name, long nanos)
+    {
+        LatencyHistogram histogram = timings.get(name);
+        if (histogram == null) {
+            LatencyHistogram created = new LatencyHistogram();
+            histogram = timings.putIfAbsent(name, created);
+            if (histogram == null) {
+                histogram = created;
+            }
+        }
+        histogram.record(nanos);
+    }
+
+    /**
+     * Show a value that is read whenever the metrics are.
+     * @param name The name of the value, for example "sessions.active".
+     * @param gauge Where the value comes from.
+     */
+    public void gauge(String name, Gauge gauge)
+    {
+        gauges.put(name, gauge);
+    }
+
+    /**
+     * @return How many times a player entered a room.
+     */
+    public long getMoveCount()
+    {
+        return moves.sum();
+    }
+
+    public Map<String, Long> getCommandCounts()
+    {
+        Map<String, Long> counts = new TreeMap<>();
+        for (CommandWord word : CommandWord.values()) {
+            counts.put(name(word), commandCounts[word.ordinal()].sum());
+        }
+        return counts;
+    }
+
+    public Map<String, Long> getCommandP99Nanos()
+    {
+        Map<String, Long> p99 = new TreeMap<>();
+        for (CommandWord word : CommandWord.values()) {
+            p99.put(name(word), commands[word.ordinal()].snapshot().getPercentile(99));
+        }
+        return p99;
+    }
+
+    public Map<String, Long> getGauges()
+    {
+        Map<String, Long> values = new TreeMap<>();
+        for (Map.Entry<String, Gauge> gauge : gauges.entrySet()) {
+            values.put(gauge.getKey(), gauge.getValue().getValue());
+        }
+        return values;
+    }
+
+    public Map<String, Long> getHottestRooms()
+    {
+        // keep the HOTTEST highest counts, in order, while going over all rooms once
+        int[] rooms = new int[HOTTEST];
+        int[] counts = new int[HOTTEST];
+        int kept = 0;
+        for (int r = 0; r < visits.length(); r++) {
+            int count = visits.get(r);
+            if (count == 0 || (kept == HOTTEST && count <= counts[HOTTEST - 1])) {
+                continue;
+            }
+            int at = kept < HOTTEST ? kept++ : HOTTEST - 1;
+            while (at > 0 && counts[at - 1] < count) {
+                rooms[at] = rooms[at - 1];
+                counts[at] = counts[at - 1];
+                at--;
+            }
+            rooms[at] = r;
+            counts[at] = count;
+        }
+        Map<String, Long> hottest = new LinkedHashMap<>();
+        for (int i = 0; i < kept; i++) {
+            hottest.put(String.valueOf(rooms[i]), (long) counts[i] * VISIT_SAMPLE);
+        }
+        return hottest;
+    }
+
+    public String getJson()
+    {
+        StringBuilder json = new StringBuilder(2048);
+        json.append("{\"commands\":{");
+        String separator = "";
+        for (CommandWord word : CommandWord.values()) {
+            long count = commandCounts[word.ordinal()].sum();
+            if (count > 0) {
+                json.append(separator).append('"').append(name(word)).append("\":");
+                appendJson(json, count, commands[word.ordinal()].snapshot());
+                separator = ",";
+            }
+        }
+        json.append("},\"inputWait\":");
+        LatencyHistogram.Snapshot waits = inputWait.snapshot();
+        appendJson(json, waits.getCount(), waits);
+        json.append(",\"timings\":{");
+        separator = "";
+        for (Map.Entry<String, LatencyHistogram> timing : new TreeMap<>(timings).entrySet()) {
+            json.append(separator).append('"').append(timing.getKey()).append("\":");
+            LatencyHistogram.Snapshot snapshot = timing.getValue().snapshot();
+            appendJson(json, snapshot.getCount(), snapshot);
+            separator = ",";
+        }
+        json.append("},\"gauges\":");
+        appendJson(json, getGauges());
+        json.append(",\"moves\":").append(getMoveCount()).append(",\"hottestRooms\":");
+        appendJson(json, getHottestRooms());
+        return json.append('}').toString();
+    }
+
+    /**
+     * @return Everything, as lines of text.
+     */
+    public String getText()
+    {
+        StringBuilder text = new StringBuilder(2048);
+        text.append("commands\n");
+        for (CommandWord word : CommandWord.values()) {
+            long count = commandCounts[word.ordinal()].sum();
+            if (count > 0) {
+                appendText(text, name(word), count, commands[word.ordinal()].snapshot());
+            }
+        }
+        text.append("input\n");
+        LatencyHistogram.Snapshot waits = inputWait.snapshot();
+        appendText(text, "wait", waits.getCount(), waits);
+        text.append("timings\n");
+        for (Map.Entry<String, LatencyHistogram> timing : new TreeMap<>(timings).entrySet()) {
+            LatencyHistogram.Snapshot snapshot = timing.getValue().snapshot();
+            appendText(text, timing.getKey(), snapshot.getCount(), snapshot);
+        }
+        text.append("gauges\n");
+        for (Map.Entry<String, Long> gauge : getGauges().entrySet()) {
+            text.append(String.format("  %-20s %,d%n", gauge.getKey(), gauge.getValue()));
+        }
+        text.append(String.format("moves %,d, hottest rooms %s%n", getMoveCount(), getHottestRooms()));
+        return text.toString();
+    }
+
+    /**
+     * Make the metrics readable over JMX, as OBJECT_NAME.
+     * @throws JMException if they can not be registered, for example because other metrics already are.
+     */
+    public synchronized void register() throws JMException
+    {
+        if (registered == null) {
+            ObjectName name = new ObjectName(OBJECT_NAME);
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, name);
+            registered = name;
+        }
+    }
+
+    /**
+     * Write the metrics to a file every so often, through a temporary file
+     * so the file is always whole. A file whose name ends in .json gets
+     * JSON, any other file text.
+     * @param file The file to write.
+     * @param periodMillis How often to write it.
+     */
+    public synchronized void startDump(final Path file, long periodMillis)
+    {
+        if (dumper != null) {
+            dumper.shutdownNow();
+        }
+        dumper = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            public Thread newThread(Runnable task)
+            {
+                Thread thread = new Thread(task, "metrics-dump");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        dumper.scheduleAtFixedRate(new Runnable() {
+            public void run()
+            {
+                try {
+                    dump(file);
+                } catch (IOException ex) {
+                    // try again next time; the metrics are still there
+                }
+            }
+        }, periodMillis, periodMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Write the metrics to a file now.
+     * @param file The file to write; JSON if its name ends in .json, otherwise text.
+     * @throws IOException if the file can not be written.
+     */
+    public void dump(Path file) throws IOException
+    {
+        boolean json = file.getFileName().toString().endsWith(".json");
+        Path written = file.resolveSibling(file.getFileName() + ".new");
+        Files.write(written, (json ? getJson() + "\n" : getText()).getBytes(StandardCharsets.UTF_8));
+        Files.move(written, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Stop writing the file and remove the metrics from JMX.
+     */
+    public synchronized void close()
+    {
+        if (dumper != null) {
+            dumper.shutdownNow();
+            dumper = null;
+        }
+        if (registered != null) {
+            try {
+                ManagementFactory.getPlatformMBeanServer().unregisterMBean(registered);
+            } catch (JMException ex) {
+                // it is gone already
+            }
+            registered = null;
+        }
+    }
+
+    private static String name(CommandWord word)
+    {
+        return word.name().toLowerCase(Locale.ROOT);
+    }
+
+    private static void appendJson(StringBuilder json, long count, LatencyHistogram.Snapshot snapshot)
+    {
+        json.append("{\"count\":").append(count)
+                .append(",\"p50Nanos\":").append(snapshot.getPercentile(50))
+                .append(",\"p99Nanos\":").append(snapshot.getPercentile(99))
+                .append(",\"maxNanos\":").append(snapshot.getMax()).append('}');
+    }
+
+    private static void appendJson(StringBuilder json, Map<String, Long> values)
+    {
+        json.append('{');
+        String separator = "";
+        for (Map.Entry<String, Long> value : values.entrySet()) {
+            json.append(separator).append('"').append(value.getKey()).append("\":").append(value.getValue());
+            separator = ",";
+        }
+        json.append('}');
+    }
+
+    private static void appendText(StringBuilder text, String name, long count,
+                                   LatencyHistogram.Snapshot snapshot)
+    {
+        text.append(String.format("  %-20s %,12d  p50 %,12d ns  p99 %,12d ns  max %,14d ns%n", name,
+                count, snapshot.getPercentile(50), snapshot.getPercentile(99), snapshot.getMax()));
+    }
+
+    /**
+     * Counts the commands and moves of one game. A recorder must only be
+     * used by one thread at a time, the way a game is played; it hands its
+     * counts to the metrics when it times a command and when it is flushed.
+     */
+    public class Recorder
+    {
+        private final long[] counts = new long[commands.length];
+        private final int[] entered = new int[SAMPLE];     // sampled rooms entered, not counted yet
+        private int enteredCount;
+        private long moveCount;
+        private int untilTimed = SAMPLE;
+        private int untilEntered = VISIT_SAMPLE;
+        private int random = System.identityHashCode(this) | 1;
+        private long started = -1;          // when the command being timed started; -1: not timing
+
+        private Recorder()
+        {
+        }
+
+        /**
+         * A command is about to be processed.
+         */
+        public void commandStarted()
+        {
+            if (--untilTimed == 0) {
+                untilTimed = gap(SAMPLE);
+                started = System.nanoTime();
+            }
+        }
+
+        /**
+         * The command that was started has been processed.
+         * @param word Its command word.
+         */
+        public void commandDone(CommandWord word)
+        {
+            counts[word.ordinal()]++;
+            if (started != -1) {
+                commands[word.ordinal()].record(System.nanoTime() - started);
+                started = -1;
+                flush();
+            }
+        }
+
+        /**
+         * @param room The number of a room the player entered.
+         */
+        public void visited(int room)
+        {
+            moveCount++;
+            if (--untilEntered == 0) {
+                untilEntered = gap(VISIT_SAMPLE);
+                if (enteredCount == entered.length) {
+                    flush();
+                }
+                entered[enteredCount++] = room;
+            }
+        }
+
+        /**
+         * Hand everything counted so far to the metrics.
+         */
+        public void flush()
+        {
+            for (int w = 0; w < counts.length; w++) {
+                if (counts[w] != 0) {
+                    commandCounts[w].add(counts[w]);
+                    counts[w] = 0;
+                }
+            }
+            if (moveCount > 0) {
+                moves.add(moveCount);
+                moveCount = 0;
+            }
+            for (int i = 0; i < enteredCount; i++) {
+                if (entered[i] >= 0 && entered[i] < visits.length()) {
+                    visits.getAndIncrement(entered[i]);
+                }
+            }
+            enteredCount = 0;
+        }
+
+        /**
+         * @return A random gap of about mean, so that samples do not follow
+         * a pattern in what the player does.
+         */
+        private int gap(int mean)
+        {
+            random ^= random << 13;             // xorshift
+            random ^= random >>> 17;
+            random ^= random << 5;
+            return mean / 2 + (random & (mean - 1));
+        }
+    }
+
+    /**
+     * A value that is read when the metrics are, such as the number of sessions.
+     */
+    public interface Gauge
+    {
+        long getValue();
+    }
+}
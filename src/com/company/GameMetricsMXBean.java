@@ -0,0 +1,38 @@
+package com.company;
+
+import java.util.Map;
+
+/**
+ * What GameMetrics shows over JMX, for example in JConsole under
+ * com.company:type=GameMetrics.
+ *
+ * @author  Kwinn Danforth
+ * @version 1.0.01
+ */
+public interface GameMetricsMXBean
+{
+    /**
+     * @return How many commands of each kind were processed, by command word.
+     */
+    Map<String, Long> getCommandCounts();
+
+    /**
+     * @return The 99th percentile of the time each kind of command took, in nanoseconds.
+     */
+    Map<String, Long> getCommandP99Nanos();
+
+    /**
+     * @return The current value of every gauge, such as the number of active sessions.
+     */
+    Map<String, Long> getGauges();
+
+    /**
+     * @return The rooms that were entered most often, with about how often.
+     */
+    Map<String, Long> getHottestRooms();
+
+    /**
+     * @return Everything, as JSON.
+     */
+    String getJson();
+}
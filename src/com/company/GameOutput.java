@@ -0,0 +1,19 @@
+package com.company;
+
+/**
+ * A destination for the text a game shows to its player, for example
+ * the terminal or a network connection.
+ *
+ * @author  Kwinn Danforth
+ * @version 1.0.01
+ */
+public interface GameOutput
+{
+    /**
+     * Show some text to the player. The text is written as is, so it must
+     * contain its own line breaks. The caller may reuse the text (for example
+     * a StringBuilder) as soon as write returns.
+     * @param text The text to show.
+     */
+    void write(CharSequence text);
+}
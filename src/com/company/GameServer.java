@@ -0,0 +1,490 @@
+package com.company;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A server that hosts many games in one shared World.
+ *
+ * Sessions do not own a thread. Each session keeps a queue of the lines its
+ * player has typed; when a line arrives the session is scheduled on a small
+ * pool of worker threads, which runs its pending lines and then lets it go.
+ * A session therefore only costs its own player state while it is idle, so
+ * thousands of waiting players fit in a bounded heap. The lines of one
+ * session are always handled one after the other, never at the same time.
+ *
+ * A checkpoint writes the state of every session and the items of the world
+ * to a file, so that the server can be restarted without sending everyone
+ * back to the start. After a restore the saved sessions wait until their
+ * players come back and resume them. Between checkpoints, what the players
+ * do can be recorded in a Journal; recover restores the last checkpoint and
+ * replays the journal on top of it.
+ *
+ * With GameMetrics the server counts what its sessions do, shows how many
+ * sessions are open and waiting, and times its checkpoints.
+ *
+ * A line that fails with an exception does not end its session: the
+ * player is told that it went wrong and the exception is logged.
+ *
+ * @author  Kwinn Danforth
+ * @version 1.0.01
+ */
+public class GameServer
+{
+    private static final Logger LOG = Logger.getLogger(GameServer.class.getName());
+
+    private final World world;
+    private final ExecutorService workers;
+    private final ConcurrentHashMap<Long, Session> sessions;
+    private final ConcurrentHashMap<Long, SessionState> saved;     // restored, not resumed yet
+    private final AtomicLong nextSessionId;
+    private final int maxSessions;
+    private final AtomicInteger openSessions;      // taken before a session opens, so the limit holds
+    private volatile Journal journal;
+    private volatile GameMetrics metrics;
+
+    /**
+     * Create a server for the given world.
+     * @param world The world all sessions play in.
+     * @param workerThreads The number of threads that run the sessions.
+     * @param maxSessions The most sessions that may be open at once.
+     */
+    public GameServer(World world, int workerThreads, int maxSessions)
+    {
+        this.world = world;
+        this.maxSessions = maxSessions;
+        workers = Executors.newFixedThreadPool(workerThreads);
+        sessions = new ConcurrentHashMap<>();
+        saved = new ConcurrentHashMap<>();
+        nextSessionId = new AtomicLong();
+        openSessions = new AtomicInteger();
+    }
+
+    /**
+     * Open a new session; the player is welcomed on the given output.
+     * @param out Where the session shows its text.
+     * @return The new session.
+     * @throws IllegalStateException if the server is full.
+     */
+    public Session open(GameOutput out)
+    {
+        reserve();
+        Session session = new Session(nextSessionId.incrementAndGet(), new Game(world, out));
+        session.getGame().setJournal(journal, session.getId());
+        session.getGame().setMetrics(metrics);
+        sessions.put(session.getId(), session);
+        session.submit(null);   // runs the welcome on a worker
+        return session;
+    }
+
+    /**
+     * Take a place for a new session.
+     * @throws IllegalStateException if the server is full.
+     */
+    private void reserve()
+    {
+        if(openSessions.incrementAndGet() > maxSessions) {
+            openSessions.decrementAndGet();
+            throw new IllegalStateException("The server is full (" + maxSessions + " sessions)");
+        }
+    }
+
+    /**
+     * Record what the players of sessions opened from now on do.
+     * @param journal The journal to record in, or null to stop recording.
+     */
+    public void setJournal(Journal journal)
+    {
+        this.journal = journal;
+    }
+
+    /**
+     * Count what the players of sessions opened from now on do, and show
+     * the number of sessions as the gauges sessions.active and sessions.saved.
+     * @param metrics The metrics to count in, or null to stop counting.
+     */
+    public void setMetrics(GameMetrics metrics)
+    {
+        this.metrics = metrics;
+        if (metrics != null) {
+            metrics.gauge("sessions.active", new GameMetrics.Gauge() {
+                public long getValue()
+                {
+                    return sessions.size();
+                }
+            });
+            metrics.gauge("sessions.saved", new GameMetrics.Gauge() {
+                public long getValue()
+                {
+                    return saved.size();
+                }
+            });
+        }
+    }
+
+    /**
+     * Resume a session from the last checkpoint that was restored.
+     * @param id The id the session had when the checkpoint was written.
+     * @param out Where the session shows its text.
+     * @return The session, or null if the checkpoint had no such session.
+     * @throws IllegalStateException if the server is full.
+     */
+    public Session resume(long id, GameOutput out)
+    {
+        SessionState state = saved.remove(id);
+        if(state == null) {
+            return null;
+        }
+        try {
+            reserve();
+        } catch (IllegalStateException ex) {
+            saved.put(id, state);   // it can still be resumed later
+            throw ex;
+        }
+        Game game = new Game(world, out);
+        try {
+            game.restore(state);
+        } catch (IOException ex) {
+            openSessions.decrementAndGet();
+            return null;    // checked when the checkpoint was read
+        }
+        game.setJournal(journal, id);
+        game.setMetrics(metrics);
+        Session session = new Session(id, game);
+        sessions.put(id, session);
+        session.submit(null);
+        return session;
+    }
+
+    /**
+     * Write the state of every open session, and of every restored session
+     * that has not been resumed yet, and the items of the world to a file.
+     * Sessions keep running while the checkpoint is written; each one is
+     * taken between two of its commands. The file is replaced at once when
+     * the checkpoint is complete, so a failed checkpoint keeps the old one.
+     * @param file The file to write.
+     * @return The number of sessions written.
+     * @throws IOException if the file can not be written.
+     */
+    public int checkpoint(Path file) throws IOException
+    {
+        long started = System.nanoTime();
+        // events from here on may not be in the checkpoint, so they start a new segment
+        Journal recording = journal;
+        long firstSegment = recording == null ? 0 : recording.rotate();
+        Path written = file.resolveSibling(file.getFileName() + ".new");
+        int count = 0;
+        try (FileChannel channel = FileChannel.open(written, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            SnapshotWriter snapshot = new SnapshotWriter(channel, SnapshotWriter.CHECKPOINT);
+            world.writeItems(snapshot);
+            // sessions may open and close while they are taken, so count them after
+            List<Long> ids = new ArrayList<>(sessions.size() + saved.size());
+            List<SessionState> states = new ArrayList<>(sessions.size() + saved.size());
+            for(Session session : sessions.values()) {
+                ids.add(session.getId());
+                states.add(session.getGame().getState());
+            }
+            for(Map.Entry<Long, SessionState> entry : saved.entrySet()) {
+                ids.add(entry.getKey());
+                states.add(entry.getValue());
+            }
+            count = ids.size();
+            snapshot.writeVarint(count);
+            for(int i = 0; i < count; i++) {
+                snapshot.writeVarint(ids.get(i));
+                states.get(i).write(snapshot);
+            }
+            snapshot.flush();
+        }
+        Files.move(written, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        if (recording != null) {
+            recording.deleteBefore(firstSegment);
+        }
+        GameMetrics counting = metrics;
+        if (counting != null) {
+            counting.time("server.checkpoint", System.nanoTime() - started);
+        }
+        return count;
+    }
+
+    /**
+     * Read a checkpoint into a server that has no sessions yet: the items
+     * of the world are put back, and the sessions wait to be resumed.
+     * @param file The file to read.
+     * @return The number of sessions that can be resumed.
+     * @throws IOException if the file can not be read or does not fit the world.
+     * @throws IllegalStateException if the server already has sessions.
+     */
+    public int restore(Path file) throws IOException
+    {
+        if(!sessions.isEmpty()) {
+            throw new IllegalStateException("a checkpoint can only be restored before any session opens");
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            SnapshotReader snapshot = new SnapshotReader(channel, SnapshotWriter.CHECKPOINT);
+            int[] places = world.readItemPlaces(snapshot);
+            int count = snapshot.readInt(Integer.MAX_VALUE);
+            BitSet carried = new BitSet(world.getItems().size());
+            long highestId = 0;
+            Map<Long, SessionState> read = new HashMap<>();
+            for(int i = 0; i < count; i++) {
+                long id = snapshot.readVarint();
+                SessionState state = SessionState.read(snapshot, world);
+                if(world.getRoom(state.getRoom()) == null) {
+                    throw new IOException("the checkpoint has room " + state.getRoom() + ", which does not exist");
+                }
+                // an item handed on while the checkpoint was written may be in two sessions
+                BitSet items = BitSet.valueOf(state.getItems());
+                if(items.intersects(carried)) {
+                    items.andNot(carried);
+                    state = new SessionState(state.getRoom(), items.toLongArray());
+                }
+                read.put(id, state);
+                carried.or(items);
+                highestId = Math.max(highestId, id);
+            }
+            // only a checkpoint that was read to its end changes the world
+            world.placeItems(places);
+            world.reconcileItems(carried);
+            saved.clear();
+            saved.putAll(read);
+            if(nextSessionId.get() < highestId) {
+                nextSessionId.set(highestId);
+            }
+            return count;
+        }
+    }
+
+    /**
+     * Bring a server that has no sessions yet back to where it was before it
+     * stopped: restore the checkpoint, if there is one, then replay the
+     * journal that was recorded after it. The sessions wait to be resumed.
+     * @param checkpoint The checkpoint file.
+     * @param journalDirectory The directory of the journal.
+     * @return The number of sessions that can be resumed.
+     * @throws IOException if the checkpoint or the journal can not be read.
+     * @throws IllegalStateException if the server already has sessions.
+     */
+    public int recover(Path checkpoint, Path journalDirectory) throws IOException
+    {
+        if(Files.exists(checkpoint)) {
+            restore(checkpoint);
+        } else if(!sessions.isEmpty()) {
+            throw new IllegalStateException("a server can only recover before any session opens");
+        }
+        final int startRoom = world.getStartRoom().getNumber();
+        final int rooms = world.getRoomCount();
+        final ItemCatalog items = world.getItems();
+        Journal.replay(journalDirectory, new Journal.Listener() {
+            public void moved(long session, int room)
+            {
+                if(room < rooms && world.getRoom(room) != null) {
+                    saved.put(session, new SessionState(room, state(session).getItems()));
+                }
+            }
+
+            public void took(long session, int room, int item)
+            {
+                if(room < rooms && item < items.size() && world.getRoom(room) != null) {
+                    if(world.getRoom(room).getItem().equals(items.getName(item))) {
+                        world.getRoom(room).setItem(Room.NO_ITEM);
+                    }
+                    BitSet carried = BitSet.valueOf(state(session).getItems());
+                    carried.set(item);
+                    saved.put(session, new SessionState(state(session).getRoom(), carried.toLongArray()));
+                }
+            }
+
+            public void dropped(long session, int room, int item)
+            {
+                if(room < rooms && item < items.size() && world.getRoom(room) != null) {
+                    world.getRoom(room).setItem(items.getName(item));
+                    BitSet carried = BitSet.valueOf(state(session).getItems());
+                    carried.clear(item);
+                    saved.put(session, new SessionState(state(session).getRoom(), carried.toLongArray()));
+                }
+            }
+
+            public void quit(long session)
+            {
+                saved.remove(session);
+                seen(session);
+            }
+
+            private SessionState state(long session)
+            {
+                seen(session);
+                SessionState state = saved.get(session);
+                return state != null ? state : new SessionState(startRoom, new long[0]);
+            }
+
+            // ids of sessions that quit must not be handed out again either
+            private void seen(long session)
+            {
+                if(nextSessionId.get() < session) {
+                    nextSessionId.set(session);
+                }
+            }
+        });
+        BitSet carried = new BitSet(items.size());
+        for(SessionState state : saved.values()) {
+            carried.or(BitSet.valueOf(state.getItems()));
+        }
+        world.reconcileItems(carried);
+        return saved.size();
+    }
+
+    /**
+     * @return The number of open sessions.
+     */
+    public int getSessionCount()
+    {
+        return sessions.size();
+    }
+
+    /**
+     * @return The world all sessions play in.
+     */
+    public World getWorld()
+    {
+        return world;
+    }
+
+    /**
+     * Stop the workers, waiting a little for lines that are still running.
+     */
+    public void shutdown()
+    {
+        workers.shutdown();
+        try {
+            workers.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * One player's connection to the server.
+     */
+    public class Session implements Runnable
+    {
+        private final long id;
+        private final Game game;
+        private final Queue<String> pending;
+        private final AtomicBoolean scheduled;
+        private boolean started;
+
+        private Session(long id, Game game)
+        {
+            this.id = id;
+            this.game = game;
+            pending = new ConcurrentLinkedQueue<>();
+            scheduled = new AtomicBoolean();
+        }
+
+        /**
+         * @return The id of this session.
+         */
+        public long getId()
+        {
+            return id;
+        }
+
+        /**
+         * @return The game played in this session.
+         */
+        public Game getGame()
+        {
+            return game;
+        }
+
+        /**
+         * Hand a line typed by the player to the session. It is run later on
+         * one of the server's workers.
+         * @param inputLine The line that was typed, or null to only wake the session.
+         */
+        public void submit(String inputLine)
+        {
+            if(inputLine != null) {
+                pending.add(inputLine);
+            }
+            if(scheduled.compareAndSet(false, true)) {
+                workers.execute(this);
+            }
+        }
+
+        /**
+         * Close the session without waiting for the player to quit.
+         */
+        public void close()
+        {
+            if(sessions.remove(id) != null) {
+                openSessions.decrementAndGet();
+            }
+        }
+
+        /**
+         * Run the pending lines of this session. Called by the workers. A
+         * command that fails is reported to the player, and the session
+         * goes on with the next line.
+         */
+        public void run()
+        {
+            try {
+                if(!started) {
+                    started = true;
+                    game.start();
+                }
+                String inputLine;
+                while((inputLine = pending.poll()) != null) {
+                    if(handle(inputLine)) {
+                        pending.clear();
+                        close();
+                    }
+                }
+                game.flushMetrics();   // the player is waiting, so the counts can be current
+            } finally {
+                scheduled.set(false);
+                // a line may have arrived after the queue was found empty
+                if(!pending.isEmpty() && scheduled.compareAndSet(false, true)) {
+                    workers.execute(this);
+                }
+            }
+        }
+
+        /**
+         * @return true if the player quit.
+         */
+        private boolean handle(String inputLine)
+        {
+            try {
+                return game.handleLine(inputLine);
+            } catch (RuntimeException ex) {
+                LOG.log(Level.WARNING, "session " + id + " failed on the line '" + inputLine + "'", ex);
+                game.reportFailure();
+                return false;
+            }
+        }
+    }
+}
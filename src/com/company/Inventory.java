@@ -0,0 +1,129 @@
+package com.company;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * The items one player carries.
+ *
+ * An item is carried or not, so the inventory is a set of item IDs from the
+ * world's ItemCatalog, kept as a bit set: adding, removing and asking for an
+ * item each take constant time, and the same item can never be carried
+ * twice. The number of items is counted as they come and go, so knowing
+ * whether the player has every item in the world takes constant time too.
+ *
+ * @author  Kwinn Danforth
+ * @version 1.0.01
+ */
+public class Inventory
+{
+    private final ItemCatalog catalog;
+    private final BitSet items;
+    private int count;
+
+    /**
+     * Create an empty inventory.
+     * @param catalog The items of the world the player is in.
+     */
+    public Inventory(ItemCatalog catalog)
+    {
+        this.catalog = catalog;
+        items = new BitSet(catalog.size());
+    }
+
+    /**
+     * @param id The ID of an item.
+     * @return true if the item was added, false if it was already carried.
+     */
+    public boolean add(int id)
+    {
+        if (items.get(id)) {
+            return false;
+        }
+        items.set(id);
+        count++;
+        return true;
+    }
+
+    /**
+     * @param id The ID of an item.
+     * @return true if the item was removed, false if it was not carried.
+     */
+    public boolean remove(int id)
+    {
+        if (id < 0 || !items.get(id)) {
+            return false;
+        }
+        items.clear(id);
+        count--;
+        return true;
+    }
+
+    /**
+     * @param id The ID of an item, or -1.
+     * @return true if the item is carried.
+     */
+    public boolean contains(int id)
+    {
+        return id >= 0 && items.get(id);
+    }
+
+    /**
+     * @return The number of items carried.
+     */
+    public int size()
+    {
+        return count;
+    }
+
+    /**
+     * @return true if every item in the world is carried.
+     */
+    public boolean isComplete()
+    {
+        return count == catalog.size() && count > 0;
+    }
+
+    /**
+     * @return The IDs of the items carried, as the words of a bit set.
+     */
+    public long[] getWords()
+    {
+        return items.toLongArray();
+    }
+
+    /**
+     * Replace the items carried.
+     * @param words The IDs of the items, as the words of a bit set.
+     */
+    public void setWords(long[] words)
+    {
+        items.clear();
+        items.or(BitSet.valueOf(words));
+        count = items.cardinality();
+    }
+
+    /**
+     * Append the names of the items carried, one per line.
+     * @param builder Where the names go.
+     */
+    public void appendTo(StringBuilder builder)
+    {
+        for (int id = items.nextSetBit(0); id >= 0; id = items.nextSetBit(id + 1)) {
+            builder.append(catalog.getName(id)).append('\n');
+        }
+    }
+
+    /**
+     * @return The names of the items carried.
+     */
+    public List<String> getNames()
+    {
+        List<String> names = new ArrayList<>(count);
+        for (int id = items.nextSetBit(0); id >= 0; id = items.nextSetBit(id + 1)) {
+            names.add(catalog.getName(id));
+        }
+        return names;
+    }
+}
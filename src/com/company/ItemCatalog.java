@@ -0,0 +1,93 @@
+package com.company;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * All the items there are in a world, each with a small number, its ID.
+ *
+ * The catalog is filled while the world is built: every item a room starts
+ * with is interned, so that all rooms holding an item with the same name
+ * hold the same String, and the item gets the next free ID. The IDs number
+ * the items from 0, so a player's Inventory can keep them in a bit set.
+ * Once the world is built the catalog does not change any more and can be
+ * read by any number of players at once.
+ *
+ * @author  Kwinn Danforth
+ * @version 1.0.01
+ */
+public class ItemCatalog
+{
+    private final List<String> names;
+    private final HashMap<String, Integer> ids;
+    private final HashMap<String, Integer> typedIds;    // by the name in lower case
+
+    /**
+     * Create an empty catalog.
+     */
+    public ItemCatalog()
+    {
+        names = new ArrayList<>();
+        ids = new HashMap<>();
+        typedIds = new HashMap<>();
+    }
+
+    /**
+     * Add an item to the catalog, unless it is already there.
+     * @param name The name of the item, as the room data has it.
+     * @return The one String the world uses for this item; Room.NO_ITEM for "no item".
+     */
+    public String intern(String name)
+    {
+        if (name.equals(Room.NO_ITEM)) {
+            return Room.NO_ITEM;
+        }
+        Integer id = ids.get(name);
+        if (id != null) {
+            return names.get(id);
+        }
+        ids.put(name, names.size());
+        typedIds.put(name.toLowerCase(), names.size());
+        names.add(name);
+        return name;
+    }
+
+    /**
+     * @param name The name of an item.
+     * @return The ID of the item, or -1 if there is no such item.
+     */
+    public int getId(String name)
+    {
+        Integer id = ids.get(name);
+        return id == null ? -1 : id;
+    }
+
+    /**
+     * Find an item by what the player typed. Upper and lower case do not matter.
+     * @param typed The name of an item, for example "dragon egg".
+     * @return The ID of the item, or -1 if there is no such item.
+     */
+    public int find(String typed)
+    {
+        Integer id = typedIds.get(typed.toLowerCase());
+        return id == null ? -1 : id;
+    }
+
+    /**
+     * @param id The ID of an item.
+     * @return The name of the item.
+     */
+    public String getName(int id)
+    {
+        return names.get(id);
+    }
+
+    /**
+     * @return The number of different items in the world.
+     */
+    public int size()
+    {
+        return names.size();
+    }
+}
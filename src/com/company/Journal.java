@@ -0,0 +1,431 @@
+package com.company;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * An append-only record of everything that changes the state of the
+ * sessions of a server, kept between its checkpoints.
+ *
+ * The journal records what a command did, not the command itself: a player
+ * moved to a room, took an item from a room, dropped one in a room, or quit.
+ * Each event holds the state it leads to, so replaying an event that a
+ * checkpoint already has changes nothing, and replaying a journal on top of
+ * a checkpoint that was written while the server kept running gives the
+ * state the server was in.
+ *
+ * Events are written to a segment file that is memory-mapped, so appending
+ * one is a copy of a few bytes into memory. A segment is a fixed number of
+ * bytes; when it is full the next one starts. Every event is written as
+ *
+ *     length  type  session  room  item  CRC-32
+ *
+ * with the length in one byte, the session, room and item as varints and
+ * the CRC of everything before it, so a torn event at the end of a journal
+ * is recognised and replay stops there. Appending does not wait for the
+ * disk: a flusher thread forces the written events to disk as a group, at
+ * least every syncMillis and sooner once syncEvents are waiting. With a
+ * syncMillis of 0 every event is forced before append returns.
+ *
+ * @author  Kwinn Danforth
+ * @version 1.0.01
+ */
+public class Journal implements AutoCloseable
+{
+    /** A player moved to a room. */
+    public static final byte MOVED = 1;
+    /** A player took an item out of a room. */
+    public static final byte TOOK = 2;
+    /** A player dropped an item in a room. */
+    public static final byte DROPPED = 3;
+    /** A player quit; their session is gone. */
+    public static final byte QUIT = 4;
+
+    private static final String PREFIX = "journal-";
+    private static final String SUFFIX = ".log";
+    private static final int MAX_EVENT = 1 + 1 + 10 + 5 + 5 + 4;
+
+    private final Path directory;
+    private final int segmentSize;
+    private final int syncEvents;
+    private final long syncMillis;
+    private final byte[] event = new byte[MAX_EVENT];
+    private final CRC32 crc = new CRC32();
+    private final Thread flusher;
+
+    private long segment;               // the number of the segment being written
+    private FileChannel channel;
+    private MappedByteBuffer mapped;
+    private int unsynced;               // events written since the last force
+    private long events;
+    private long bytes;
+    private long syncs;
+    private boolean closed;
+
+    /**
+     * Open a journal in a directory. The events are written to a new
+     * segment after the ones that are already there.
+     * @param directory Where the segments are kept.
+     * @param segmentSize The size of a segment in bytes.
+     * @param syncEvents How many events may wait for the disk before they are forced.
+     * @param syncMillis How long an event may wait for the disk, or 0 to not wait at all.
+     * @throws IOException if the directory or the first segment can not be created.
+     */
+    public Journal(Path directory, int segmentSize, int syncEvents, long syncMillis) throws IOException
+    {
+        if (segmentSize < MAX_EVENT + 1) {
+            throw new IllegalArgumentException("a segment must hold at least one event");
+        }
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        this.syncEvents = Math.max(1, syncEvents);
+        this.syncMillis = syncMillis;
+        Files.createDirectories(directory);
+        List<Long> existing = segments(directory);
+        openSegment(existing.isEmpty() ? 1 : existing.get(existing.size() - 1) + 1);
+        if (syncMillis > 0) {
+            flusher = new Thread(PREFIX + "flusher") {
+                public void run()
+                {
+                    flushLoop();
+                }
+            };
+            flusher.setDaemon(true);
+            flusher.start();
+        } else {
+            flusher = null;
+        }
+    }
+
+    /**
+     * @param session The session whose player moved.
+     * @param room The number of the room they are in now.
+     */
+    public void moved(long session, int room)
+    {
+        append(MOVED, session, room, 0);
+    }
+
+    /**
+     * @param session The session whose player took the item.
+     * @param room The number of the room it was in.
+     * @param item The ID of the item.
+     */
+    public void took(long session, int room, int item)
+    {
+        append(TOOK, session, room, item);
+    }
+
+    /**
+     * @param session The session whose player dropped the item.
+     * @param room The number of the room it is in now.
+     * @param item The ID of the item.
+     */
+    public void dropped(long session, int room, int item)
+    {
+        append(DROPPED, session, room, item);
+    }
+
+    /**
+     * @param session The session whose player quit.
+     */
+    public void quit(long session)
+    {
+        append(QUIT, session, 0, 0);
+    }
+
+    /**
+     * Force every event that was written to disk now.
+     */
+    public void sync()
+    {
+        MappedByteBuffer toForce;
+        synchronized (this) {
+            if (unsynced == 0 || closed) {
+                return;
+            }
+            unsynced = 0;
+            syncs++;
+            toForce = mapped;
+        }
+        toForce.force();
+    }
+
+    /**
+     * Start a new segment, for example because a checkpoint is about to be
+     * written. The events in the segments before it can be deleted once
+     * the checkpoint is complete.
+     * @return The number of the new segment.
+     * @throws IOException if the new segment can not be created.
+     */
+    public synchronized long rotate() throws IOException
+    {
+        closeSegment();
+        openSegment(segment + 1);
+        return segment;
+    }
+
+    /**
+     * Delete the segments before the given one.
+     * @param first The number of the first segment to keep.
+     * @throws IOException if a segment can not be deleted.
+     */
+    public void deleteBefore(long first) throws IOException
+    {
+        for (long number : segments(directory)) {
+            if (number < first) {
+                Files.delete(directory.resolve(name(number)));
+            }
+        }
+    }
+
+    /**
+     * @return The number of events written.
+     */
+    public synchronized long getEventCount()
+    {
+        return events;
+    }
+
+    /**
+     * @return The number of bytes the events take in the segments.
+     */
+    public synchronized long getByteCount()
+    {
+        return bytes;
+    }
+
+    /**
+     * @return How many times the events were forced to disk.
+     */
+    public synchronized long getSyncCount()
+    {
+        return syncs;
+    }
+
+    /**
+     * Force the last events to disk and close the journal.
+     * @throws IOException if the segment can not be closed.
+     */
+    public void close() throws IOException
+    {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closeSegment();
+            closed = true;
+            notifyAll();
+        }
+        if (flusher != null) {
+            try {
+                flusher.join();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Read the events of every segment in a directory, oldest first. A
+     * segment is read up to its end or the first event that was not
+     * written whole.
+     * @param directory Where the segments are kept.
+     * @param listener What is told about each event.
+     * @return The number of events read.
+     * @throws IOException if a segment can not be read.
+     */
+    public static long replay(Path directory, Listener listener) throws IOException
+    {
+        long count = 0;
+        if (!Files.isDirectory(directory)) {
+            return 0;
+        }
+        CRC32 crc = new CRC32();
+        byte[] event = new byte[MAX_EVENT];
+        for (long number : segments(directory)) {
+            try (FileChannel channel = FileChannel.open(directory.resolve(name(number)), StandardOpenOption.READ)) {
+                ByteBuffer in = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+                while (in.remaining() > 0) {
+                    int length = in.get(in.position()) & 0xFF;
+                    if (length == 0 || length > MAX_EVENT || length > in.remaining()) {
+                        break;  // the end of the segment, or an event that was torn
+                    }
+                    in.get(event, 0, length);
+                    crc.reset();
+                    crc.update(event, 0, length - 4);
+                    if ((int) crc.getValue() != ByteBuffer.wrap(event, length - 4, 4).getInt()) {
+                        break;  // torn by a crash; a later segment was started after it
+                    }
+                    ByteBuffer fields = ByteBuffer.wrap(event, 1, length - 5);
+                    byte type = fields.get();
+                    long session = readVarint(fields);
+                    int room = (int) readVarint(fields);
+                    int item = (int) readVarint(fields);
+                    switch (type) {
+                        case MOVED: listener.moved(session, room); break;
+                        case TOOK: listener.took(session, room, item); break;
+                        case DROPPED: listener.dropped(session, room, item); break;
+                        case QUIT: listener.quit(session); break;
+                        default: throw new IOException(name(number) + ": unknown event " + type);
+                    }
+                    count++;
+                }
+            }
+        }
+        return count;
+    }
+
+    private void append(byte type, long session, int room, int item)
+    {
+        boolean force;
+        synchronized (this) {
+            if (closed) {
+                throw new IllegalStateException("the journal is closed");
+            }
+            int length = 1;
+            event[length++] = type;
+            length = writeVarint(event, length, session);
+            length = writeVarint(event, length, room);
+            length = writeVarint(event, length, item);
+            length += 4;
+            event[0] = (byte) length;
+            crc.reset();
+            crc.update(event, 0, length - 4);
+            int sum = (int) crc.getValue();
+            event[length - 4] = (byte) (sum >>> 24);
+            event[length - 3] = (byte) (sum >>> 16);
+            event[length - 2] = (byte) (sum >>> 8);
+            event[length - 1] = (byte) sum;
+            if (mapped.remaining() < length + 1) {     // keep a 0 at the end of every segment
+                try {
+                    rotate();
+                } catch (IOException ex) {
+                    throw new IllegalStateException("can not write the journal", ex);
+                }
+            }
+            mapped.put(event, 0, length);
+            events++;
+            bytes += length;
+            unsynced++;
+            force = syncMillis == 0;
+            if (unsynced >= syncEvents && !force) {
+                notifyAll();
+            }
+        }
+        if (force) {
+            sync();
+        }
+    }
+
+    private void flushLoop()
+    {
+        while (true) {
+            synchronized (this) {
+                long deadline = System.currentTimeMillis() + syncMillis;
+                long wait;
+                while (!closed && unsynced < syncEvents && (wait = deadline - System.currentTimeMillis()) > 0) {
+                    try {
+                        wait(wait);
+                    } catch (InterruptedException ex) {
+                        return;
+                    }
+                }
+                if (closed) {
+                    return;
+                }
+            }
+            sync();
+        }
+    }
+
+    private void openSegment(long number) throws IOException
+    {
+        segment = number;
+        channel = FileChannel.open(directory.resolve(name(number)), StandardOpenOption.CREATE_NEW,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        mapped = channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentSize);
+    }
+
+    private void closeSegment() throws IOException
+    {
+        if (unsynced > 0) {
+            mapped.force();
+            unsynced = 0;
+            syncs++;
+        }
+        channel.close();
+    }
+
+    private static String name(long number)
+    {
+        return String.format(PREFIX + "%08d" + SUFFIX, number);
+    }
+
+    /**
+     * @return The numbers of the segments in a directory, in order.
+     */
+    private static List<Long> segments(Path directory) throws IOException
+    {
+        List<Long> numbers = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, PREFIX + "*" + SUFFIX)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                try {
+                    numbers.add(Long.parseLong(name.substring(PREFIX.length(), name.length() - SUFFIX.length())));
+                } catch (NumberFormatException ex) {
+                    // not one of ours
+                }
+            }
+        }
+        Collections.sort(numbers);
+        return numbers;
+    }
+
+    private static int writeVarint(byte[] to, int at, long value)
+    {
+        while ((value & ~0x7FL) != 0) {
+            to[at++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        to[at++] = (byte) value;
+        return at;
+    }
+
+    private static long readVarint(ByteBuffer in) throws IOException
+    {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = in.get();
+            value |= (long) (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+        throw new IOException("the journal has a number that is too long");
+    }
+
+    /**
+     * Is told about the events of a journal as it is replayed.
+     */
+    public interface Listener
+    {
+        void moved(long session, int room);
+
+        void took(long session, int room, int item);
+
+        void dropped(long session, int room, int item);
+
+        void quit(long session);
+    }
+}
@@ -0,0 +1,134 @@
+package com.company;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counts how long something took, in buckets that are finer for short
+ * times than for long ones, the way an HDR histogram does.
+ *
+ * Every power of two is split into eight buckets, so a value is known to
+ * within an eighth (12.5%) whether it is 100 nanoseconds or 10 seconds,
+ * and all of them fit in under 500 buckets. Finding the bucket is a few
+ * bit operations. Like a StripedCounter, each thread counts into a copy of
+ * the buckets of its own stripe, so threads that record at the same time
+ * do not share cache lines; the copies are added up when the histogram is
+ * read.
+ *
+ * @author  Kwinn Danforth
+ * @version 1.0.01
+ */
+public class LatencyHistogram
+{
+    private static final int SUB_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BITS;
+    private static final int BUCKETS = (64 - SUB_BITS + 1) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(StripedCounter.STRIPES * BUCKETS);
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * @param nanos How long something took, in nanoseconds.
+     */
+    public void record(long nanos)
+    {
+        long value = Math.max(0, nanos);
+        counts.getAndIncrement(StripedCounter.stripe() * BUCKETS + bucket(value));
+        long highest = max.get();
+        while (value > highest && !max.compareAndSet(highest, value)) {
+            highest = max.get();
+        }
+    }
+
+    /**
+     * @return What was recorded so far, added up over all stripes.
+     */
+    public Snapshot snapshot()
+    {
+        long[] merged = new long[BUCKETS];
+        for (int s = 0; s < StripedCounter.STRIPES; s++) {
+            for (int b = 0; b < BUCKETS; b++) {
+                merged[b] += counts.get(s * BUCKETS + b);
+            }
+        }
+        return new Snapshot(merged, max.get());
+    }
+
+    private static int bucket(long value)
+    {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int sub = (int) (value >>> (exponent - SUB_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BITS + 1) * SUB_BUCKETS + sub;
+    }
+
+    /**
+     * @return The highest value that falls in a bucket.
+     */
+    private static long highestIn(int bucket)
+    {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int exponent = bucket / SUB_BUCKETS + SUB_BITS - 1;
+        long lowest = (long) (SUB_BUCKETS + bucket % SUB_BUCKETS) << (exponent - SUB_BITS);
+        return lowest + (1L << (exponent - SUB_BITS)) - 1;
+    }
+
+    /**
+     * The counts of a histogram at one moment.
+     */
+    public static class Snapshot
+    {
+        private final long[] counts;
+        private final long count;
+        private final long max;
+
+        private Snapshot(long[] counts, long max)
+        {
+            this.counts = counts;
+            this.max = max;
+            long total = 0;
+            for (long c : counts) {
+                total += c;
+            }
+            count = total;
+        }
+
+        /**
+         * @return How many values were recorded.
+         */
+        public long getCount()
+        {
+            return count;
+        }
+
+        /**
+         * @return The highest value recorded, exactly.
+         */
+        public long getMax()
+        {
+            return max;
+        }
+
+        /**
+         * @param percentile Between 0 and 100, for example 99.
+         * @return A value that at least that percentage of the recorded
+         *         values are not above, to within an eighth; 0 if nothing was recorded.
+         */
+        public long getPercentile(double percentile)
+        {
+            long wanted = (long) Math.ceil(count * percentile / 100);
+            long seen = 0;
+            for (int b = 0; b < counts.length; b++) {
+                seen += counts[b];
+                if (seen >= wanted && seen > 0) {
+                    return Math.min(highestIn(b), max);
+                }
+            }
+            return 0;
+        }
+    }
+}
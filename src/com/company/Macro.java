@@ -0,0 +1,62 @@
+package com.company;
+
+/**
+ * A named run of commands a player defined, such as "patrol" for
+ * "go east; go north; pickup". Typing the name runs the commands as one
+ * batch. The commands are parsed when the macro is defined, so running it
+ * parses nothing.
+ *
+ * @author  Kwinn Danforth
+ * @version 1.0.01
+ */
+public class Macro
+{
+    private final String name;
+    private final String text;
+    private final Command[] commands;
+
+    /**
+     * @param name The name the player runs the macro by, in lower case.
+     * @param text The commands as the player typed them, for showing.
+     * @param commands The commands. The array is kept, not copied.
+     */
+    public Macro(String name, String text, Command[] commands)
+    {
+        this.name = name;
+        this.text = text;
+        this.commands = commands;
+    }
+
+    /**
+     * @return The name of the macro.
+     */
+    public String getName()
+    {
+        return name;
+    }
+
+    /**
+     * @return The commands as the player typed them, for example "go east; go north; pickup".
+     */
+    public String getText()
+    {
+        return text;
+    }
+
+    /**
+     * @return The number of commands.
+     */
+    public int size()
+    {
+        return commands.length;
+    }
+
+    /**
+     * @param index The index of a command, from 0.
+     * @return The command.
+     */
+    public Command getCommand(int index)
+    {
+        return commands[index];
+    }
+}
@@ -1,8 +1,45 @@
 package com.company;
 
+import java.io.IOException;
+import java.nio.file.Paths;
+import javax.management.JMException;
+
 public class Main {
 
     public static void main(String[] args) {
-	new Game();
+	World world;
+	try {
+	    world = new World();
+	} catch (IOException ex) {
+	    System.out.println("Sorry there seems to be a problem retrieving the game data..");
+	    System.out.println(ex.getMessage());
+	    return;
+	}
+	GameMetrics metrics = null;
+	String metricsFile = System.getProperty("hogwarts.metrics");   // for example -Dhogwarts.metrics=metrics.json
+	if (metricsFile != null) {
+	    metrics = new GameMetrics(world.getRoomCount());
+	    metrics.time("world.load", world.getLoadNanos());
+	    try {
+		metrics.register();
+	    } catch (JMException ex) {
+		// the file still gets them
+	    }
+	    metrics.startDump(Paths.get(metricsFile), 10000);
+	}
+	try {
+	    RoomDataWatcher watcher = new RoomDataWatcher(world);
+	    watcher.setMetrics(metrics);
+	    watcher.start();   // pick up fixes to the room data while playing
+	} catch (IOException ex) {
+	    // the game is played with the rooms as they are
+	}
+	NpcSimulation.fromOccupants(world, System.nanoTime()).start(3000);   // the occupants walk around
+	ConsoleIO console = new ConsoleIO();
+	Game game = new Game(world, new Parser(console, null), console);
+	game.setMetrics(metrics);
+	game.setAnsiClear(System.console() != null);   // only a real terminal understands it
+	game.setSaveFile(Paths.get("hogwarts.sav"));
+	game.play();
     }
 }
@@ -0,0 +1,445 @@
+package com.company;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * The characters who walk around the world by themselves, such as Hagrid
+ * and Ron Weasley: non-player characters, NPCs for short.
+ *
+ * Every tick each NPC may take a random exit of the room it is in, or, in
+ * a transporter, be sent to one of its destinations. The
+ * NPCs are split into ranges that are moved in parallel on a ForkJoinPool,
+ * so a tick takes less time the more cores there are. Chance is decided
+ * by the NPC, the tick and the seed alone, so the NPCs walk the same way
+ * however many threads move them.
+ *
+ * Where the NPCs are is kept twice. Players read one copy, the current
+ * snapshot, while a tick writes the other; when the tick is done the
+ * copies change places. A snapshot holds the room of every NPC and, for
+ * every room, a list of the NPCs in it, linked through an array, so
+ * finding who is in a room does not depend on how many NPCs there are.
+ * Readers never wait: a reader that was still reading a copy when the tick
+ * after next started writing it notices by the copy's version, and reads
+ * the current snapshot again. For that check to see every write the tick
+ * made, the copies are kept in AtomicIntegerArrays; the tick writes them
+ * with lazySet, which costs no more than a plain write.
+ *
+ * Once attached to a world, the rooms describe the NPCs that are in them
+ * instead of the occupant their room data gives them. A room with one NPC
+ * or none is described by a String the simulation already has; the text
+ * for several is kept in a small table by room and tick, so every player
+ * who looks at the room during a tick gets the same String and the room's
+ * cached description stays valid. An NPC that was made from the occupant
+ * of a room can be renamed when that occupant is edited.
+ *
+ * @author  Kwinn Danforth
+ * @version 1.0.01
+ */
+public class NpcSimulation implements AutoCloseable
+{
+    private static final int THRESHOLD = 4096;      // NPCs a task moves without splitting further
+    private static final int NONE = -1;
+    private static final int PROBES = 8;            // slots of the group table a room's text may be in
+
+    private final RoomGraph graph;
+    private final String[] names;
+    private final int[] homes;                      // the room every NPC started in
+    private final long seed;
+    private final AtomicReferenceArray<Group> groups;
+    private final ThreadLocal<int[]> found;         // the NPCs of a room, while their text is made
+    private volatile int renames;
+    private final ForkJoinPool pool;
+    private Snapshot back;                          // the copy the next tick writes
+    private volatile Snapshot current;
+    private long ticks;
+    private ScheduledExecutorService ticker;
+
+    /**
+     * Create NPCs in a world. They do not move until they are ticked.
+     * @param graph The rooms they walk through.
+     * @param names The name of every NPC.
+     * @param rooms The room every NPC starts in.
+     * @param seed Where their chance comes from.
+     * @param parallelism How many threads move them.
+     */
+    public NpcSimulation(RoomGraph graph, String[] names, int[] rooms, long seed, int parallelism)
+    {
+        if (names.length != rooms.length) {
+            throw new IllegalArgumentException("every NPC needs a name and a room");
+        }
+        this.graph = graph;
+        this.names = names.clone();
+        homes = rooms.clone();
+        this.seed = seed;
+        groups = new AtomicReferenceArray<>(Integer.highestOneBit(Math.max(16, names.length)) * 2);
+        found = new ThreadLocal<int[]>() {
+            protected int[] initialValue()
+            {
+                return new int[8];
+            }
+        };
+        pool = new ForkJoinPool(Math.max(1, parallelism));
+        back = new Snapshot(graph.size(), names.length);
+        current = new Snapshot(graph.size(), names.length);
+        for (int npc = 0; npc < rooms.length; npc++) {
+            if (rooms[npc] < 0 || rooms[npc] >= graph.size()) {
+                throw new IllegalArgumentException(names[npc] + " is in room " + rooms[npc] + ", which does not exist");
+            }
+            current.place(npc, rooms[npc]);
+        }
+        current.version = 0;
+    }
+
+    /**
+     * Turn the occupants of the rooms of a world into NPCs that start in those rooms.
+     * A room whose occupant is "no one" gets none.
+     * @param world The world.
+     * @param seed Where their chance comes from.
+     * @return The NPCs, attached to the world.
+     */
+    public static NpcSimulation fromOccupants(World world, long seed)
+    {
+        List<String> names = new ArrayList<>();
+        List<Integer> rooms = new ArrayList<>();
+        RoomGraph graph = world.getGraph();
+        for (int r = 0; r < graph.size(); r++) {
+            if (graph.hasRoom(r)) {
+                String occupancy = graph.getRoom(r).getOccupancy();
+                if (!occupancy.equalsIgnoreCase(Room.NO_ONE)) {
+                    names.add(occupancy);
+                    rooms.add(r);
+                }
+            }
+        }
+        int[] starts = new int[rooms.size()];
+        for (int i = 0; i < starts.length; i++) {
+            starts[i] = rooms.get(i);
+        }
+        NpcSimulation npcs = new NpcSimulation(graph, names.toArray(new String[names.size()]), starts, seed,
+                Runtime.getRuntime().availableProcessors());
+        graph.setNpcs(npcs);
+        return npcs;
+    }
+
+    /**
+     * Move every NPC once, in parallel, and then show players where they are now.
+     * Ticks must not run at the same time as each other.
+     */
+    public synchronized void tick()
+    {
+        final Snapshot from = current;
+        final Snapshot to = back;
+        final long tick = ticks + 1;
+        to.version = NONE;                          // readers of this copy must read again
+        pool.invoke(new Move(this, from, to, tick, 0, names.length, true));
+        pool.invoke(new Move(this, from, to, tick, 0, names.length, false));
+        to.version = tick;
+        back = from;
+        current = to;
+        ticks = tick;
+    }
+
+    /**
+     * Tick every so often on a thread of its own.
+     * @param periodMillis The time between ticks.
+     */
+    public synchronized void start(long periodMillis)
+    {
+        if (ticker != null) {
+            return;
+        }
+        ticker = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            public Thread newThread(Runnable task)
+            {
+                Thread thread = new Thread(task, "npc-tick");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        ticker.scheduleAtFixedRate(new Runnable() {
+            public void run()
+            {
+                tick();
+            }
+        }, periodMillis, periodMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stop ticking and stop the threads that move the NPCs.
+     */
+    public synchronized void close()
+    {
+        if (ticker != null) {
+            ticker.shutdownNow();
+            ticker = null;
+        }
+        pool.shutdown();
+    }
+
+    /**
+     * @return How many ticks there have been.
+     */
+    public synchronized long getTicks()
+    {
+        return ticks;
+    }
+
+    /**
+     * @return The number of NPCs.
+     */
+    public int size()
+    {
+        return names.length;
+    }
+
+    /**
+     * Give the NPC that started in a room a new name, for example because
+     * the occupant of the room was edited in the room data.
+     * @param home The room the NPC started in.
+     * @param name The new name.
+     * @return true if an NPC started in the room and was renamed, false if none did.
+     */
+    public synchronized boolean rename(int home, String name)
+    {
+        for (int npc = 0; npc < homes.length; npc++) {
+            if (homes[npc] == home) {
+                names[npc] = name;
+                renames++;                          // the texts made with the old name are stale
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @param npc The number of an NPC.
+     * @return The room the NPC is in.
+     */
+    public int getRoom(int npc)
+    {
+        while (true) {
+            Snapshot snapshot = current;
+            long version = snapshot.version;
+            int room = snapshot.roomOf.get(npc);
+            if (version != NONE && snapshot.version == version) {
+                return room;
+            }
+        }
+    }
+
+    /**
+     * Say who is in a room, for the room's description.
+     * @param room The number of a room.
+     * @return For example "no one", "Hagrid" or "Hagrid, Peeves and Ron Weasley".
+     */
+    public String describe(int room)
+    {
+        while (true) {
+            Snapshot snapshot = current;
+            long version = snapshot.version;
+            int first = snapshot.firstIn.get(room);
+            String text;
+            if (first == NONE) {
+                text = Room.NO_ONE;
+            } else if (snapshot.nextIn.get(first) == NONE) {
+                text = names[first];
+            } else {
+                text = describeGroup(snapshot, version, room);
+            }
+            if (version != NONE && snapshot.version == version) {
+                return text;
+            }
+        }
+    }
+
+    /**
+     * Say who the NPCs in a room with several are, from the table if the
+     * text was made in this tick already. The caller checks the version
+     * afterwards, so a text made from a copy that was being written is
+     * only kept under the version that copy no longer has.
+     */
+    private String describeGroup(Snapshot snapshot, long version, int room)
+    {
+        int renamed = renames;
+        int mask = groups.length() - 1;
+        int home = (int) mix(room) & mask;
+        int free = -1;                  // where a new text goes: the room's old one, or one of another tick
+        for (int probe = 0; probe < PROBES; probe++) {
+            int slot = (home + probe) & mask;
+            Group group = groups.get(slot);
+            if (group != null && group.room == room) {
+                if (group.version == version && group.renames == renamed) {
+                    return group.text;
+                }
+                free = slot;
+                break;
+            }
+            if (free < 0 && (group == null || group.version != version)) {
+                free = slot;
+            }
+        }
+        int[] npcs = found.get();
+        int count = 0;
+        for (int npc = snapshot.firstIn.get(room); npc != NONE && count <= names.length; npc = snapshot.nextIn.get(npc)) {
+            if (count == npcs.length) {
+                npcs = Arrays.copyOf(npcs, count * 2);
+                found.set(npcs);
+            }
+            npcs[count++] = npc;
+        }
+        Arrays.sort(npcs, 0, count);        // the same order however the tick ran
+        StringBuilder text = new StringBuilder(names[npcs[0]]);
+        for (int i = 1; i < count; i++) {
+            text.append(i == count - 1 ? " and " : ", ").append(names[npcs[i]]);
+        }
+        Group group = new Group(room, version, renamed, text.toString());
+        groups.set(free < 0 ? home : free, group);
+        return group.text;
+    }
+
+    /**
+     * @return The room an NPC goes to from a room, in a tick.
+     */
+    private int step(int npc, int room, long tick)
+    {
+        long random = mix(seed ^ mix(tick * 0x9E3779B97F4A7C15L + npc));
+        // half of the time an NPC stays where it is
+        if ((random & 1) == 0) {
+            return room;
+        }
+        int first = graph.firstExit(room);
+        int exits = graph.endOfExits(room) - first;
+        if (exits > 0) {
+            return graph.getExitTarget(first + (int) ((random >>> 1) % exits));
+        }
+        TransporterRoom transporter = graph.getTransporter(room);
+        List<Room> destinations = transporter == null ? null : transporter.getRooms();
+        if (destinations == null || destinations.isEmpty()) {
+            return room;
+        }
+        return destinations.get((int) ((random >>> 1) % destinations.size())).getNumber();
+    }
+
+    private static long mix(long z)
+    {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;     // splitmix64's finalizer
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    /**
+     * Where every NPC is, at one tick.
+     */
+    private static class Snapshot
+    {
+        private final AtomicIntegerArray roomOf;    // by NPC
+        private final AtomicIntegerArray firstIn;   // the first NPC in each room, or NONE
+        private final AtomicIntegerArray nextIn;    // the next NPC in the same room, or NONE
+        private volatile long version;              // the tick, or NONE while it is written
+
+        Snapshot(int rooms, int npcs)
+        {
+            roomOf = new AtomicIntegerArray(npcs);
+            firstIn = new AtomicIntegerArray(rooms);
+            nextIn = new AtomicIntegerArray(npcs);
+            for (int r = 0; r < rooms; r++) {
+                firstIn.lazySet(r, NONE);
+            }
+            for (int npc = 0; npc < npcs; npc++) {
+                roomOf.lazySet(npc, NONE);
+            }
+        }
+
+        /**
+         * Put an NPC into a room; any number of threads may do this at once.
+         */
+        void place(int npc, int room)
+        {
+            roomOf.lazySet(npc, room);
+            int first;
+            do {
+                first = firstIn.get(room);
+                nextIn.lazySet(npc, first);
+            } while (!firstIn.compareAndSet(room, first, npc));
+        }
+    }
+
+    /**
+     * The text for the NPCs in a room, as it was at one tick.
+     */
+    private static class Group
+    {
+        private final int room;
+        private final long version;
+        private final int renames;
+        private final String text;
+
+        Group(int room, long version, int renames, String text)
+        {
+            this.room = room;
+            this.version = version;
+            this.renames = renames;
+            this.text = text;
+        }
+    }
+
+    /**
+     * Moves a range of NPCs from one snapshot into the other, splitting the
+     * range for other threads while it is large. Clearing runs first: it
+     * empties the rooms of the target, which still hold the NPCs of the
+     * tick before last, before any NPC is placed in them.
+     */
+    private static class Move extends RecursiveAction
+    {
+        private static final long serialVersionUID = 1L;
+
+        private final NpcSimulation npcs;
+        private final Snapshot from;
+        private final Snapshot to;
+        private final long tick;
+        private final int start;
+        private final int end;
+        private final boolean clearing;
+
+        Move(NpcSimulation npcs, Snapshot from, Snapshot to, long tick, int start, int end, boolean clearing)
+        {
+            this.npcs = npcs;
+            this.from = from;
+            this.to = to;
+            this.tick = tick;
+            this.start = start;
+            this.end = end;
+            this.clearing = clearing;
+        }
+
+        protected void compute()
+        {
+            if (end - start > THRESHOLD) {
+                int middle = (start + end) >>> 1;
+                invokeAll(new Move(npcs, from, to, tick, start, middle, clearing),
+                        new Move(npcs, from, to, tick, middle, end, clearing));
+                return;
+            }
+            for (int npc = start; npc < end; npc++) {
+                if (clearing) {
+                    int room = to.roomOf.get(npc);
+                    if (room != NONE) {
+                        to.firstIn.lazySet(room, NONE);
+                    }
+                } else {
+                    to.place(npc, npcs.step(npc, from.roomOf.get(npc), tick));
+                }
+            }
+        }
+    }
+}
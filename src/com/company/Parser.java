@@ -1,15 +1,13 @@
 package com.company;
 
-import java.util.Scanner;
-
 /**
  * This class is part of the "World of Zuul" application.
  * "World of Zuul" is a very simple, text based adventure game.
  *
  * This parser reads user input and tries to interpret it as an "Adventure"
- * command. Every time it is called it reads a line from the terminal and
- * tries to interpret the line as a two-word command. It returns the command
- * as an object of class Command.
+ * command. Every time it is called it reads a line from its input and
+ * tries to interpret the line as a command word followed by any number of
+ * words. It returns the command as an object of class Command.
  *
  * The parser has a set of known command words. It checks user input against
  * the known commands, and if the input is not one of the known commands, it
@@ -20,50 +18,86 @@ import java.util.Scanner;
  */
 public class Parser
 {
-    private CommandWordz commands;  // holds all valid command words
-    private Scanner reader;         // source of command input
+    // the command words never change, so all parsers share them
+    private static final CommandWordz COMMANDS = new CommandWordz();
+    private static final CommandTokenizer TOKENIZER = new CommandTokenizer(COMMANDS);
+
+    private GameInput reader;       // source of command input
+    private GameOutput prompt;      // where the prompt is shown
 
     /**
      * Create a parser to read from the terminal window.
      */
     public Parser()
     {
-        commands = new CommandWordz();
-        reader = new Scanner(System.in);
+        ConsoleIO console = new ConsoleIO();
+        reader = console;
+        prompt = console;
     }
 
     /**
-     * @return The next command from the user.
+     * Create a parser to read from the given input.
+     * @param reader The source of command input.
+     * @param prompt Where the prompt is shown. May be null for no prompt.
      */
-    public Command getCommand()
+    public Parser(GameInput reader, GameOutput prompt)
     {
-        String inputLine;   // will hold the full input line
-        String word1 = null;
-        String word2 = null;
-
-        System.out.print("> ");     // print prompt
+        this.reader = reader;
+        this.prompt = prompt;
+    }
 
-        inputLine = reader.nextLine();
+    /**
+     * @return The next command from the user, or null if there is no
+     * more input.
+     */
+    public Command getCommand()
+    {
+        String inputLine = getLine();
+        if(inputLine == null) {
+            return null;
+        }
+        return parse(inputLine);
+    }
 
-        // Find up to two words on the line.
-        Scanner tokenizer = new Scanner(inputLine);
-        if(tokenizer.hasNext()) {
-            word1 = tokenizer.next();      // get first word
-            if(tokenizer.hasNext()) {
-                word2 = tokenizer.next();      // get second word
-                // note: we just ignore the rest of the input line.
-            }
+    /**
+     * @return The next line from the user as it was typed, which may hold
+     * several commands, or null if there is no more input.
+     */
+    public String getLine()
+    {
+        if(prompt != null) {
+            prompt.write("> ");     // print prompt
         }
+        return reader.readLine();
+    }
+
+    /**
+     * Interpret a line of input as a command.
+     * @param inputLine The line that was typed.
+     * @return The command on the line.
+     */
+    public static Command parse(CharSequence inputLine)
+    {
+        return TOKENIZER.tokenize(inputLine);
+    }
 
-        return new Command(commands.getCommandWord(word1), word2);
+    /**
+     * Interpret part of a line of input as a command.
+     * @param inputLine The line that was typed.
+     * @param start Where the command starts.
+     * @param end Where the command ends.
+     * @return The command in that part of the line.
+     */
+    public static Command parse(CharSequence inputLine, int start, int end)
+    {
+        return TOKENIZER.tokenize(inputLine, start, end);
     }
 
     /**
-     * Print out a list of valid command words.
+     * @return A list of valid command words.
      */
-    public void showCommands()
+    public static String showCommands()
     {
-        commands.showAll();
+        return COMMANDS.showAll();
     }
 }
-
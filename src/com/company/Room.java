@@ -1,8 +1,7 @@
 package com.company;
 
-import java.util.Set;
-import java.util.HashMap;
-
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
 
 /**
  * Class Room - a room in an adventure game.
@@ -10,8 +9,18 @@ import java.util.HashMap;
  * This class is part of the Hogwarts application.
  *
  * A "Room" represents one location in the scenery of the game.  It is
- * connected to other rooms via exits.  For each existing exit, the room
- * stores a reference to the neighboring room. Some rooms have items in them that the player can collect.
+ * connected to other rooms via exits.  The exits of all rooms are kept
+ * together in the world's RoomGraph, which the room looks them up in.
+ * Some rooms have items in them that the player can collect.
+ * A room read from a RoomStore tells the store whenever its item changes.
+ *
+ * When the room data is reloaded, a room whose line changed is replaced by
+ * a new Room with the same number. The old room hands its item over to the
+ * new one and from then on passes everything done with its item on to it,
+ * so a player who still holds the old room can not lose or copy an item.
+ *
+ * A room always holds NO_ITEM itself when it has no item, whatever String
+ * it was given, so the item can be checked with == instead of equals.
  *
  * @author  Kwinn Danforth
  * @version 1.0.01
@@ -19,36 +28,63 @@ import java.util.HashMap;
 
 public class Room
 {
-    private String description;
-    private HashMap<String, Room> exits;        // stores exits of this room.
-    private String occupancy;
+    /** The item of a room that has no item; compare items with it by identity. */
+    public static final String NO_ITEM = "no item";
+    /** The occupant of a room nobody is in. */
+    public static final String NO_ONE = "no one";
 
+    // the item of a room that was replaced; only ever compared by identity
+    private static final String RETIRED = new String("retired");
 
+    private static final AtomicReferenceFieldUpdater<Room, String> ITEM =
+            AtomicReferenceFieldUpdater.newUpdater(Room.class, String.class, "item");
 
-    private String item;
+    private final int number;
+    private final String name;
+    private String description;
+    private RoomGraph graph;                    // holds the exits of this room.
+    private RoomStore store;                    // the store it was read from, if any
+    private volatile String occupancy;
+    private volatile String item;               // changed by many players at once
+    private volatile CachedDescription cached;  // the last long description built
+    private volatile Room replacedBy;           // set once the room is retired
 
     /**
-     * Create a room described "description". Initially, it has
-     * no exits. "description" is something like "a kitchen" or
+     * Create a room described "description". It has no exits
+     * until it is part of a RoomGraph. "description" is something like "a kitchen" or
      * "an open court yard".
+     * @param number The room's number, which identifies it in the data files.
+     * @param name The room's name, for example "Main Hall".
      * @param description The room's description.
+     * @param occupancy Who is in the room.
+     * @param item The item in the room.
      */
-    public Room(String description, String occupancy, String item)
+    public Room(int number, String name, String description, String occupancy, String item)
     {
+        this.number = number;
+        this.name = name;
         this.description = description;
         this.occupancy = occupancy;
-        this.item = item;
-        exits = new HashMap<>();
+        this.item = canonical(item);
+    }
+
+    /**
+     * Make this room part of a graph, which holds its exits.
+     * @param graph The graph of the world this room is in.
+     */
+    void setGraph(RoomGraph graph)
+    {
+        this.graph = graph;
+        cached = null;
     }
 
     /**
-     * Define an exit from this room.
-     * @param direction The direction of the exit.
-     * @param neighbor  The room to which the exit leads.
+     * Tell a store about every change to the item of this room.
+     * @param store The store this room was read from.
      */
-    public void setExit(String direction, Room neighbor)
+    void setStore(RoomStore store)
     {
-        exits.put(direction, neighbor);
+        this.store = store;
     }
 
     /**
@@ -57,7 +93,166 @@ public class Room
      * @param item The item for the room.
      */
     public void setItem(String item) {
-        this.item = item;
+        item = canonical(item);
+        while(true) {
+            String current = this.item;
+            if(current == RETIRED) {
+                replacedBy.setItem(item);
+                return;
+            }
+            if(ITEM.compareAndSet(this, current, item)) {
+                itemChanged();
+                return;
+            }
+        }
+    }
+
+    /**
+     * Take the item out of the room. When several players try to take it at
+     * the same time, exactly one of them gets it.
+     *
+     * @return The item, or null if there is no item (any more).
+     */
+    public String takeItem() {
+        while(true) {
+            String current = item;
+            if(current == RETIRED) {
+                return replacedBy.takeItem();
+            }
+            if(current == NO_ITEM) {
+                return null;
+            }
+            if(ITEM.compareAndSet(this, current, NO_ITEM)) {
+                itemChanged();
+                return current;
+            }
+        }
+    }
+
+    /**
+     * Take a given item out of the room, if the room still has it. When
+     * several players try to take it at the same time, exactly one of them
+     * gets it, and none of them takes an item that was put here meanwhile.
+     *
+     * @param expected The item the player saw in the room.
+     * @return true if the item was taken, false if the room has no item or another one.
+     */
+    public boolean takeItem(String expected) {
+        while(true) {
+            String current = item;
+            if(current == RETIRED) {
+                return replacedBy.takeItem(expected);
+            }
+            if(current == NO_ITEM || !current.equals(expected)) {
+                return false;
+            }
+            if(ITEM.compareAndSet(this, current, NO_ITEM)) {
+                itemChanged();
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Put an item into the room, if there is no item in it yet. When several
+     * players try to put an item here at the same time, exactly one of them
+     * succeeds.
+     *
+     * @param item The item to put down.
+     * @return true if the item is in the room now, false if the room already had one.
+     */
+    public boolean putItem(String item) {
+        item = canonical(item);
+        while(true) {
+            String current = this.item;
+            if(current == RETIRED) {
+                return replacedBy.putItem(item);
+            }
+            if(current != NO_ITEM) {
+                return false;
+            }
+            if(ITEM.compareAndSet(this, current, item)) {
+                itemChanged();
+                return true;
+            }
+        }
+    }
+
+    /**
+     * @return NO_ITEM if the item says there is no item, otherwise the item.
+     */
+    private static String canonical(String item) {
+        return item != NO_ITEM && NO_ITEM.equals(item) ? NO_ITEM : item;
+    }
+
+    private void itemChanged() {
+        if(store != null) {
+            store.itemChanged(this);
+        }
+        if(graph != null) {
+            graph.itemChanged(number);
+        }
+    }
+
+    /**
+     * Replace this room by a new version of it, which is not in use yet.
+     * The item of this room moves to the new room, except that a room that
+     * still has the item it started with gets the one it starts with now.
+     *
+     * @param successor The new version of this room.
+     * @param startItem The item this room started with.
+     * @param newStartItem The item the new version starts with.
+     */
+    void retire(Room successor, String startItem, String newStartItem) {
+        while(true) {
+            String current = item;
+            successor.item = current.equals(startItem) ? newStartItem : current;
+            replacedBy = successor;     // before the item says so
+            if(ITEM.compareAndSet(this, current, RETIRED)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * @return true if the room was replaced by a new version of it.
+     */
+    public boolean isRetired()
+    {
+        return item == RETIRED;
+    }
+
+    /**
+     * Define who is in the room
+     *
+     * @param occupancy Who is in the room.
+     */
+    public void setOccupancy(String occupancy) {
+        this.occupancy = occupancy;
+    }
+
+    /**
+     * @return Who is in the room according to the room data.
+     */
+    public String getOccupancy()
+    {
+        return occupancy;
+    }
+
+    /**
+     * @return The room's number.
+     */
+    public int getNumber()
+    {
+        return number;
+    }
+
+    /**
+     * @return The room's name.
+     */
+    public String getName()
+    {
+        return name;
     }
 
     /**
@@ -75,37 +270,68 @@ public class Room
      * Return a description of the room in the form:
      *     You are in the kitchen.
      *     Exits: north west
+     * The description is built once and kept until the item, the occupant
+     * or the exits of the room change. In a world with NPCs the occupant is
+     * whoever of them is in the room now.
      * @return A long description of this room
      */
     public String getLongDescription()
     {
-        String pickUpItemQuestion;
-        if(!this.item.equals("no item")) {
-            pickUpItemQuestion = "Would you like to pick up the item? (enter command 'pickup' to collect)";
-        }else{
-            pickUpItemQuestion = "";
+        String currentItem = item;
+        if(currentItem == RETIRED) {
+            return replacedBy.getLongDescription();
+        }
+        String currentOccupancy = occupancy;
+        NpcSimulation npcs = graph == null ? null : graph.getNpcs();
+        if(npcs != null) {
+            currentOccupancy = npcs.describe(number);
         }
-        return "You are " + description + ".\n" + occupancy + " is here," + "\n"+"There is " + item +" in here!" + "\n"+ pickUpItemQuestion + "\n" + getExitString();
+        CachedDescription description = cached;
+        if(description == null || description.item != currentItem || description.occupancy != currentOccupancy) {
+            StringBuilder builder = new StringBuilder(128);
+            buildLongDescription(builder, currentOccupancy, currentItem);
+            description = new CachedDescription(currentOccupancy, currentItem, builder.toString());
+            cached = description;
+        }
+        return description.text;
+    }
+
+    /**
+     * Append the long description of the room to a buffer. The description
+     * is the one getLongDescription keeps, so no string is made unless the
+     * item, the occupant or the exits changed since it was built.
+     * @param buffer The buffer to append to.
+     */
+    public void appendLongDescription(StringBuilder buffer)
+    {
+        buffer.append(getLongDescription());
+    }
 
+    private void buildLongDescription(StringBuilder builder, String occupancy, String item)
+    {
+        builder.append("You are ").append(description).append(".\n")
+                .append(occupancy).append(" is here,\n")
+                .append("There is ").append(item).append(" in here!\n");
+        if(item != NO_ITEM) {
+            builder.append("Would you like to pick up the item? (enter command 'pickup' to collect)");
+        }
+        builder.append("\n");
+        appendExits(builder);
     }
 
     /**
-     * Return a string describing the room's exits, for example
+     * Append a string describing the room's exits, for example
      * "Exits: north west".
-     * @return Details of the room's exits.
+     * @param builder The buffer to append the exits to.
      */
-    private String getExitString()
+    protected void appendExits(StringBuilder builder)
     {
-        String returnString = "Exits:";
-        Set<String> keys = exits.keySet();
-        if(!(this instanceof TransporterRoom)){
-            for(String exit : keys) {
-                returnString += " " + exit;
+        builder.append("Exits:");
+        if(graph != null) {
+            for(int exit = graph.firstExit(number); exit < graph.endOfExits(number); exit++) {
+                builder.append(' ').append(graph.getExitDirection(exit));
             }
-        }else{
-            returnString += " choose to 'go' + any direction to transport";
         }
-        return returnString;
     }
 
     /**
@@ -116,10 +342,45 @@ public class Room
      */
     public Room getExit(String direction)
     {
-        return exits.get(direction);
+        Direction exitDirection = Direction.fromString(direction);
+        if(exitDirection == null || graph == null) {
+            return null;
+        }
+        return graph.getRoom(graph.getExit(number, exitDirection));
     }
+
+    /**
+     * Return the room that is reached if we go from this room in direction
+     * "direction". Rooms where chance decides take it from "random".
+     * @param direction The exit's direction.
+     * @param random Where the randomness comes from, if any is needed.
+     * @return The room in the given direction.
+     */
+    public Room getExit(String direction, Random random)
+    {
+        return getExit(direction);
+    }
+
     public String getItem() {
-        return item;
+        String current = item;
+        return current == RETIRED ? replacedBy.getItem() : current;
     }
-}
 
+    /**
+     * A long description together with the occupant and item it was built
+     * for. It is only used while the room still has that occupant and item.
+     */
+    private static class CachedDescription
+    {
+        private final String occupancy;
+        private final String item;
+        private final String text;
+
+        CachedDescription(String occupancy, String item, String text)
+        {
+            this.occupancy = occupancy;
+            this.item = item;
+            this.text = text;
+        }
+    }
+}
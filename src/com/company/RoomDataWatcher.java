@@ -0,0 +1,272 @@
+package com.company;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * Reloads the rooms of a world when its room data file is edited, without
+ * stopping the games that are played in it.
+ *
+ * The watcher remembers a hash of every line of the room data. When the
+ * file changes it reads it again, but only makes rooms of the lines whose
+ * hash is different; those rooms replace the old versions in the world
+ * all at once (see World.update). Players keep playing while that happens
+ * and are moved to the new version of their room by its number.
+ *
+ * Only the text of rooms that already exist can change this way: their
+ * name, description, occupant and item. A line for a new room number, a
+ * room whose line was removed, and an item the world did not have before
+ * all need a restart, and are reported but not applied. A file that can
+ * not be read, for example because it is only half written, changes
+ * nothing; the next change to it is tried again.
+ *
+ * While NPCs walk the world (see NpcSimulation) the occupants are the NPCs.
+ * A new occupant for a room renames the NPC that started there; an occupant
+ * that was added to a room without one, or taken out of it, would add or
+ * remove an NPC, which also needs a restart and is reported.
+ *
+ * @author  Kwinn Danforth
+ * @version 1.0.01
+ */
+public class RoomDataWatcher implements AutoCloseable
+{
+    private static final long SETTLE_MILLIS = 50;   // editors write a file in more than one go
+
+    private final World world;
+    private final Path file;
+    private final long[] hashes;            // of each room's line, by room number
+    private WatchService watchService;
+    private Thread thread;
+    private int reloads;
+    private String lastReport = "not reloaded yet";
+    private GameMetrics metrics;
+
+    /**
+     * Create a watcher for the room data a world was read from.
+     * @param world The world, which must keep its rooms in memory.
+     * @throws IOException if the room data can not be read.
+     * @throws IllegalArgumentException if the world was not read from a file.
+     */
+    public RoomDataWatcher(World world) throws IOException
+    {
+        if (world.getRoomData() == null || world.getGraph().getStore() != null) {
+            throw new IllegalArgumentException("only a world read whole from a file can be reloaded");
+        }
+        this.world = world;
+        file = world.getRoomData();
+        hashes = new long[world.getRoomCount()];
+        new CsvReader(file).read(new CsvReader.RowHandler() {
+            public void row(CsvReader.Row row) throws IOException
+            {
+                int number = row.size() == 5 ? row.getInt(4) : -1;
+                if (number >= 0 && number < hashes.length) {
+                    hashes[number] = row.hash();
+                }
+            }
+        });
+    }
+
+    /**
+     * Time every reload as roomData.reload.
+     * @param metrics The metrics to time in, or null to not time reloads.
+     */
+    public synchronized void setMetrics(GameMetrics metrics)
+    {
+        this.metrics = metrics;
+    }
+
+    /**
+     * Start watching the file on a thread of its own.
+     * @throws IOException if the file system can not watch the file's directory.
+     */
+    public synchronized void start() throws IOException
+    {
+        if (thread != null) {
+            return;
+        }
+        watchService = FileSystems.getDefault().newWatchService();
+        file.toAbsolutePath().getParent().register(watchService,
+                StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+        thread = new Thread("room-data-watcher") {
+            public void run()
+            {
+                watch();
+            }
+        };
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Read the room data again and replace the rooms whose lines changed.
+     * @return The number of rooms that were replaced.
+     * @throws IOException if the file can not be read or a line is malformed;
+     *         then nothing is replaced.
+     */
+    public synchronized int reload() throws IOException
+    {
+        long started = System.nanoTime();
+        final List<Room> changed = new ArrayList<>();
+        final List<Long> changedHashes = new ArrayList<>();
+        final BitSet seen = new BitSet(hashes.length);
+        final StringBuilder ignored = new StringBuilder();
+        final ItemCatalog items = world.getItems();
+        final StringPool strings = world.getStrings();
+
+        new CsvReader(file).read(new CsvReader.RowHandler() {
+            public void row(CsvReader.Row row) throws IOException
+            {
+                row.expectFields(5);
+                int number = row.getInt(4);
+                if (number < 0 || number >= hashes.length || !world.getGraph().hasRoom(number)) {
+                    ignored.append("; room ").append(number).append(" is new");
+                    return;
+                }
+                if (seen.get(number)) {
+                    throw row.error("room " + number + " is defined twice");
+                }
+                seen.set(number);
+                long hash = row.hash();
+                if (hash == hashes[number]) {
+                    return;
+                }
+                String item = row.getString(3);
+                if (items.getId(item) < 0 && !item.equals(Room.NO_ITEM)) {
+                    ignored.append("; room ").append(number).append(" has a new item, ").append(item);
+                    return;
+                }
+                String name = row.getString(0, strings);
+                String description = row.getString(1, strings);
+                String occupancy = row.getString(2, strings);
+                item = items.intern(item);
+                if (world.getRoom(number) instanceof TransporterRoom) {
+                    changed.add(new TransporterRoom(number, name, description, occupancy, item));
+                } else {
+                    changed.add(new Room(number, name, description, occupancy, item));
+                }
+                changedHashes.add(hash);
+            }
+        });
+        for (int r = seen.nextClearBit(0); r < hashes.length; r = seen.nextClearBit(r + 1)) {
+            if (world.getGraph().hasRoom(r)) {
+                ignored.append("; room ").append(r).append(" was removed");
+            }
+        }
+
+        NpcSimulation npcs = world.getGraph().getNpcs();
+        List<Room> renames = new ArrayList<>();
+        if (npcs != null) {
+            for (Room room : changed) {
+                String before = world.getRoom(room.getNumber()).getOccupancy();
+                if (room.getOccupancy().equals(before)) {
+                    continue;
+                }
+                if (room.getOccupancy().equalsIgnoreCase(Room.NO_ONE)) {
+                    ignored.append("; room ").append(room.getNumber()).append(" would lose its NPC, ").append(before);
+                } else if (before.equalsIgnoreCase(Room.NO_ONE)) {
+                    ignored.append("; room ").append(room.getNumber()).append(" would get a new NPC, ")
+                            .append(room.getOccupancy());
+                } else {
+                    renames.add(room);
+                }
+            }
+        }
+        if (!changed.isEmpty()) {
+            world.update(changed);
+            for (int i = 0; i < changed.size(); i++) {
+                hashes[changed.get(i).getNumber()] = changedHashes.get(i);
+            }
+        }
+        for (Room room : renames) {
+            if (!npcs.rename(room.getNumber(), room.getOccupancy())) {
+                ignored.append("; room ").append(room.getNumber()).append(" has no NPC to rename");
+            }
+        }
+        reloads++;
+        long nanos = System.nanoTime() - started;
+        lastReport = String.format("%d rooms replaced in %.2f ms", changed.size(), nanos / 1e6) + ignored;
+        if (metrics != null) {
+            metrics.time("roomData.reload", nanos);
+        }
+        return changed.size();
+    }
+
+    /**
+     * @return How many times the room data was reloaded.
+     */
+    public synchronized int getReloadCount()
+    {
+        return reloads;
+    }
+
+    /**
+     * @return What the last reload did, for example "2 rooms replaced in
+     * 1.05 ms; room 9 is new", or why it failed.
+     */
+    public synchronized String getLastReport()
+    {
+        return lastReport;
+    }
+
+    /**
+     * Stop watching the file.
+     * @throws IOException if the watch service can not be closed.
+     */
+    public void close() throws IOException
+    {
+        WatchService service;
+        synchronized (this) {
+            service = watchService;
+        }
+        if (service != null) {
+            service.close();
+        }
+    }
+
+    private void watch()
+    {
+        try {
+            while (true) {
+                if (!fileChanged(watchService.take())) {
+                    continue;
+                }
+                // let the editor finish writing, and take the events that come with it
+                Thread.sleep(SETTLE_MILLIS);
+                WatchKey more;
+                while ((more = watchService.poll()) != null) {
+                    fileChanged(more);
+                }
+                try {
+                    reload();
+                } catch (IOException ex) {
+                    synchronized (this) {
+                        lastReport = "not reloaded: " + ex.getMessage();
+                    }
+                }
+            }
+        } catch (InterruptedException | ClosedWatchServiceException ex) {
+            // the watcher was closed
+        }
+    }
+
+    private boolean fileChanged(WatchKey key)
+    {
+        boolean changed = false;
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (file.getFileName().equals(event.context())) {
+                changed = true;
+            }
+        }
+        key.reset();
+        return changed;
+    }
+}
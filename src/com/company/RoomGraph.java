@@ -0,0 +1,303 @@
+package com.company;
+
+import java.util.List;
+
+/**
+ * The exits between all rooms of a world, kept in flat arrays.
+ *
+ * The exits are stored in compressed sparse row form: the exits of room r
+ * are the entries from exitStart[r] up to exitStart[r + 1] of the arrays
+ * exitDirections and exitTargets. Rooms are identified by their number and
+ * directions by their ordinal, so the whole graph is three arrays no matter
+ * how many rooms it has. Rooms ask the graph for their exits, so they do not
+ * need a map of their own.
+ *
+ * The rooms themselves are either all in an array or, in worlds too large
+ * for that, in a RoomStore that reads them when they are asked for. The
+ * items of the rooms can be read and changed through the graph either way,
+ * without making rooms the store does not have in memory.
+ *
+ * Rooms in an array can be replaced by new versions of them while players
+ * move around. The array is never changed: a copy with the new rooms is
+ * made and then published in one write, so a player looking up a room gets
+ * either the old version of the world or the new one, and never waits.
+ *
+ * The graph also knows the NPCs that walk through it, if there are any, so
+ * that the rooms can say who is in them.
+ *
+ * @author  Kwinn Danforth
+ * @version 1.0.01
+ */
+public class RoomGraph
+{
+    private volatile Room[] rooms;          // indexed by room number, or null
+    private final RoomStore store;          // holds the rooms when there is no array
+    private final int size;
+    private final int[] exitStart;          // rooms.length + 1 entries
+    private final byte[] exitDirections;    // Direction ordinals
+    private final int[] exitTargets;        // room numbers
+    private volatile NpcSimulation npcs;    // who walks through the rooms, or null
+    private volatile RouteIndex routes;     // told when the item of a room changes, or null
+
+    /**
+     * Create the graph from a list of exits, given in any order.
+     * @param rooms The rooms, indexed by their number. Unused numbers are null.
+     * @param from The room each exit leaves.
+     * @param directions The direction ordinal of each exit.
+     * @param to The room each exit leads to.
+     * @param exitCount The number of exits in the arrays.
+     * @throws IllegalArgumentException if a room has two exits in the same direction.
+     */
+    public RoomGraph(Room[] rooms, int[] from, byte[] directions, int[] to, int exitCount)
+    {
+        this(rooms, null, rooms.length, from, directions, to, exitCount);
+        for (Room room : rooms) {
+            if (room != null) {
+                room.setGraph(this);
+            }
+        }
+    }
+
+    /**
+     * Create the graph of the rooms in a store from a list of exits, given in any order.
+     * @param store The rooms.
+     * @param from The room each exit leaves.
+     * @param directions The direction ordinal of each exit.
+     * @param to The room each exit leads to.
+     * @param exitCount The number of exits in the arrays.
+     * @throws IllegalArgumentException if a room has two exits in the same direction.
+     */
+    public RoomGraph(RoomStore store, int[] from, byte[] directions, int[] to, int exitCount)
+    {
+        this(null, store, store.size(), from, directions, to, exitCount);
+        store.setGraph(this);
+    }
+
+    private RoomGraph(Room[] rooms, RoomStore store, int size, int[] from, byte[] directions, int[] to,
+                      int exitCount)
+    {
+        this.rooms = rooms;
+        this.store = store;
+        this.size = size;
+        exitStart = new int[size + 1];
+        exitDirections = new byte[exitCount];
+        exitTargets = new int[exitCount];
+
+        // count the exits of each room, then place them (a counting sort)
+        for (int i = 0; i < exitCount; i++) {
+            exitStart[from[i] + 1]++;
+        }
+        for (int r = 0; r < size; r++) {
+            exitStart[r + 1] += exitStart[r];
+        }
+        int[] next = new int[size];
+        System.arraycopy(exitStart, 0, next, 0, size);
+        for (int i = 0; i < exitCount; i++) {
+            int room = from[i];
+            for (int e = exitStart[room]; e < next[room]; e++) {
+                if (exitDirections[e] == directions[i]) {
+                    throw new IllegalArgumentException("room " + room + " has two exits "
+                            + Direction.fromOrdinal(directions[i]));
+                }
+            }
+            int slot = next[room]++;
+            exitDirections[slot] = directions[i];
+            exitTargets[slot] = to[i];
+        }
+    }
+
+    /**
+     * @param number The number of a room.
+     * @return The room with that number, or null if there is none.
+     */
+    public Room getRoom(int number)
+    {
+        if (store != null) {
+            return store.get(number);
+        }
+        return number >= 0 && number < size ? rooms[number] : null;
+    }
+
+    /**
+     * @param number The number of a room.
+     * @return true if there is a room with that number.
+     */
+    public boolean hasRoom(int number)
+    {
+        return store != null ? store.exists(number) : getRoom(number) != null;
+    }
+
+    /**
+     * @param number The number of a room.
+     * @return The room if it is a transporter, otherwise null.
+     */
+    public TransporterRoom getTransporter(int number)
+    {
+        if (store != null && !store.isTransporter(number)) {
+            return null;
+        }
+        Room room = getRoom(number);
+        return room instanceof TransporterRoom ? (TransporterRoom) room : null;
+    }
+
+    /**
+     * @param number The number of a room.
+     * @return The item in the room, Room.NO_ITEM, or null if there is no such room.
+     */
+    public String getItem(int number)
+    {
+        if (store != null) {
+            return store.getItem(number);
+        }
+        Room room = getRoom(number);
+        return room == null ? null : room.getItem();
+    }
+
+    /**
+     * @param number The number of a room that exists.
+     * @param item The item for the room.
+     */
+    public void setItem(int number, String item)
+    {
+        if (store != null) {
+            store.setItem(number, item);
+        } else {
+            rooms[number].setItem(item);
+        }
+    }
+
+    /**
+     * Replace rooms by new versions of them, all at once. The new rooms
+     * must not be in use yet; the old ones should be retired first, so
+     * that a player who still holds one is passed on to its successor.
+     * @param replacements The new rooms, each with the number of a room in the graph.
+     */
+    synchronized void replaceRooms(List<Room> replacements)
+    {
+        if (store != null) {
+            throw new IllegalStateException("the rooms of a room store can not be replaced");
+        }
+        Room[] copy = rooms.clone();
+        for (Room room : replacements) {
+            room.setGraph(this);
+            copy[room.getNumber()] = room;
+        }
+        rooms = copy;
+    }
+
+    /**
+     * Let NPCs walk through the rooms; the rooms describe them from now on.
+     * @param npcs The NPCs, or null for none.
+     */
+    void setNpcs(NpcSimulation npcs)
+    {
+        this.npcs = npcs;
+    }
+
+    /**
+     * Tell a route index whenever the item of a room changes.
+     * @param routes The index, or null for none.
+     */
+    void setRoutes(RouteIndex routes)
+    {
+        this.routes = routes;
+    }
+
+    /**
+     * Called when the item of a room changed.
+     * @param number The number of the room.
+     */
+    void itemChanged(int number)
+    {
+        RouteIndex index = routes;
+        if (index != null) {
+            index.itemChanged(number);
+        }
+    }
+
+    /**
+     * @return The NPCs that walk through the rooms, or null if there are none.
+     */
+    public NpcSimulation getNpcs()
+    {
+        return npcs;
+    }
+
+    /**
+     * @return The store the rooms are read from, or null if they are all in memory.
+     */
+    public RoomStore getStore()
+    {
+        return store;
+    }
+
+    /**
+     * @return One more than the highest room number in the graph.
+     */
+    public int size()
+    {
+        return size;
+    }
+
+    /**
+     * @param room The number of a room.
+     * @param direction The direction to go in.
+     * @return The number of the room in that direction, or -1 if there is no exit.
+     */
+    public int getExit(int room, Direction direction)
+    {
+        byte wanted = (byte) direction.ordinal();
+        for (int e = exitStart[room]; e < exitStart[room + 1]; e++) {
+            if (exitDirections[e] == wanted) {
+                return exitTargets[e];
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * The exits of a room are numbered from firstExit(room) up to,
+     * but not including, endOfExits(room).
+     * @param room The number of a room.
+     * @return The first exit of the room.
+     */
+    public int firstExit(int room)
+    {
+        return exitStart[room];
+    }
+
+    /**
+     * @param room The number of a room.
+     * @return The exit after the last exit of the room.
+     */
+    public int endOfExits(int room)
+    {
+        return exitStart[room + 1];
+    }
+
+    /**
+     * @param exit The number of an exit.
+     * @return The direction of the exit.
+     */
+    public Direction getExitDirection(int exit)
+    {
+        return Direction.fromOrdinal(exitDirections[exit]);
+    }
+
+    /**
+     * @param exit The number of an exit.
+     * @return The number of the room the exit leads to.
+     */
+    public int getExitTarget(int exit)
+    {
+        return exitTargets[exit];
+    }
+
+    /**
+     * @return The total number of exits in the graph.
+     */
+    public int getExitCount()
+    {
+        return exitTargets.length;
+    }
+}
@@ -0,0 +1,635 @@
+package com.company;
+
+import java.io.IOException;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The rooms of a world that is too large to keep in memory, read from the
+ * room data file only when they are needed.
+ *
+ * The store knows where in the file every room's line starts. It keeps
+ * this index in a sidecar file next to the room data (RoomData.csv.idx),
+ * together with the item every room starts with and the names of all
+ * items. The sidecar is mapped into memory when the store opens, so opening
+ * takes about the same time however many rooms there are; only when the
+ * sidecar is missing, or the room data changed since it was written, is the
+ * room data read once to build it again.
+ *
+ * The sidecar also holds a hash of every room's name, sorted, so a room is
+ * found by its name without reading the room data.
+ *
+ * A Room is made from its line the first time it is asked for. The most
+ * recently used rooms are kept in an LRU cache of a fixed size; a room that
+ * falls out of it stays the one Room for its number for as long as a
+ * player still holds it, so two players in the same room always see the
+ * same item. Transporter rooms are kept for good, since they hold their
+ * destinations. The cache is split into stripes by room number, each with
+ * its own lock and its own share of the size, so players in different
+ * rooms seldom wait for each other.
+ *
+ * What rooms hold changes while the game is played, but the file does
+ * not: every change to a room's item is written through to a map of the
+ * rooms whose item is not the one they started with, and a room that is
+ * read again gets its item from there. The items of rooms that are not in
+ * memory can be read and changed through the store without making them.
+ *
+ * @author  Kwinn Danforth
+ * @version 1.0.01
+ */
+public class RoomStore implements AutoCloseable
+{
+    /** The first bytes of every sidecar: "HGWI". */
+    public static final int MAGIC = 0x48475749;
+    /** The version of the sidecar format that is written. */
+    public static final byte VERSION = 2;
+
+    private static final String SUFFIX = ".idx";
+    private static final int HEADER = 40;
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final int STRIPES = 16;
+
+    private final Path file;
+    private final FileChannel channel;
+    private final BitSet transporters;
+    private final ItemCatalog items;
+    private final StringPool strings;
+    private final int roomCount;
+    private final LongBuffer offsets;       // of each room's line, or -1 if there is no such room
+    private final IntBuffer startItems;     // the ID of the item each room starts with, or -1
+    private final LongBuffer names;         // the hash of each room's name << 32 | its number, sorted
+    private final boolean indexed;          // the index was built, not mapped from the sidecar
+
+    private final ConcurrentHashMap<Integer, String> changedItems;
+    private final Stripe[] stripes;
+    private volatile RoomGraph graph;
+
+    /**
+     * Open the rooms of a room data file, using its sidecar if it is up to
+     * date and building one if it is not. The items of the rooms are added
+     * to the catalog, which must still be empty.
+     * @param file The room data, in the format of RoomData.csv.
+     * @param transporters The numbers of the rooms that are transporters.
+     * @param items The catalog the items go into.
+     * @param strings The pool the texts of the rooms are read through.
+     * @param cacheSize How many recently used rooms to keep in memory.
+     * @throws IOException if the room data can not be read or a line is malformed.
+     */
+    public RoomStore(Path file, BitSet transporters, ItemCatalog items, StringPool strings, int cacheSize)
+            throws IOException
+    {
+        this.file = file;
+        this.transporters = transporters;
+        this.items = items;
+        this.strings = strings;
+        cacheSize = Math.max(1, cacheSize);
+        changedItems = new ConcurrentHashMap<>();
+        stripes = new Stripe[Integer.highestOneBit(Math.min(STRIPES, cacheSize))];
+        for (int i = 0; i < stripes.length; i++) {
+            stripes[i] = new Stripe(cacheSize / stripes.length);
+        }
+
+        Path sidecar = sidecar(file);
+        ByteBuffer mapped = mapSidecar(sidecar, Files.size(file), Files.getLastModifiedTime(file).toMillis());
+        if (mapped != null) {
+            int slots = mapped.getInt(24);
+            roomCount = mapped.getInt(28);
+            int itemCount = mapped.getInt(32);
+            long itemNames = HEADER + 12L * slots + 8L * roomCount;
+            offsets = slice(mapped, HEADER, 8L * slots).asLongBuffer();
+            startItems = slice(mapped, HEADER + 8L * slots, 4L * slots).asIntBuffer();
+            names = slice(mapped, HEADER + 12L * slots, 8L * roomCount).asLongBuffer();
+            ByteBuffer itemBytes = slice(mapped, itemNames, mapped.capacity() - itemNames);
+            for (int id = 0; id < itemCount; id++) {
+                byte[] name = new byte[itemBytes.getShort() & 0xFFFF];
+                itemBytes.get(name);
+                items.intern(new String(name, StandardCharsets.UTF_8));
+            }
+            if (items.size() != itemCount) {
+                throw new IOException(sidecar + ": the item names are not all different");
+            }
+            indexed = false;
+        } else {
+            Index index = new Index();
+            new CsvReader(file).read(index);
+            roomCount = index.count;
+            offsets = LongBuffer.wrap(Arrays.copyOf(index.offsets, index.slots));
+            startItems = IntBuffer.wrap(Arrays.copyOf(index.startItems, index.slots));
+            names = LongBuffer.wrap(index.sortedNames());
+            indexed = true;
+            writeSidecar(sidecar);
+        }
+        channel = FileChannel.open(file, StandardOpenOption.READ);
+    }
+
+    /**
+     * @param number The number of a room.
+     * @return The room with that number, or null if there is none.
+     */
+    public Room get(int number)
+    {
+        if (!exists(number)) {
+            return null;
+        }
+        Stripe stripe = stripeOf(number);
+        synchronized (stripe) {
+            Room room = stripe.inMemory(number);
+            if (room != null) {
+                stripe.hits++;
+            } else {
+                stripe.misses++;
+                room = read(number);
+                stripe.releaseCollected();
+                stripe.live.put(number, new RoomReference(room, stripe.released));
+                if (room instanceof TransporterRoom) {
+                    stripe.pinned.put(number, room);
+                }
+            }
+            stripe.recent.put(number, room);
+            return room;
+        }
+    }
+
+    /**
+     * @param number The number of a room.
+     * @return true if there is a room with that number.
+     */
+    public boolean exists(int number)
+    {
+        return number >= 0 && number < offsets.limit() && offsets.get(number) >= 0;
+    }
+
+    /**
+     * @param number The number of a room.
+     * @return true if the room is a transporter.
+     */
+    public boolean isTransporter(int number)
+    {
+        return exists(number) && transporters.get(number);
+    }
+
+    /**
+     * Find the item that is in a room, without reading the room.
+     * @param number The number of a room.
+     * @return The item, Room.NO_ITEM, or null if there is no such room.
+     */
+    public String getItem(int number)
+    {
+        if (!exists(number)) {
+            return null;
+        }
+        String item = changedItems.get(number);
+        return item != null ? item : startItem(number);
+    }
+
+    /**
+     * Change the item that is in a room, without reading the room.
+     * @param number The number of a room that exists.
+     * @param item The item for the room.
+     */
+    public void setItem(int number, String item)
+    {
+        Room room;
+        Stripe stripe = stripeOf(number);
+        synchronized (stripe) {
+            room = stripe.inMemory(number);
+            if (room == null) {
+                record(number, item);
+            }
+        }
+        if (room == null) {
+            if (graph != null) {
+                graph.itemChanged(number);
+            }
+            return;
+        }
+        room.setItem(item);     // which writes through
+    }
+
+    /**
+     * Called by a room of this store after its item changed.
+     * @param room The room.
+     */
+    void itemChanged(Room room)
+    {
+        // every change is followed by one of these, so the last one records the last change
+        synchronized (room) {
+            record(room.getNumber(), room.getItem());
+        }
+    }
+
+    /**
+     * Find a room by its name. Upper and lower case do not matter. Only the
+     * rooms whose name has the same hash are read.
+     * @param name The name of a room.
+     * @return The room with the lowest number of those with that name, or
+     * null if there is no room with that name.
+     */
+    public Room find(String name)
+    {
+        int hash = nameHash(name);
+        long key = (long) hash << 32;
+        int low = 0;
+        int high = names.limit();
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (names.get(middle) < key) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        for (int i = low; i < names.limit() && (int) (names.get(i) >> 32) == hash; i++) {
+            Room room = get((int) names.get(i));
+            if (room != null && room.getName().equalsIgnoreCase(name)) {
+                return room;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return The IDs of the items the rooms start with, or -1, indexed by room number.
+     */
+    public IntBuffer getStartItems()
+    {
+        return startItems.asReadOnlyBuffer();
+    }
+
+    /**
+     * @return One more than the highest room number.
+     */
+    public int size()
+    {
+        return offsets.limit();
+    }
+
+    /**
+     * @return The number of rooms.
+     */
+    public int getRoomCount()
+    {
+        return roomCount;
+    }
+
+    /**
+     * @return true if the room data was read to build the index, false if
+     * the sidecar could be used.
+     */
+    public boolean wasIndexed()
+    {
+        return indexed;
+    }
+
+    /**
+     * @return How many times a room that was asked for was in memory.
+     */
+    public long getHitCount()
+    {
+        long hits = 0;
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                hits += stripe.hits;
+            }
+        }
+        return hits;
+    }
+
+    /**
+     * @return How many times a room had to be read from the room data.
+     */
+    public long getMissCount()
+    {
+        long misses = 0;
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                misses += stripe.misses;
+            }
+        }
+        return misses;
+    }
+
+    /**
+     * Close the room data. Rooms that are not in memory can not be read any more.
+     * @throws IOException if the file can not be closed.
+     */
+    public void close() throws IOException
+    {
+        channel.close();
+    }
+
+    /**
+     * @return The sidecar of a room data file.
+     */
+    public static Path sidecar(Path file)
+    {
+        return file.resolveSibling(file.getFileName() + SUFFIX);
+    }
+
+    /**
+     * Make this store part of a graph, which the rooms it reads will ask for
+     * their exits. The rooms that were read before, such as the transporters
+     * and their destinations, are made part of it too.
+     * @param graph The graph of the world.
+     */
+    void setGraph(RoomGraph graph)
+    {
+        this.graph = graph;
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                for (RoomReference reference : stripe.live.values()) {
+                    Room room = reference.get();
+                    if (room != null) {
+                        room.setGraph(graph);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * A hash of a room's name that ignores upper and lower case the way equalsIgnoreCase does.
+     */
+    private static int nameHash(String name)
+    {
+        int hash = 0;
+        for (int i = 0; i < name.length(); i++) {
+            hash = hash * 31 + Character.toLowerCase(Character.toUpperCase(name.charAt(i)));
+        }
+        return hash;
+    }
+
+    private Stripe stripeOf(int number)
+    {
+        return stripes[number & (stripes.length - 1)];
+    }
+
+    private String startItem(int number)
+    {
+        int id = startItems.get(number);
+        return id < 0 ? Room.NO_ITEM : items.getName(id);
+    }
+
+    private void record(int number, String item)
+    {
+        if (item.equals(startItem(number))) {
+            changedItems.remove(number);
+        } else {
+            changedItems.put(number, item);
+        }
+    }
+
+    private Room read(int number)
+    {
+        final String[] fields = new String[4];
+        try {
+            new CsvReader(file).read(channel, offsets.get(number), 1, new CsvReader.RowHandler() {
+                public void row(CsvReader.Row row) throws IOException
+                {
+                    row.expectFields(5);
+                    for (int f = 0; f < fields.length; f++) {
+                        fields[f] = row.getString(f, strings);
+                    }
+                }
+            });
+        } catch (IOException ex) {
+            throw new IllegalStateException(file.getFileName() + ": can not read room " + number, ex);
+        }
+        Room room;
+        if (transporters.get(number)) {
+            room = new TransporterRoom(number, fields[0], fields[1], fields[2], fields[3]);
+        } else {
+            room = new Room(number, fields[0], fields[1], fields[2], fields[3]);
+        }
+        String item = changedItems.get(number);
+        room.setItem(item != null ? item : startItem(number));
+        room.setGraph(graph);
+        room.setStore(this);
+        return room;
+    }
+
+    private static ByteBuffer slice(ByteBuffer buffer, long from, long length)
+    {
+        ByteBuffer copy = buffer.duplicate();
+        copy.position((int) from).limit((int) (from + length));
+        return copy.slice();
+    }
+
+    /**
+     * @return The sidecar, mapped into memory, or null if there is none or
+     * it was not written for the room data as it is now.
+     */
+    private static ByteBuffer mapSidecar(Path sidecar, long size, long modified) throws IOException
+    {
+        if (!Files.isRegularFile(sidecar)) {
+            return null;
+        }
+        try (FileChannel in = FileChannel.open(sidecar, StandardOpenOption.READ)) {
+            if (in.size() < HEADER || in.size() > Integer.MAX_VALUE) {
+                return null;
+            }
+            MappedByteBuffer mapped = in.map(FileChannel.MapMode.READ_ONLY, 0, in.size());
+            int slots = mapped.getInt(24);
+            int rooms = mapped.getInt(28);
+            if (mapped.getInt(0) != MAGIC || mapped.get(4) != VERSION || mapped.getLong(8) != size
+                    || mapped.getLong(16) != modified || slots < 0 || rooms < 0
+                    || HEADER + 12L * slots + 8L * rooms > in.size()) {
+                return null;
+            }
+            return mapped;
+        }
+    }
+
+    /**
+     * Write the index to the sidecar, through a temporary file so a sidecar
+     * is always whole. A sidecar that can not be written only means the
+     * index is built again next time.
+     */
+    private void writeSidecar(Path sidecar)
+    {
+        Path written = sidecar.resolveSibling(sidecar.getFileName() + ".tmp");
+        try {
+            try (FileChannel out = FileChannel.open(written, StandardOpenOption.CREATE,
+                    StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+                ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+                buffer.putInt(MAGIC).put(VERSION).put(new byte[3])
+                        .putLong(Files.size(file))
+                        .putLong(Files.getLastModifiedTime(file).toMillis())
+                        .putInt(size()).putInt(roomCount).putInt(items.size()).putInt(0);
+                for (int r = 0; r < size(); r++) {
+                    drainIfFull(out, buffer, 8);
+                    buffer.putLong(offsets.get(r));
+                }
+                for (int r = 0; r < size(); r++) {
+                    drainIfFull(out, buffer, 4);
+                    buffer.putInt(startItems.get(r));
+                }
+                for (int i = 0; i < names.limit(); i++) {
+                    drainIfFull(out, buffer, 8);
+                    buffer.putLong(names.get(i));
+                }
+                for (int id = 0; id < items.size(); id++) {
+                    byte[] name = items.getName(id).getBytes(StandardCharsets.UTF_8);
+                    if (name.length > 0xFFFF) {
+                        throw new IOException("item " + id + " has too long a name");
+                    }
+                    drainIfFull(out, buffer, 2 + name.length);
+                    buffer.putShort((short) name.length).put(name);
+                }
+                buffer.flip();
+                while (buffer.hasRemaining()) {
+                    out.write(buffer);
+                }
+            }
+            Files.move(written, sidecar, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException ex) {
+            try {
+                Files.deleteIfExists(written);
+            } catch (IOException ignored) {
+                // it is only a temporary file
+            }
+        }
+    }
+
+    private static void drainIfFull(FileChannel out, ByteBuffer buffer, int needed) throws IOException
+    {
+        if (buffer.remaining() < needed) {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                out.write(buffer);
+            }
+            buffer.clear();
+        }
+    }
+
+    /**
+     * Builds the index in one pass over the room data.
+     */
+    private class Index implements CsvReader.RowHandler
+    {
+        private long[] offsets = new long[0];
+        private int[] startItems = new int[0];
+        private int[] nameHashes = new int[0];
+        private int slots;
+        private int count;
+
+        public void row(CsvReader.Row row) throws IOException
+        {
+            row.expectFields(5);
+            int number = row.getInt(4);
+            if (number < 0) {
+                throw row.error("room numbers can not be negative: " + number);
+            }
+            if (number >= offsets.length) {
+                int size = Math.max(number + 1, offsets.length * 2);
+                int old = offsets.length;
+                offsets = Arrays.copyOf(offsets, size);
+                startItems = Arrays.copyOf(startItems, size);
+                nameHashes = Arrays.copyOf(nameHashes, size);
+                Arrays.fill(offsets, old, size, -1);
+                Arrays.fill(startItems, old, size, -1);
+            }
+            if (number < slots && offsets[number] >= 0) {
+                throw row.error("room " + number + " is defined twice");
+            }
+            offsets[number] = row.getOffset();
+            startItems[number] = items.getId(items.intern(row.getString(3)));
+            nameHashes[number] = nameHash(row.getString(0));
+            slots = Math.max(slots, number + 1);
+            count++;
+        }
+
+        /**
+         * @return The hash of every room's name << 32 | the room's number, sorted.
+         */
+        long[] sortedNames()
+        {
+            long[] names = new long[count];
+            int i = 0;
+            for (int r = 0; r < slots; r++) {
+                if (offsets[r] >= 0) {
+                    names[i++] = (long) nameHashes[r] << 32 | r;
+                }
+            }
+            Arrays.sort(names);
+            return names;
+        }
+    }
+
+    /**
+     * One stripe of the cache: the rooms whose number falls into it, kept
+     * and counted under the stripe's own lock.
+     */
+    private static class Stripe
+    {
+        private final LinkedHashMap<Integer, Room> recent;
+        private final HashMap<Integer, RoomReference> live = new HashMap<>();
+        private final ReferenceQueue<Room> released = new ReferenceQueue<>();
+        private final HashMap<Integer, Room> pinned = new HashMap<>();     // the transporters
+        private long hits;
+        private long misses;
+
+        Stripe(final int capacity)
+        {
+            recent = new LinkedHashMap<Integer, Room>(16, 0.75f, true) {
+                protected boolean removeEldestEntry(Map.Entry<Integer, Room> eldest)
+                {
+                    return size() > capacity;
+                }
+            };
+        }
+
+        Room inMemory(int number)
+        {
+            Room room = recent.get(number);
+            if (room == null) {
+                room = pinned.get(number);
+            }
+            if (room == null) {
+                RoomReference reference = live.get(number);
+                room = reference == null ? null : reference.get();
+            }
+            return room;
+        }
+
+        void releaseCollected()
+        {
+            RoomReference reference;
+            while ((reference = (RoomReference) released.poll()) != null) {
+                if (live.get(reference.number) == reference) {
+                    live.remove(reference.number);
+                }
+            }
+        }
+    }
+
+    /**
+     * A room that may be collected once nobody holds it, with its number.
+     */
+    private static class RoomReference extends WeakReference<Room>
+    {
+        private final int number;
+
+        RoomReference(Room room, ReferenceQueue<Room> queue)
+        {
+            super(room, queue);
+            this.number = room.getNumber();
+        }
+    }
+}
@@ -0,0 +1,538 @@
+package com.company;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Finds the way from any room to any other room.
+ *
+ * For every target room the index knows, for every room, the first step
+ * of a shortest route to the target. A step is either an exit of the room
+ * or, for a transporter room, a jump to one of its destinations; such a
+ * jump is a probabilistic edge, taken with a chance of one in the number
+ * of destinations, and routes say so.
+ *
+ * In small worlds the first steps for all pairs of rooms are worked out
+ * once, when the index is built. In large worlds that table would not fit,
+ * so the first steps towards one target are worked out with a breadth-first
+ * search the first time the target is asked for, and the most recently
+ * used targets are kept in an LRU cache. The cache is limited by bytes:
+ * the first steps towards one target take four bytes for every room, so
+ * the larger the world, the fewer targets are kept.
+ *
+ * The way to the nearest item is indexed the same way for all rooms at
+ * once: a breadth-first search backwards from every room with an item
+ * gives each room its distance to the nearest item and the first step
+ * towards it. The rooms tell the index when their item changes, and the
+ * index catches up the next time it is asked: a room that gets an item
+ * shortens the way for the rooms around it, and a room that loses its
+ * item sends the rooms whose way led there looking for the next nearest.
+ * Until the first time it is asked, the index is not built at all.
+ *
+ * @author  Kwinn Danforth
+ * @version 1.0.01
+ */
+public class RouteIndex
+{
+    /** Worlds up to this many rooms get the full table of first steps. */
+    public static final int ALL_PAIRS_LIMIT = 1024;
+
+    private static final int UNREACHABLE = -1;
+    private static final int FAR = Integer.MAX_VALUE;     // the distance to an item that can not be reached
+    private static final int MAX_PENDING = 4096;           // item changes kept; after more, everything is searched again
+    // a step to a transporter destination d is stored as JUMP - d
+    private static final int JUMP = -2;
+
+    private final RoomGraph graph;
+    private final int rooms;
+
+    // every way into each room (reversed exits and jumps), in CSR form
+    private final int[] inStart;
+    private final int[] inSource;
+    private final int[] inStep;     // the step the source takes to get in
+
+    private final int[] allPairs;   // [target * rooms + source], or null
+    private final Map<Integer, int[]> cache;
+    private final int cacheSize;
+    private final ThreadLocal<int[]> queues;   // for the searches of the cache, one per thread
+
+    // the way to the nearest item, built when it is first asked for; guarded by itemLock
+    private final Object itemLock = new Object();
+    private int[] itemDistance;
+    private int[] itemStep;
+    private int[] itemQueue;
+    private final Queue<Integer> changedRooms;  // rooms whose item changed since
+    private final AtomicInteger changes;
+    private volatile boolean itemsIndexed;
+
+    /**
+     * Build the index for a world.
+     * @param graph The rooms and exits of the world.
+     * @param cacheBytes How many bytes the targets kept in large worlds may take.
+     */
+    public RouteIndex(RoomGraph graph, long cacheBytes)
+    {
+        this.graph = graph;
+        rooms = graph.size();
+        cacheSize = (int) Math.max(1, Math.min(Integer.MAX_VALUE, cacheBytes / (4L * Math.max(1, rooms))));
+        queues = new ThreadLocal<int[]>() {
+            protected int[] initialValue()
+            {
+                return new int[rooms];
+            }
+        };
+        changedRooms = new ConcurrentLinkedQueue<>();
+        changes = new AtomicInteger();
+
+        // count the ways into each room, then place them (a counting sort)
+        inStart = new int[rooms + 1];
+        for (int exit = 0; exit < graph.getExitCount(); exit++) {
+            inStart[graph.getExitTarget(exit) + 1]++;
+        }
+        for (int r = 0; r < rooms; r++) {
+            for (Room destination : jumps(r)) {
+                inStart[destination.getNumber() + 1]++;
+            }
+        }
+        for (int r = 0; r < rooms; r++) {
+            inStart[r + 1] += inStart[r];
+        }
+        inSource = new int[inStart[rooms]];
+        inStep = new int[inStart[rooms]];
+        int[] next = Arrays.copyOf(inStart, rooms);
+        for (int r = 0; r < rooms; r++) {
+            for (int exit = graph.firstExit(r); exit < graph.endOfExits(r); exit++) {
+                int slot = next[graph.getExitTarget(exit)]++;
+                inSource[slot] = r;
+                inStep[slot] = exit;
+            }
+            for (Room destination : jumps(r)) {
+                int slot = next[destination.getNumber()]++;
+                inSource[slot] = r;
+                inStep[slot] = JUMP - destination.getNumber();
+            }
+        }
+
+        if (rooms <= ALL_PAIRS_LIMIT) {
+            allPairs = new int[rooms * rooms];
+            int[] queue = new int[rooms];
+            for (int target = 0; target < rooms; target++) {
+                firstSteps(target, allPairs, target * rooms, queue);
+            }
+            cache = null;
+        } else {
+            allPairs = null;
+            cache = new LinkedHashMap<Integer, int[]>(16, 0.75f, true) {
+                protected boolean removeEldestEntry(Map.Entry<Integer, int[]> eldest)
+                {
+                    return size() > RouteIndex.this.cacheSize;
+                }
+            };
+        }
+    }
+
+    /**
+     * Find a shortest route between two rooms.
+     * @param from The number of the room to start in.
+     * @param to The number of the room to get to.
+     * @return The route, or null if the room can not be reached.
+     */
+    public Route route(int from, int to)
+    {
+        if (from < 0 || from >= rooms || to < 0 || to >= rooms) {
+            return null;
+        }
+        Route route = new Route(from);
+        if (allPairs != null) {
+            follow(route, allPairs, to * rooms, from, to);
+        } else {
+            follow(route, stepsTowards(to), 0, from, to);
+        }
+        return route.reached ? route : null;
+    }
+
+    /**
+     * Find a shortest route to the nearest room that has an item in it.
+     * @param from The number of the room to start in.
+     * @return The route, or null if there are no items left that can be reached.
+     */
+    public Route routeToNearestItem(int from)
+    {
+        if (from < 0 || from >= rooms) {
+            return null;
+        }
+        synchronized (itemLock) {
+            for (int attempt = 0; attempt < 2; attempt++) {
+                if (!itemsIndexed || attempt > 0) {
+                    indexItems();
+                } else {
+                    catchUp();
+                }
+                if (itemDistance[from] == FAR) {
+                    return null;
+                }
+                Route route = new Route(from);
+                int room = from;
+                for (int guard = 0; itemDistance[room] > 0 && guard < rooms; guard++) {
+                    int step = itemStep[room];
+                    route.add(step);
+                    room = step >= 0 ? graph.getExitTarget(step) : JUMP - step;
+                }
+                String item = graph.getItem(room);
+                if (item != null && item != Room.NO_ITEM) {
+                    route.reached = true;
+                    return route;
+                }
+                // a change that was not reported; search everything again
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Called by the graph when the item of a room changed.
+     * @param room The number of the room.
+     */
+    void itemChanged(int room)
+    {
+        if (itemsIndexed && changes.incrementAndGet() <= MAX_PENDING) {
+            changedRooms.add(room);
+        }
+    }
+
+    /**
+     * @return How many targets are kept in the cache of large worlds.
+     */
+    public int getCacheSize()
+    {
+        return cacheSize;
+    }
+
+    /**
+     * @return true if the index holds the first steps for all pairs of rooms.
+     */
+    public boolean isAllPairs()
+    {
+        return allPairs != null;
+    }
+
+    /**
+     * The first steps towards one target, from the cache or a new search.
+     */
+    private int[] stepsTowards(int target)
+    {
+        synchronized (cache) {
+            int[] steps = cache.get(target);
+            if (steps != null) {
+                return steps;
+            }
+        }
+        int[] steps = new int[rooms];
+        firstSteps(target, steps, 0, queues.get());
+        synchronized (cache) {
+            cache.put(target, steps);
+        }
+        return steps;
+    }
+
+    /**
+     * A breadth-first search backwards from the target, which finds the first
+     * step from every room that can reach it.
+     */
+    private void firstSteps(int target, int[] steps, int offset, int[] queue)
+    {
+        Arrays.fill(steps, offset, offset + rooms, UNREACHABLE);
+        int head = 0;
+        int tail = 0;
+        queue[tail++] = target;
+        while (head < tail) {
+            int room = queue[head++];
+            for (int in = inStart[room]; in < inStart[room + 1]; in++) {
+                int source = inSource[in];
+                // the target has no first step, every other room is found once
+                if (source != target && steps[offset + source] == UNREACHABLE) {
+                    steps[offset + source] = inStep[in];
+                    queue[tail++] = source;
+                }
+            }
+        }
+    }
+
+    /**
+     * Search backwards from every room with an item at once. Called with itemLock held.
+     */
+    private void indexItems()
+    {
+        if (itemDistance == null) {
+            itemDistance = new int[rooms];
+            itemStep = new int[rooms];
+            itemQueue = new int[rooms];
+        }
+        // changes from now on are caught up with later
+        itemsIndexed = true;
+        changedRooms.clear();
+        changes.set(0);
+        Arrays.fill(itemDistance, FAR);
+        int tail = 0;
+        for (int r = 0; r < rooms; r++) {
+            if (hasItem(r)) {
+                itemDistance[r] = 0;
+                itemQueue[tail++] = r;
+            }
+        }
+        spread(0, tail);
+    }
+
+    /**
+     * Apply the item changes reported since the last time. Called with itemLock held.
+     */
+    private void catchUp()
+    {
+        if (changes.get() > MAX_PENDING) {
+            indexItems();
+            return;
+        }
+        Integer room;
+        while ((room = changedRooms.poll()) != null) {
+            changes.decrementAndGet();
+            if (hasItem(room)) {
+                if (itemDistance[room] != 0) {
+                    itemDistance[room] = 0;
+                    itemQueue[0] = room;
+                    spread(0, 1);
+                }
+            } else if (itemDistance[room] == 0) {
+                lost(room);
+            }
+        }
+    }
+
+    /**
+     * Go on with a breadth-first search backwards, whose queue holds the
+     * rooms from head to tail, shortening the way of every room it finds a
+     * shorter way for.
+     */
+    private void spread(int head, int tail)
+    {
+        while (head < tail) {
+            int room = itemQueue[head++];
+            int distance = itemDistance[room] + 1;
+            for (int in = inStart[room]; in < inStart[room + 1]; in++) {
+                int source = inSource[in];
+                if (itemDistance[source] > distance) {
+                    itemDistance[source] = distance;
+                    itemStep[source] = inStep[in];
+                    itemQueue[tail++] = source;
+                }
+            }
+        }
+    }
+
+    /**
+     * A room lost its item: the rooms whose way led to it find the next
+     * nearest item, through the rooms around them whose way is still good.
+     */
+    private void lost(int room)
+    {
+        // the rooms whose first steps lead to this room, found backwards along those steps
+        int tail = 0;
+        itemQueue[tail++] = room;
+        for (int head = 0; head < tail; head++) {
+            int here = itemQueue[head];
+            for (int in = inStart[here]; in < inStart[here + 1]; in++) {
+                int source = inSource[in];
+                if (itemStep[source] == inStep[in] && itemDistance[source] == itemDistance[here] + 1) {
+                    itemQueue[tail++] = source;
+                }
+            }
+        }
+        for (int i = 0; i < tail; i++) {
+            itemDistance[itemQueue[i]] = FAR;
+        }
+        // each of them may get a way through a room around it, nearest first
+        long[] starts = new long[tail];
+        int count = 0;
+        for (int i = 0; i < tail; i++) {
+            int lostRoom = itemQueue[i];
+            int best = bestStep(lostRoom);
+            if (best >= 0) {
+                starts[count++] = (long) best << 32 | lostRoom;
+            }
+        }
+        Arrays.sort(starts, 0, count);
+        // a breadth-first search from all of them, merged in order of distance
+        int head = 0;
+        tail = 0;
+        int next = 0;
+        while (next < count || head < tail) {
+            int lostRoom;
+            if (next < count && (head == tail || (int) (starts[next] >>> 32) <= itemDistance[itemQueue[head]])) {
+                lostRoom = (int) starts[next++];
+                int distance = (int) (starts[next - 1] >>> 32);
+                if (distance >= itemDistance[lostRoom]) {
+                    continue;   // a shorter way was found meanwhile
+                }
+                itemDistance[lostRoom] = distance;
+                itemStep[lostRoom] = stepTo(lostRoom, distance - 1);
+            } else {
+                lostRoom = itemQueue[head++];
+            }
+            int distance = itemDistance[lostRoom] + 1;
+            for (int in = inStart[lostRoom]; in < inStart[lostRoom + 1]; in++) {
+                int source = inSource[in];
+                if (itemDistance[source] > distance) {
+                    itemDistance[source] = distance;
+                    itemStep[source] = inStep[in];
+                    itemQueue[tail++] = source;
+                }
+            }
+        }
+    }
+
+    /**
+     * @return The shortest distance to an item through the rooms a room leads to, or -1 if none leads to one.
+     */
+    private int bestStep(int room)
+    {
+        int best = FAR;
+        for (int exit = graph.firstExit(room); exit < graph.endOfExits(room); exit++) {
+            best = Math.min(best, itemDistance[graph.getExitTarget(exit)]);
+        }
+        for (Room destination : jumps(room)) {
+            best = Math.min(best, itemDistance[destination.getNumber()]);
+        }
+        return best == FAR ? -1 : best + 1;
+    }
+
+    /**
+     * @return A step from a room to a room at the given distance from an item.
+     */
+    private int stepTo(int room, int distance)
+    {
+        for (int exit = graph.firstExit(room); exit < graph.endOfExits(room); exit++) {
+            if (itemDistance[graph.getExitTarget(exit)] == distance) {
+                return exit;
+            }
+        }
+        for (Room destination : jumps(room)) {
+            if (itemDistance[destination.getNumber()] == distance) {
+                return JUMP - destination.getNumber();
+            }
+        }
+        throw new IllegalStateException("room " + room + " has no way at distance " + distance);
+    }
+
+    private boolean hasItem(int room)
+    {
+        String item = graph.getItem(room);
+        return item != null && item != Room.NO_ITEM;
+    }
+
+    private void follow(Route route, int[] steps, int offset, int from, int to)
+    {
+        int room = from;
+        for (int guard = 0; room != to && guard < rooms; guard++) {
+            int step = steps[offset + room];
+            if (step == UNREACHABLE) {
+                return;
+            }
+            route.add(step);
+            room = step >= 0 ? graph.getExitTarget(step) : JUMP - step;
+        }
+        route.reached = room == to;
+    }
+
+    private List<Room> jumps(int room)
+    {
+        TransporterRoom here = graph.getTransporter(room);
+        if (here != null) {
+            return here.getRooms();
+        }
+        return Collections.emptyList();
+    }
+
+    /**
+     * A route between two rooms: the steps to take, in order.
+     */
+    public class Route
+    {
+        private final int from;
+        private int[] steps = new int[8];
+        private int length;
+        private boolean reached;
+
+        private Route(int from)
+        {
+            this.from = from;
+        }
+
+        private void add(int step)
+        {
+            if (length == steps.length) {
+                steps = Arrays.copyOf(steps, length * 2);
+            }
+            steps[length++] = step;
+        }
+
+        /**
+         * @return The number of steps.
+         */
+        public int length()
+        {
+            return length;
+        }
+
+        /**
+         * @param index The index of a step.
+         * @return The direction of the step, or null for a transporter jump.
+         */
+        public Direction getDirection(int index)
+        {
+            return steps[index] >= 0 ? graph.getExitDirection(steps[index]) : null;
+        }
+
+        /**
+         * @param index The index of a step.
+         * @return The number of the room the step leads to.
+         */
+        public int getRoom(int index)
+        {
+            return steps[index] >= 0 ? graph.getExitTarget(steps[index]) : JUMP - steps[index];
+        }
+
+        /**
+         * @return The steps, for example "east, north", where a transporter
+         * jump reads "any direction (1 in 7 chance)".
+         */
+        public String toString()
+        {
+            if (length == 0) {
+                return "you are already there";
+            }
+            StringBuilder text = new StringBuilder();
+            for (int i = 0; i < length; i++) {
+                if (i > 0) {
+                    text.append(", ");
+                }
+                if (steps[i] >= 0) {
+                    text.append(graph.getExitDirection(steps[i]));
+                } else {
+                    TransporterRoom transporter = (TransporterRoom) graph.getRoom(i == 0 ? from : getRoom(i - 1));
+                    if (transporter.isUniform()) {
+                        text.append("any direction (1 in ").append(transporter.getRooms().size()).append(" chance)");
+                    } else {
+                        double chance = transporter.getChance(graph.getRoom(getRoom(i)));
+                        text.append("any direction (").append(Math.round(chance * 100)).append("% chance)");
+                    }
+                }
+            }
+            return text.toString();
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package com.company;
+
+import java.io.IOException;
+
+/**
+ * What a snapshot keeps of one player's game: the room they are in and the
+ * items they carry, as the words of their inventory's bit set. A state is
+ * taken from a Game and put back into one, in the same world or in a world
+ * loaded from the same data files.
+ *
+ * @author  Kwinn Danforth
+ * @version 1.0.01
+ */
+public class SessionState
+{
+    private final int room;
+    private final long[] items;
+
+    /**
+     * @param room The number of the room the player is in.
+     * @param items The IDs of the items the player carries, as bit set words.
+     */
+    public SessionState(int room, long[] items)
+    {
+        this.room = room;
+        this.items = items;
+    }
+
+    /**
+     * Read a state that was written with write.
+     * @param in The snapshot to read from.
+     * @param world The world the state belongs to.
+     * @return The state.
+     * @throws IOException if the snapshot ends or does not fit the world.
+     */
+    public static SessionState read(SnapshotReader in, World world) throws IOException
+    {
+        int room = in.readInt(world.getRoomCount() - 1);
+        long[] items = in.readBits((world.getItems().size() + Long.SIZE - 1) / Long.SIZE);
+        if (items.length > 0 && Long.SIZE * items.length - Long.numberOfLeadingZeros(items[items.length - 1])
+                > world.getItems().size()) {
+            throw new IOException("the snapshot has items that are not in this world");
+        }
+        return new SessionState(room, items);
+    }
+
+    /**
+     * @param out The snapshot to write to.
+     * @throws IOException if the snapshot can not be written.
+     */
+    public void write(SnapshotWriter out) throws IOException
+    {
+        out.writeVarint(room);
+        out.writeBits(items);
+    }
+
+    /**
+     * @return The number of the room the player is in.
+     */
+    public int getRoom()
+    {
+        return room;
+    }
+
+    /**
+     * @return The IDs of the items the player carries, as bit set words.
+     */
+    public long[] getItems()
+    {
+        return items;
+    }
+}
@@ -0,0 +1,59 @@
+package com.company;
+
+/**
+ * Splits the rooms of a world into shards by room number: shard s owns the
+ * rooms from firstRoom(s) up to, but not including, firstRoom(s + 1).
+ *
+ * Ranges need no table and every shard can work out the owner of any room
+ * by itself. They also keep neighbours together when rooms are numbered
+ * along the map, as the rooms of a grid are numbered row by row: a shard
+ * is then a band of rows, and only moves across the edge of a band go to
+ * another shard.
+ *
+ * @author  Kwinn Danforth
+ * @version 1.0.01
+ */
+public class ShardMap
+{
+    private final int rooms;
+    private final int shards;
+
+    /**
+     * @param rooms One more than the highest room number.
+     * @param shards The number of shards, at least 1.
+     */
+    public ShardMap(int rooms, int shards)
+    {
+        if (shards < 1 || shards > Math.max(1, rooms)) {
+            throw new IllegalArgumentException("can not split " + rooms + " rooms into " + shards + " shards");
+        }
+        this.rooms = rooms;
+        this.shards = shards;
+    }
+
+    /**
+     * @param room The number of a room.
+     * @return The shard that owns the room.
+     */
+    public int shardOf(int room)
+    {
+        return (int) ((long) room * shards / rooms);
+    }
+
+    /**
+     * @param shard A shard, or the number of shards for the end of the last one.
+     * @return The first room the shard owns.
+     */
+    public int firstRoom(int shard)
+    {
+        return (int) (((long) shard * rooms + shards - 1) / shards);
+    }
+
+    /**
+     * @return The number of shards.
+     */
+    public int getShardCount()
+    {
+        return shards;
+    }
+}
@@ -0,0 +1,471 @@
+package com.company;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A server whose world is split into shards, each run by a worker of its
+ * own that only ever plays in the rooms it owns.
+ *
+ * Every shard has a World of its own, read from the data files as a
+ * slice: the rooms it owns, with their exits and teleports, and the rooms
+ * just outside that those lead to, which the shard's players only pass
+ * through on their way to the shard that owns them. Every slice also has
+ * the start room. So a shard only holds its part of the world, and the
+ * items in its rooms, the NPCs and everything else that changes in a room
+ * are only ever changed by the one shard that owns the room. Commands that
+ * look further than the next room, such as path and hint, only know the
+ * rooms of the player's shard.
+ *
+ * A session is run by the worker of the shard its player is in. When a
+ * command takes the player into a room of another shard, by an exit or by
+ * a transporter, the game stops there, even in the middle of a line or a
+ * macro, and the worker hands the session off: it writes the player's
+ * state (their room and items, as in a checkpoint), the seed their game
+ * goes on with, their macros and the commands that were not run yet into
+ * a HANDOFF snapshot and puts that message on the queue of the other
+ * worker. That worker makes a new game from it in its own world, shows
+ * the room, runs the rest of the line and goes on with the lines the
+ * player typed meanwhile.
+ * The new game records in the same journal and counts in the same metrics
+ * as the old one did. The workers share nothing but the messages, so the
+ * same messages could as well go between processes over sockets.
+ *
+ * Each worker is one thread, so the rooms of a shard are only changed by
+ * that thread. The lines of one session are handled one after the other,
+ * before and after a handoff, never at the same time.
+ *
+ * A line that fails with an exception is logged and the player is told;
+ * the session goes on, and is still handed off if the line moved the
+ * player before it failed. A session whose handoff can not be written or
+ * read is closed, and the player is told that too.
+ *
+ * @author  Kwinn Danforth
+ * @version 1.0.01
+ */
+public class ShardedServer implements AutoCloseable
+{
+    private static final Logger LOG = Logger.getLogger(ShardedServer.class.getName());
+    private static final int MESSAGE_SIZE = 4096;      // room for the state of a player with many items
+    private static final int MAX_MESSAGE_SIZE = 1 << 20;    // a message grows up to this for many long macros
+    private static final int MAX_MACROS = 1024;
+    private static final int MAX_MACRO_COMMANDS = 1024;
+
+    private final ShardMap map;
+    private final Shard[] shards;
+    private final ConcurrentHashMap<Long, Session> sessions;
+    private final AtomicLong nextSessionId;
+    private final LatencyHistogram handoffLatency;
+    private final StripedCounter handoffs;
+    private final long epoch;                           // handoffs are timed from here
+    private volatile Journal journal;
+    private volatile GameMetrics metrics;
+
+    /**
+     * Create a server for a world, with a worker for every shard, and read
+     * every shard's slice of the world from the data files.
+     * @param roomData The room file, such as RoomData.csv.
+     * @param worldMap The map file, such as WorldMap.csv.
+     * @param shardCount How many shards the rooms are split into.
+     * @throws IOException if the files can not be read or are malformed.
+     */
+    public ShardedServer(Path roomData, Path worldMap, int shardCount) throws IOException
+    {
+        map = new ShardMap(WorldBuilder.countRoomNumbers(roomData), shardCount);
+        shards = new Shard[shardCount];
+        for (int s = 0; s < shardCount; s++) {
+            WorldBuilder builder = new WorldBuilder();
+            builder.keepRooms(map.firstRoom(s), map.firstRoom(s + 1));
+            builder.readWorldMap(worldMap);
+            builder.readRoomData(roomData);
+            shards[s] = new Shard(s, new World(builder));
+        }
+        sessions = new ConcurrentHashMap<>();
+        nextSessionId = new AtomicLong();
+        handoffLatency = new LatencyHistogram();
+        handoffs = new StripedCounter();
+        epoch = System.nanoTime();
+    }
+
+    /**
+     * Open a new session on the shard of the start room; the player is
+     * welcomed on the given output.
+     * @param out Where the session shows its text, from whichever worker runs it.
+     * @return The new session.
+     */
+    public Session open(GameOutput out)
+    {
+        Shard shard = shards[map.shardOf(shards[0].world.getStartRoom().getNumber())];
+        Game game = new Game(shard.world, out);
+        game.setShard(map, shard.number);
+        Session session = new Session(nextSessionId.incrementAndGet(), out, game, shard);
+        session.journal = journal;
+        session.metrics = metrics;
+        game.setJournal(session.journal, session.getId());
+        game.setMetrics(session.metrics);
+        sessions.put(session.getId(), session);
+        session.submit(null);   // runs the welcome on its worker
+        return session;
+    }
+
+    /**
+     * Record what the players of sessions opened from now on do, on
+     * whichever shards they play.
+     * @param journal The journal to record in, or null to stop recording.
+     */
+    public void setJournal(Journal journal)
+    {
+        this.journal = journal;
+    }
+
+    /**
+     * Count what the players of sessions opened from now on do, on
+     * whichever shards they play.
+     * @param metrics The metrics to count in, or null to stop counting.
+     */
+    public void setMetrics(GameMetrics metrics)
+    {
+        this.metrics = metrics;
+    }
+
+    /**
+     * @param shard A shard.
+     * @return The shard's slice of the world. Its rooms must only be
+     *         changed by the shard's worker.
+     */
+    public World getWorld(int shard)
+    {
+        return shards[shard].world;
+    }
+
+    /**
+     * @return How the rooms are split into shards.
+     */
+    public ShardMap getShardMap()
+    {
+        return map;
+    }
+
+    /**
+     * @return The number of open sessions.
+     */
+    public int getSessionCount()
+    {
+        return sessions.size();
+    }
+
+    /**
+     * @return How many times a session went from one shard to another.
+     */
+    public long getHandoffCount()
+    {
+        return handoffs.sum();
+    }
+
+    /**
+     * @return How long handoffs took, from the moment the old worker sent
+     *         the session to the moment the new one took it on.
+     */
+    public LatencyHistogram.Snapshot getHandoffLatency()
+    {
+        return handoffLatency.snapshot();
+    }
+
+    /**
+     * Stop the workers, waiting a little for lines that are still running.
+     */
+    public void close()
+    {
+        for (Shard shard : shards) {
+            shard.worker.shutdown();
+        }
+        for (Shard shard : shards) {
+            try {
+                shard.worker.awaitTermination(5, TimeUnit.SECONDS);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * A shard's slice of the world and its worker: one thread and the queue of what it has to do.
+     */
+    private class Shard
+    {
+        private final int number;
+        private final World world;
+        private final ExecutorService worker;
+        private ByteBuffer message;             // handoffs are written here, one at a time
+
+        Shard(final int number, World world)
+        {
+            this.number = number;
+            this.world = world;
+            worker = Executors.newSingleThreadExecutor(new ThreadFactory() {
+                public Thread newThread(Runnable task)
+                {
+                    Thread thread = new Thread(task, "shard-" + number);
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+            message = ByteBuffer.allocate(MESSAGE_SIZE);
+        }
+
+        /**
+         * Send a session to another shard. Called by this shard's worker.
+         */
+        void handOff(final Session session, final Shard target) throws IOException
+        {
+            Game game = session.game;
+            game.flushMetrics();
+            long seed = game.getRandom().nextLong();
+            while (true) {
+                try {
+                    message.clear();
+                    writeHandoff(new SnapshotWriter(message, SnapshotWriter.HANDOFF), session, seed);
+                    break;
+                } catch (IOException ex) {
+                    if (message.capacity() >= MAX_MESSAGE_SIZE) {
+                        throw ex;
+                    }
+                    message = ByteBuffer.allocate(message.capacity() * 2);
+                }
+            }
+            final byte[] bytes = new byte[message.position()];
+            message.flip();
+            message.get(bytes);
+            session.game = null;                // this shard is done with the player
+            target.worker.execute(new Runnable() {
+                public void run()
+                {
+                    target.adopt(session, bytes);
+                }
+            });
+        }
+
+        /**
+         * Write everything about a session that goes with it to another shard:
+         * its id, the player's state, the seed of their game, their macros,
+         * the rest of the line that took them there and when the message was sent. A macro's commands are written as they
+         * are, as the text of each, since the macros they were made from may
+         * have changed since.
+         */
+        private void writeHandoff(SnapshotWriter out, Session session, long seed) throws IOException
+        {
+            out.writeVarint(session.getId());
+            session.game.getState().write(out);
+            out.writeVarint(seed >>> 32);
+            out.writeVarint(seed & 0xFFFFFFFFL);
+            Collection<Macro> macros = session.game.getMacros();
+            out.writeVarint(macros.size());
+            StringBuilder line = new StringBuilder();
+            for (Macro macro : macros) {
+                out.writeString(macro.getName());
+                out.writeString(macro.getText());
+                out.writeVarint(macro.size());
+                for (int i = 0; i < macro.size(); i++) {
+                    line.setLength(0);
+                    macro.getCommand(i).appendTo(line);
+                    out.writeString(line.toString());
+                }
+            }
+            out.writeString(session.unfinished);
+            out.writeVarint(System.nanoTime() - epoch);
+        }
+
+        /**
+         * Take on a session another shard sent, and go on running it. Called by this shard's worker.
+         */
+        void adopt(Session session, byte[] bytes)
+        {
+            try {
+                SnapshotReader in = new SnapshotReader(ByteBuffer.wrap(bytes), SnapshotWriter.HANDOFF);
+                if (in.readVarint() != session.getId()) {
+                    throw new IOException("the handoff is for another session");
+                }
+                SessionState state = SessionState.read(in, world);
+                long seed = in.readVarint() << 32 | in.readVarint();
+                Game game = new Game(world, session.out);
+                game.restore(state);
+                game.setSeed(seed);
+                for (int m = in.readInt(MAX_MACROS); m > 0; m--) {
+                    String name = in.readString(MAX_MESSAGE_SIZE);
+                    String text = in.readString(MAX_MESSAGE_SIZE);
+                    Command[] commands = new Command[in.readInt(MAX_MACRO_COMMANDS)];
+                    for (int i = 0; i < commands.length; i++) {
+                        commands[i] = Parser.parse(in.readString(MAX_MESSAGE_SIZE));
+                    }
+                    game.addMacro(new Macro(name, text, commands));
+                }
+                session.unfinished = in.readString(MAX_MESSAGE_SIZE);
+                long sent = in.readVarint();
+                handoffLatency.record(System.nanoTime() - epoch - sent);
+                handoffs.increment();
+                game.setJournal(session.journal, session.getId());
+                game.setMetrics(session.metrics);
+                game.setShard(map, number);
+                game.showRoom();        // the old shard left that to the shard that owns the room
+                game.flush();
+                session.game = game;
+                session.shard = this;
+            } catch (IOException | RuntimeException ex) {
+                LOG.log(Level.SEVERE, "shard " + number + " could not take on session " + session.getId(), ex);
+                session.lose();
+                session.scheduled.set(false);
+                return;
+            }
+            session.run();
+        }
+    }
+
+    /**
+     * One player's connection to the server.
+     */
+    public class Session implements Runnable
+    {
+        private final long id;
+        private final GameOutput out;
+        private final Queue<String> pending;
+        private final AtomicBoolean scheduled;
+        private boolean started;
+        private Game game;                  // only used by the worker that runs the session
+        private volatile Shard shard;
+        private Journal journal;            // where the session records, on every shard
+        private GameMetrics metrics;        // where the session counts, on every shard
+        private String unfinished = "";     // the rest of a line that left a shard, run first on the next one
+
+        private Session(long id, GameOutput out, Game game, Shard shard)
+        {
+            this.id = id;
+            this.out = out;
+            this.game = game;
+            this.shard = shard;
+            pending = new ConcurrentLinkedQueue<>();
+            scheduled = new AtomicBoolean();
+        }
+
+        /**
+         * @return The id of this session.
+         */
+        public long getId()
+        {
+            return id;
+        }
+
+        /**
+         * @return The shard that runs the session, or ran it last if it is being handed off.
+         */
+        public int getShard()
+        {
+            return shard.number;
+        }
+
+        /**
+         * Hand a line typed by the player to the session. It is run later by
+         * the worker of the shard the player is in.
+         * @param inputLine The line that was typed, or null to only wake the session.
+         */
+        public void submit(String inputLine)
+        {
+            if (inputLine != null) {
+                pending.add(inputLine);
+            }
+            if (scheduled.compareAndSet(false, true)) {
+                shard.worker.execute(this);
+            }
+        }
+
+        /**
+         * Close the session without waiting for the player to quit.
+         */
+        public void close()
+        {
+            sessions.remove(id);
+        }
+
+        /**
+         * Run the pending lines of this session, until they run out or the
+         * player leaves the shard. Called by the workers.
+         */
+        public void run()
+        {
+            boolean handedOff = false;
+            try {
+                if (!started) {
+                    started = true;
+                    game.start();
+                }
+                String inputLine = unfinished.isEmpty() ? pending.poll() : unfinished;
+                while (inputLine != null) {
+                    unfinished = "";
+                    if (handle(inputLine)) {
+                        pending.clear();
+                        close();
+                        break;
+                    }
+                    if (game.hasLeftShard()) {
+                        unfinished = game.takeUnfinished();
+                        shard.handOff(this, shards[map.shardOf(game.getCurrentRoom().getNumber())]);
+                        handedOff = true;   // still scheduled; the new shard goes on
+                        return;
+                    }
+                    inputLine = pending.poll();
+                }
+            } catch (IOException | RuntimeException ex) {
+                // the state did not fit in the largest message, or the game could not even start
+                LOG.log(Level.SEVERE, "shard " + shard.number + " lost session " + id, ex);
+                lose();
+            } finally {
+                if (!handedOff) {
+                    scheduled.set(false);
+                }
+            }
+            // a line may have arrived after the queue was found empty
+            if (!pending.isEmpty() && scheduled.compareAndSet(false, true)) {
+                shard.worker.execute(this);
+            }
+        }
+
+        /**
+         * Run a line. When a command fails, the player is told and the
+         * session goes on, on the shard of the room the player was moved
+         * to, if it was moved before the failure.
+         * @return true if the player quit.
+         */
+        private boolean handle(String inputLine)
+        {
+            try {
+                return game.handleLine(inputLine);
+            } catch (RuntimeException ex) {
+                LOG.log(Level.WARNING, "session " + id + " failed on the line '" + inputLine + "'", ex);
+                game.reportFailure();
+                game.takeUnfinished();      // the rest of a failed line is not run
+                return false;
+            }
+        }
+
+        /**
+         * Close a session whose game was lost, and tell the player.
+         */
+        private void lose()
+        {
+            close();
+            out.write("Sorry, your game was lost on its way through the castle. Good bye.\n");
+        }
+    }
+}
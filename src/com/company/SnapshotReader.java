@@ -0,0 +1,167 @@
+package com.company;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Reads a snapshot written by a SnapshotWriter.
+ *
+ * The reader checks the header first, so a file that is not a snapshot, is
+ * of another kind or of a newer version is refused before any game state
+ * is touched. A snapshot can be read from a channel, which is read one
+ * buffer at a time, or straight from bytes that are already in memory.
+ *
+ * @author  Kwinn Danforth
+ * @version 1.0.01
+ */
+public class SnapshotReader
+{
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final ReadableByteChannel channel;   // null when reading from memory
+    private final ByteBuffer buffer;
+
+    /**
+     * Start reading a snapshot from a channel.
+     * @param channel Where the snapshot comes from.
+     * @param kind The kind of snapshot that is expected.
+     * @throws IOException if the channel can not be read or holds no such snapshot.
+     */
+    public SnapshotReader(ReadableByteChannel channel, byte kind) throws IOException
+    {
+        this.channel = channel;
+        buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        buffer.flip();
+        readHeader(kind);
+    }
+
+    /**
+     * Start reading a snapshot from bytes in memory.
+     * @param bytes The snapshot, from its position to its limit.
+     * @param kind The kind of snapshot that is expected.
+     * @throws IOException if the bytes are not such a snapshot.
+     */
+    public SnapshotReader(ByteBuffer bytes, byte kind) throws IOException
+    {
+        channel = null;
+        buffer = bytes;
+        readHeader(kind);
+    }
+
+    /**
+     * @return A number that was written with writeVarint.
+     * @throws IOException if the snapshot ends or the number is malformed.
+     */
+    public long readVarint() throws IOException
+    {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = readByte();
+            value |= (long) (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+        throw new IOException("the snapshot has a number that is too long");
+    }
+
+    /**
+     * @param limit The largest number that makes sense here.
+     * @return A number that was written with writeVarint, from 0 to the limit.
+     * @throws IOException if the snapshot ends or the number is out of range.
+     */
+    public int readInt(int limit) throws IOException
+    {
+        long value = readVarint();
+        if (value > limit) {
+            throw new IOException("the snapshot has " + value + " where at most " + limit + " fits");
+        }
+        return (int) value;
+    }
+
+    /**
+     * @param limit The most words that make sense here, so a damaged count
+     *              can not make the reader allocate more than the snapshot holds.
+     * @return The words of a bit set that was written with writeBits.
+     * @throws IOException if the snapshot ends or has more words than the limit.
+     */
+    public long[] readBits(int limit) throws IOException
+    {
+        int count = readInt(limit);
+        if (channel == null && count > buffer.remaining() / 8) {
+            throw new IOException("the snapshot ends too early");
+        }
+        long[] words = new long[count];
+        for (int i = 0; i < words.length; i++) {
+            fill(8);
+            words[i] = buffer.getLong();
+        }
+        return words;
+    }
+
+    /**
+     * @param limit The most bytes that make sense here.
+     * @return A text that was written with writeString.
+     * @throws IOException if the snapshot ends or the text is longer than the limit.
+     */
+    public String readString(int limit) throws IOException
+    {
+        int length = readInt(limit);
+        if (channel == null && length > buffer.remaining()) {
+            throw new IOException("the snapshot ends too early");
+        }
+        byte[] bytes = new byte[length];
+        for (int i = 0; i < length; ) {
+            fill(1);
+            int part = Math.min(buffer.remaining(), length - i);
+            buffer.get(bytes, i, part);
+            i += part;
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private byte readByte() throws IOException
+    {
+        fill(1);
+        return buffer.get();
+    }
+
+    private void readHeader(byte kind) throws IOException
+    {
+        fill(6);
+        if (buffer.getInt() != SnapshotWriter.MAGIC) {
+            throw new IOException("this is not a snapshot of the game");
+        }
+        byte version = buffer.get();
+        if (version != SnapshotWriter.VERSION) {
+            throw new IOException("snapshot version " + version + " can not be read, only version "
+                    + SnapshotWriter.VERSION);
+        }
+        if (buffer.get() != kind) {
+            throw new IOException(kind == SnapshotWriter.SAVED_GAME ? "this is not a saved game"
+                    : kind == SnapshotWriter.CHECKPOINT ? "this is not a checkpoint" : "this is not a handoff");
+        }
+    }
+
+    /**
+     * Make sure the buffer holds at least the given number of bytes.
+     */
+    private void fill(int needed) throws IOException
+    {
+        if (buffer.remaining() >= needed) {
+            return;
+        }
+        if (channel != null) {
+            buffer.compact();
+            while (buffer.position() < needed && channel.read(buffer) >= 0) {
+                // keep reading until there is enough or the channel ends
+            }
+            buffer.flip();
+        }
+        if (buffer.remaining() < needed) {
+            throw new IOException("the snapshot ends too early");
+        }
+    }
+}
@@ -0,0 +1,142 @@
+package com.company;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Writes a snapshot of game state in the game's compact binary format.
+ *
+ * A snapshot starts with a header: the magic bytes "HGWS", the format
+ * version and the kind of snapshot (a player's saved game or a server's
+ * checkpoint). Everything after it is numbers: room numbers, item IDs and
+ * counts are written as varints, seven bits to a byte with the high bit
+ * set on every byte but the last, so the small numbers the game mostly
+ * has take one or two bytes. The bytes are collected in one buffer and
+ * written to the channel whenever it fills. A small snapshot, such as a
+ * session handed from one shard to another, can also be written into a
+ * buffer of the caller's, without a channel.
+ *
+ * @author  Kwinn Danforth
+ * @version 1.0.01
+ */
+public class SnapshotWriter
+{
+    /** The first bytes of every snapshot: "HGWS". */
+    public static final int MAGIC = 0x48475753;
+    /** The version of the format that is written. */
+    public static final byte VERSION = 1;
+    /** A snapshot of one player's game, written by the save command. */
+    public static final byte SAVED_GAME = 1;
+    /** A snapshot of all the sessions of a server. */
+    public static final byte CHECKPOINT = 2;
+    /** One session, handed from one shard of a ShardedServer to another. */
+    public static final byte HANDOFF = 3;
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final WritableByteChannel channel;
+    private final ByteBuffer buffer;
+
+    /**
+     * Start a snapshot by writing its header.
+     * @param channel Where the snapshot goes.
+     * @param kind SAVED_GAME or CHECKPOINT.
+     * @throws IOException if the channel can not be written.
+     */
+    public SnapshotWriter(WritableByteChannel channel, byte kind) throws IOException
+    {
+        this.channel = channel;
+        buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        buffer.putInt(MAGIC).put(VERSION).put(kind);
+    }
+
+    /**
+     * Start a snapshot in a buffer, by writing its header there.
+     * @param buffer Where the snapshot goes, from its position on.
+     * @param kind The kind of snapshot, such as HANDOFF.
+     */
+    public SnapshotWriter(ByteBuffer buffer, byte kind)
+    {
+        channel = null;
+        this.buffer = buffer;
+        buffer.putInt(MAGIC).put(VERSION).put(kind);
+    }
+
+    /**
+     * @param value A number that is not negative.
+     * @throws IOException if the channel can not be written.
+     */
+    public void writeVarint(long value) throws IOException
+    {
+        if (buffer.remaining() < 10) {
+            drain();
+        }
+        while ((value & ~0x7FL) != 0) {
+            buffer.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte) value);
+    }
+
+    /**
+     * Write a set of small numbers, such as item IDs, as the 64-bit words
+     * of a bit set: the number of words, then the words.
+     * @param words The words, as BitSet.toLongArray gives them.
+     * @throws IOException if the channel can not be written.
+     */
+    public void writeBits(long[] words) throws IOException
+    {
+        writeVarint(words.length);
+        for (long word : words) {
+            if (buffer.remaining() < 8) {
+                drain();
+            }
+            buffer.putLong(word);
+        }
+    }
+
+    /**
+     * Write a text: the number of its bytes in UTF-8, then the bytes.
+     * @param text The text.
+     * @throws IOException if the channel can not be written.
+     */
+    public void writeString(String text) throws IOException
+    {
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        writeVarint(bytes.length);
+        for (int i = 0; i < bytes.length; ) {
+            if (!buffer.hasRemaining()) {
+                drain();
+            }
+            int length = Math.min(buffer.remaining(), bytes.length - i);
+            buffer.put(bytes, i, length);
+            i += length;
+        }
+    }
+
+    /**
+     * Write everything that is still in the buffer. A snapshot written into
+     * a buffer of the caller's stays there.
+     * @throws IOException if the channel can not be written.
+     */
+    public void flush() throws IOException
+    {
+        if (channel != null) {
+            drain();
+        }
+    }
+
+    private void drain() throws IOException
+    {
+        if (channel == null) {
+            throw new IOException("the snapshot does not fit in its buffer");
+        }
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+}
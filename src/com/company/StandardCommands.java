@@ -0,0 +1,343 @@
+package com.company;
+
+/**
+ * The handlers of the game's own commands.
+ *
+ * Each command is a small class of its own; what they share, such as moving
+ * the player or handing over an item, is done by the Game they are given,
+ * so that it is recorded in the journal and shown the same way whichever
+ * command did it.
+ *
+ * @author  Kwinn Danforth
+ * @version 1.0.01
+ */
+public class StandardCommands
+{
+    /**
+     * Register the handlers of all standard commands.
+     * @param registry The registry to add them to.
+     */
+    public static void registerAll(CommandRegistry registry)
+    {
+        registry.register(new Unknown());
+        registry.register(new Help());
+        registry.register(new Go());
+        registry.register(new Look());
+        registry.register(new Pickup());
+        registry.register(new Drop());
+        registry.register(new ShowInventory());
+        registry.register(new Save());
+        registry.register(new Load());
+        registry.register(new ShowPath());
+        registry.register(new Hint());
+        registry.register(new DefineMacro());
+        registry.register(new Quit());
+    }
+
+    /**
+     * A word the game does not know.
+     */
+    public static class Unknown implements CommandHandler
+    {
+        public CommandWord getCommandWord()
+        {
+            return CommandWord.UNKNOWN;
+        }
+
+        public boolean execute(Game game, Command command)
+        {
+            game.println("I don't know what you mean...");
+            return false;
+        }
+    }
+
+    /**
+     * Print out some help information.
+     * Here we print some stupid, cryptic message and a list of the
+     * command words.
+     */
+    public static class Help implements CommandHandler
+    {
+        public CommandWord getCommandWord()
+        {
+            return CommandWord.HELP;
+        }
+
+        public boolean execute(Game game, Command command)
+        {
+            game.println("You are lost. You have no items. You wander");
+            game.println("around at Hogwarts and find Items.(there are " + game.getWorld().getItems().size() + " total!)");
+            game.println("");
+            game.println("Your command words are:");
+            game.print(game.getCommands().showAll());
+            return false;
+        }
+    }
+
+    /**
+     * Try to go in one direction. If there is an exit, enter the new
+     * room, otherwise print an error message.
+     */
+    public static class Go implements CommandHandler
+    {
+        public CommandWord getCommandWord()
+        {
+            return CommandWord.GO;
+        }
+
+        public boolean execute(Game game, Command command)
+        {
+            if (!command.hasSecondWord()) {
+                // if there is no second word, we don't know where to go...
+                game.println("Go where?");
+                return false;
+            }
+
+            // Try to leave current room.
+            Room nextRoom = game.getCurrentRoom().getExit(command.getSecondWord(), game.getRandom());
+
+            if (nextRoom == null) {
+                game.println("There is no door!");
+            } else {
+                game.moveTo(nextRoom);
+                game.showRoom();
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Look around the room again.
+     */
+    public static class Look implements CommandHandler
+    {
+        public CommandWord getCommandWord()
+        {
+            return CommandWord.LOOK;
+        }
+
+        public boolean execute(Game game, Command command)
+        {
+            game.showRoom();
+            return false;
+        }
+    }
+
+    /**
+     * Take the item in the room, unless the player already has one like it.
+     */
+    public static class Pickup implements CommandHandler
+    {
+        public CommandWord getCommandWord()
+        {
+            return CommandWord.PICKUP;
+        }
+
+        public boolean execute(Game game, Command command)
+        {
+            Room room = game.getCurrentRoom();
+            String item = room.getItem();
+            if (item == Room.NO_ITEM) {
+                game.println("There is nothing to pick up here.");
+            } else if (game.hasItem(item)) {
+                game.println("You already have " + item + ".");
+            } else if (room.takeItem(item)) {
+                game.addItem(item);
+            } else {
+                // another player took it, or swapped it, since the player looked
+                game.println("There is nothing to pick up here.");
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Put the item that was named down in the room, if the player has it
+     * and there is no item in the room yet.
+     */
+    public static class Drop implements CommandHandler
+    {
+        public CommandWord getCommandWord()
+        {
+            return CommandWord.DROP;
+        }
+
+        public boolean execute(Game game, Command command)
+        {
+            if (!command.hasSecondWord()) {
+                game.println("Drop what?");
+                return false;
+            }
+            int id = game.getWorld().getItems().find(command.getRestOfLine());
+            if (!game.getInventory().contains(id)) {
+                game.println("You do not have " + command.getRestOfLine() + ".");
+                return false;
+            }
+            String item = game.getWorld().getItems().getName(id);
+            if (game.getCurrentRoom().putItem(item)) {
+                game.removeItem(id);
+                game.println("You dropped " + item + ".");
+            } else {
+                game.println("There is no space for " + item + " here.");
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Print out the items the player has.
+     */
+    public static class ShowInventory implements CommandHandler
+    {
+        public CommandWord getCommandWord()
+        {
+            return CommandWord.INVENTORY;
+        }
+
+        public boolean execute(Game game, Command command)
+        {
+            Inventory inventory = game.getInventory();
+            if (inventory.size() == 0) {
+                game.println("You have no items.");
+            } else {
+                game.println("You have " + inventory.size() + " of " + game.getWorld().getItems().size() + " items:");
+                game.printItems();
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Save the game to its save file.
+     */
+    public static class Save implements CommandHandler
+    {
+        public CommandWord getCommandWord()
+        {
+            return CommandWord.SAVE;
+        }
+
+        public boolean execute(Game game, Command command)
+        {
+            game.save();
+            return false;
+        }
+    }
+
+    /**
+     * Load the game from its save file.
+     */
+    public static class Load implements CommandHandler
+    {
+        public CommandWord getCommandWord()
+        {
+            return CommandWord.LOAD;
+        }
+
+        public boolean execute(Game game, Command command)
+        {
+            game.load();
+            return false;
+        }
+    }
+
+    /**
+     * Show the way to the room that was named.
+     */
+    public static class ShowPath implements CommandHandler
+    {
+        public CommandWord getCommandWord()
+        {
+            return CommandWord.PATH;
+        }
+
+        public boolean execute(Game game, Command command)
+        {
+            if (!command.hasSecondWord()) {
+                game.println("Path to where?");
+                return false;
+            }
+            World world = game.getWorld();
+            Room target = world.findRoom(command.getRestOfLine());
+            if (target == null) {
+                game.println("There is no room called " + command.getRestOfLine() + ".");
+                return false;
+            }
+            RouteIndex.Route route = world.getRoutes().route(game.getCurrentRoom().getNumber(), target.getNumber());
+            if (route == null) {
+                game.println("You can not get to " + target.getName() + " from here.");
+            } else {
+                game.println("The way to " + target.getName() + ": " + route);
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Show the way to the nearest item.
+     */
+    public static class Hint implements CommandHandler
+    {
+        public CommandWord getCommandWord()
+        {
+            return CommandWord.HINT;
+        }
+
+        public boolean execute(Game game, Command command)
+        {
+            RouteIndex.Route route = game.getWorld().getRoutes().routeToNearestItem(game.getCurrentRoom().getNumber());
+            if (route == null) {
+                game.println("There are no items left that you can get to.");
+            } else if (route.length() == 0) {
+                game.println("There is an item right here!");
+            } else {
+                game.println("The nearest item is this way: " + route);
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Define a macro, show one, or show them all: "macro patrol go east; go
+     * north; pickup", "macro patrol" or "macro".
+     */
+    public static class DefineMacro implements CommandHandler
+    {
+        public CommandWord getCommandWord()
+        {
+            return CommandWord.MACRO;
+        }
+
+        public boolean execute(Game game, Command command)
+        {
+            if (command.getWordCount() < 2) {
+                game.showMacros(command.getSecondWord());
+                return false;
+            }
+            String rest = command.getRestOfLine();
+            game.defineMacro(command.getSecondWord(), rest.substring(command.getSecondWord().length() + 1));
+            return false;
+        }
+    }
+
+    /**
+     * "Quit" was entered. Check the rest of the command to see
+     * whether we really quit the game.
+     */
+    public static class Quit implements CommandHandler
+    {
+        public CommandWord getCommandWord()
+        {
+            return CommandWord.QUIT;
+        }
+
+        public boolean execute(Game game, Command command)
+        {
+            if (command.hasSecondWord()) {
+                game.println("Quit what?");
+                return false;
+            }
+            return true;  // signal that we want to quit
+        }
+    }
+}
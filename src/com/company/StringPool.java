@@ -0,0 +1,103 @@
+package com.company;
+
+/**
+ * Makes texts that occur many times share one String.
+ *
+ * Worlds repeat the same occupants, such as "no one", and generated worlds
+ * the same descriptions over and over; read one by one, each room would
+ * hold its own copy of them. The pool is a table of Strings indexed by
+ * their hash. A text is looked up straight from the characters it is read
+ * from, so a text that is in the table costs no String at all, and one that
+ * is not takes the place of whatever was in its slot. The table therefore
+ * never grows: texts that repeat stay in it and are shared, texts that
+ * occur once pass through and are forgotten, which also makes the pool
+ * safe to use for rooms that are read and dropped again by a RoomStore.
+ *
+ * Any number of threads may use a pool at once. The slots are plain array
+ * elements: a String can be published that way, and a thread that does not
+ * see another's String yet only makes a copy, as it would without the pool.
+ *
+ * The pool keeps its texts as Strings, two bytes a character on a Java 7
+ * or 8 runtime, although most of them are Latin-1 and would fit in one.
+ * Rooms hand their texts out as Strings, and the room description is put
+ * together from them without allocating; a text kept as bytes would have
+ * to become a String again every time it is shown. So the pool saves
+ * memory only by sharing, and halving the characters is left to the
+ * runtime (from Java 9 on, Strings of Latin-1 characters take one byte
+ * each by themselves).
+ *
+ * @author  Kwinn Danforth
+ * @version 1.0.01
+ */
+public class StringPool
+{
+    private final String[] slots;
+    private final int mask;
+
+    /**
+     * Create an empty pool.
+     * @param size About how many different texts it keeps; rounded up to a power of two.
+     */
+    public StringPool(int size)
+    {
+        int capacity = Integer.highestOneBit(Math.max(1, size - 1)) << 1;
+        slots = new String[capacity];
+        mask = capacity - 1;
+    }
+
+    /**
+     * @param text A text.
+     * @return The pool's String with the same characters, which is text itself
+     *         if the pool did not have one.
+     */
+    public String intern(String text)
+    {
+        int slot = slot(text.hashCode());
+        String pooled = slots[slot];
+        if (pooled != null && pooled.equals(text)) {
+            return pooled;
+        }
+        slots[slot] = text;
+        return text;
+    }
+
+    /**
+     * @param chars Where the text is.
+     * @param start The index of its first character.
+     * @param length The number of characters.
+     * @return The pool's String with these characters; a new String if the pool did not have one.
+     */
+    public String intern(char[] chars, int start, int length)
+    {
+        int hash = 0;               // the hash String.hashCode gives the same text
+        for (int i = start; i < start + length; i++) {
+            hash = 31 * hash + chars[i];
+        }
+        int slot = slot(hash);
+        String pooled = slots[slot];
+        if (pooled != null && matches(pooled, chars, start, length)) {
+            return pooled;
+        }
+        String text = new String(chars, start, length);
+        slots[slot] = text;
+        return text;
+    }
+
+    private int slot(int hash)
+    {
+        return (hash ^ (hash >>> 16)) & mask;
+    }
+
+    private static boolean matches(String pooled, char[] chars, int start, int length)
+    {
+        if (pooled.length() != length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (pooled.charAt(i) != chars[start + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,72 @@
+package com.company;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A counter that many threads can add to at once without slowing each
+ * other down.
+ *
+ * A single AtomicLong that every thread increments is one cache line that
+ * all cores fight over. This counter keeps a number of cells instead, each
+ * on a cache line of its own, and a thread always adds to the cell its id
+ * picks; reading the counter adds up the cells. Adding is one uncontended
+ * atomic add, reading takes time in proportion to the number of cells,
+ * which is fine for numbers that are written all the time and read now and
+ * then.
+ *
+ * @author  Kwinn Danforth
+ * @version 1.0.01
+ */
+public class StripedCounter
+{
+    /** The number of cells: a power of two, about the number of processors. */
+    static final int STRIPES = stripes();
+
+    private static final int PADDING = 8;      // longs in a cache line
+
+    private final AtomicLongArray cells = new AtomicLongArray(STRIPES * PADDING);
+
+    /**
+     * Add one.
+     */
+    public void increment()
+    {
+        cells.getAndIncrement(stripe() * PADDING);
+    }
+
+    /**
+     * @param amount What to add.
+     */
+    public void add(long amount)
+    {
+        cells.getAndAdd(stripe() * PADDING, amount);
+    }
+
+    /**
+     * @return The sum of everything added. Adds that happen while the
+     * cells are added up may or may not be counted.
+     */
+    public long sum()
+    {
+        long sum = 0;
+        for (int s = 0; s < STRIPES; s++) {
+            sum += cells.get(s * PADDING);
+        }
+        return sum;
+    }
+
+    /**
+     * @return The stripe of the current thread, between 0 and STRIPES - 1.
+     */
+    static int stripe()
+    {
+        long id = Thread.currentThread().getId() * 0x9E3779B97F4A7C15L;
+        return (int) (id >>> 40) & (STRIPES - 1);
+    }
+
+    private static int stripes()
+    {
+        int processors = Runtime.getRuntime().availableProcessors();
+        return Math.min(64, Integer.highestOneBit(Math.max(1, processors - 1)) * 2);
+    }
+}
@@ -0,0 +1,25 @@
+package com.company;
+
+import java.util.Random;
+
+/**
+ * Chooses where a TransporterRoom sends the player.
+ *
+ * A sampler only knows how many destinations there are and how likely each
+ * one is; the randomness comes from the caller. That way every game session
+ * can draw from its own Random (or the thread's ThreadLocalRandom), so
+ * players transporting at the same time never wait on each other, and a
+ * session with a seeded Random always gets the same destinations.
+ *
+ * @author  Kwinn Danforth
+ * @version 1.0.01
+ */
+public interface TeleportSampler
+{
+    /**
+     * Choose a destination.
+     * @param random Where the randomness comes from.
+     * @return The index of the destination, from 0 to one less than the number of destinations.
+     */
+    int sample(Random random);
+}
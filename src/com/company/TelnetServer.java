@@ -0,0 +1,577 @@
+package com.company;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Lets players play on a GameServer over the network, with telnet or any
+ * other program that sends lines of text over TCP.
+ *
+ * The connections are served by a few threads, each with a Selector of its
+ * own that waits for all of its connections at once, so one thread can
+ * serve thousands of players. The bytes a player sends are split into
+ * lines, and each line is handed to the player's session, which runs it on
+ * one of the GameServer's workers. What the game shows comes back to the
+ * connection as its GameOutput: the text is encoded into a buffer of the
+ * connection, with the line breaks telnet expects, and written to the
+ * network by the connection's thread. Reading and writing go through one
+ * direct buffer per thread, which all its connections share.
+ *
+ * A player who sends more lines than the rate limit allows has the extra
+ * lines dropped and is told so, a player who sends nothing for the idle
+ * timeout is disconnected, and so is one who does not read what the game
+ * shows until a lot of it is waiting. Telnet's option negotiation is
+ * skipped over, not answered.
+ *
+ *     java com.company.TelnetServer [port] [threads]
+ *
+ * @author  Kwinn Danforth
+ * @version 1.0.01
+ */
+public class TelnetServer implements AutoCloseable
+{
+    private static final int BUFFER_SIZE = 64 * 1024;   // of the direct buffers of each thread
+    private static final int MAX_LINE = 1024;           // longer lines are ignored
+    private static final int MAX_PENDING = 256 * 1024;  // bytes a player may fall behind by
+    private static final long SWEEP_MILLIS = 250;       // how often idle connections are looked for
+
+    // telnet's interpret-as-command bytes
+    private static final int IAC = 255;
+    private static final int SB = 250;
+    private static final int SE = 240;
+    private static final int WILL = 251;
+    private static final int DONT = 254;
+
+    private final GameServer server;
+    private final Loop[] loops;
+    private final AtomicInteger connections;
+    private final AtomicInteger nextLoop;
+    private volatile long idleMillis = 10 * 60 * 1000;
+    private volatile double linesPerSecond = 20;
+    private volatile int burst = 40;
+    private ServerSocketChannel acceptor;
+
+    /**
+     * Create a front-end for a game server. It does not listen until it is started.
+     * @param server The server the sessions are played on.
+     * @param threads The number of threads that serve the connections.
+     */
+    public TelnetServer(GameServer server, int threads)
+    {
+        this.server = server;
+        loops = new Loop[Math.max(1, threads)];
+        connections = new AtomicInteger();
+        nextLoop = new AtomicInteger();
+    }
+
+    /**
+     * Disconnect players who have sent nothing for a while.
+     * @param millis How long a player may send nothing.
+     */
+    public void setIdleTimeout(long millis)
+    {
+        idleMillis = millis;
+    }
+
+    /**
+     * Limit how fast each player may send lines.
+     * @param linesPerSecond How many lines a second a player may send in the long run.
+     * @param burst How many lines a player may send at once after being quiet.
+     */
+    public void setRateLimit(double linesPerSecond, int burst)
+    {
+        this.linesPerSecond = linesPerSecond;
+        this.burst = Math.max(1, burst);
+    }
+
+    /**
+     * Start listening for players.
+     * @param address Where to listen; port 0 picks a free port.
+     * @return The address the server listens on.
+     * @throws IOException if the address can not be listened on.
+     */
+    public synchronized InetSocketAddress start(InetSocketAddress address) throws IOException
+    {
+        if (acceptor != null) {
+            throw new IllegalStateException("the server was started already");
+        }
+        for (int i = 0; i < loops.length; i++) {
+            loops[i] = new Loop(i);
+        }
+        acceptor = ServerSocketChannel.open();
+        acceptor.setOption(StandardSocketOptions.SO_REUSEADDR, true);
+        acceptor.bind(address, 4096);
+        acceptor.configureBlocking(false);
+        acceptor.register(loops[0].selector, SelectionKey.OP_ACCEPT);
+        for (Loop loop : loops) {
+            loop.start();
+        }
+        return (InetSocketAddress) acceptor.getLocalAddress();
+    }
+
+    /**
+     * @return The number of players connected.
+     */
+    public int getConnectionCount()
+    {
+        return connections.get();
+    }
+
+    /**
+     * Stop listening and disconnect every player.
+     * @throws IOException if the server can not stop listening.
+     */
+    public void close() throws IOException
+    {
+        synchronized (this) {
+            if (acceptor == null) {
+                return;
+            }
+            acceptor.close();
+        }
+        for (Loop loop : loops) {
+            loop.running = false;
+            loop.selector.wakeup();
+        }
+        for (Loop loop : loops) {
+            try {
+                loop.join();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException
+    {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : 4000;
+        int threads = args.length > 1 ? Integer.parseInt(args[1]) : 1;
+        World world = new World();
+        NpcSimulation.fromOccupants(world, System.nanoTime()).start(3000);
+        int processors = Runtime.getRuntime().availableProcessors();
+        GameServer server = new GameServer(world, processors, Integer.getInteger("hogwarts.maxSessions", 20000));
+        TelnetServer telnet = new TelnetServer(server, threads);
+        telnet.setIdleTimeout(Long.getLong("hogwarts.idleSeconds", 600) * 1000);
+        telnet.setRateLimit(Integer.getInteger("hogwarts.linesPerSecond", 20),
+                Integer.getInteger("hogwarts.burst", 40));
+        InetSocketAddress address = telnet.start(new InetSocketAddress(port));
+        System.out.println("Listening on port " + address.getPort());
+        for (Loop loop : telnet.loops) {
+            loop.join();
+        }
+    }
+
+    /**
+     * A thread with a selector, serving some of the connections.
+     */
+    private class Loop extends Thread
+    {
+        private final Selector selector;
+        private final ByteBuffer readBuffer;
+        private final ByteBuffer writeBuffer;
+        private final Queue<SocketChannel> accepted;
+        private final Queue<Connection> flushes;       // connections with output to write
+        private final AtomicBoolean awake;              // the selector was woken up and has not run yet
+        private volatile boolean running;
+
+        Loop(int number) throws IOException
+        {
+            super("telnet-" + number);
+            selector = Selector.open();
+            readBuffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+            writeBuffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+            accepted = new ConcurrentLinkedQueue<>();
+            flushes = new ConcurrentLinkedQueue<>();
+            awake = new AtomicBoolean();
+            running = true;
+            setDaemon(true);
+        }
+
+        public void run()
+        {
+            long nextSweep = System.currentTimeMillis() + SWEEP_MILLIS;
+            try {
+                while (running) {
+                    selector.select(SWEEP_MILLIS);
+                    awake.set(false);
+                    SocketChannel channel;
+                    while ((channel = accepted.poll()) != null) {
+                        open(channel);
+                    }
+                    Connection connection;
+                    while ((connection = flushes.poll()) != null) {
+                        connection.flush();
+                    }
+                    for (SelectionKey key : selector.selectedKeys()) {
+                        handle(key);
+                    }
+                    selector.selectedKeys().clear();
+                    long now = System.currentTimeMillis();
+                    if (now >= nextSweep) {
+                        sweep(now);
+                        nextSweep = now + SWEEP_MILLIS;
+                    }
+                }
+            } catch (IOException | ClosedSelectorException ex) {
+                // the selector broke; the connections go with it
+            }
+            for (SelectionKey key : selector.keys()) {
+                if (key.attachment() instanceof Connection) {
+                    ((Connection) key.attachment()).close();
+                }
+            }
+            try {
+                selector.close();
+            } catch (IOException ex) {
+                // it is closed anyway
+            }
+        }
+
+        /**
+         * Have the thread run again soon, for example to write new output.
+         */
+        void wake()
+        {
+            if (awake.compareAndSet(false, true)) {
+                selector.wakeup();
+            }
+        }
+
+        private void handle(SelectionKey key) throws IOException
+        {
+            if (!key.isValid()) {
+                return;
+            }
+            if (key.isAcceptable()) {
+                accept();
+                return;
+            }
+            Connection connection = (Connection) key.attachment();
+            if (key.isReadable()) {
+                connection.read();
+            }
+            if (key.isValid() && key.isWritable()) {
+                connection.flush();
+            }
+        }
+
+        private void accept() throws IOException
+        {
+            SocketChannel channel;
+            while ((channel = acceptor.accept()) != null) {
+                Loop loop = loops[(nextLoop.getAndIncrement() & Integer.MAX_VALUE) % loops.length];
+                if (loop == this) {
+                    open(channel);
+                } else {
+                    loop.accepted.add(channel);
+                    loop.wake();
+                }
+            }
+        }
+
+        private void open(SocketChannel channel)
+        {
+            try {
+                channel.configureBlocking(false);
+                channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+                Connection connection = new Connection(this, channel);
+                connection.key = channel.register(selector, SelectionKey.OP_READ, connection);
+                connections.incrementAndGet();
+                try {
+                    connection.session = server.open(connection);
+                } catch (IllegalStateException ex) {
+                    connection.write(ex.getMessage() + "\n");
+                    connection.closing = true;
+                }
+            } catch (IOException ex) {
+                try {
+                    channel.close();
+                } catch (IOException closing) {
+                    // it is gone anyway
+                }
+            }
+        }
+
+        private void sweep(long now)
+        {
+            List<Connection> done = new ArrayList<>();
+            for (SelectionKey key : selector.keys()) {
+                if (key.attachment() instanceof Connection) {
+                    Connection connection = (Connection) key.attachment();
+                    if (now - connection.lastActive > idleMillis && !connection.closing) {
+                        connection.write("\nYou have been idle too long.  Good bye.\n");
+                        connection.closing = true;
+                    }
+                    if (connection.isDone()) {
+                        done.add(connection);
+                    }
+                }
+            }
+            for (Connection connection : done) {
+                connection.close();
+            }
+        }
+    }
+
+    /**
+     * One player's connection, which is also where their game shows its text.
+     */
+    private class Connection implements GameOutput
+    {
+        private final Loop loop;
+        private final SocketChannel channel;
+        private SelectionKey key;
+        private GameServer.Session session;
+        private boolean closing;            // close once the output is written
+        private boolean closed;
+        private long lastActive;
+
+        // input, only used by the loop's thread
+        private final byte[] line = new byte[MAX_LINE];
+        private int lineLength;
+        private boolean lineTooLong;
+        private int telnetState;            // where in a telnet command the input is; 0: not in one
+        private double tokens;
+        private long refilled;
+        private boolean throttled;
+
+        // output, shared by the game's worker and the loop's thread
+        private ByteBuffer out = ByteBuffer.allocate(1024);
+        private boolean flushQueued;
+        private boolean overflowed;
+
+        Connection(Loop loop, SocketChannel channel)
+        {
+            this.loop = loop;
+            this.channel = channel;
+            lastActive = System.currentTimeMillis();
+            tokens = burst;
+            refilled = System.nanoTime();
+        }
+
+        /**
+         * Encode text for the player, with telnet's line breaks, and have
+         * the loop write it.
+         */
+        public void write(CharSequence text)
+        {
+            synchronized (this) {
+                if (overflowed) {
+                    return;
+                }
+                for (int i = 0; i < text.length(); i++) {
+                    char c = text.charAt(i);
+                    if (out.remaining() < 4) {
+                        if (out.capacity() >= MAX_PENDING) {
+                            overflowed = true;      // the player does not read; the sweep hangs up
+                            return;
+                        }
+                        ByteBuffer bigger = ByteBuffer.allocate(out.capacity() * 2);
+                        out.flip();
+                        bigger.put(out);
+                        out = bigger;
+                    }
+                    if (c == '\n') {
+                        out.put((byte) '\r').put((byte) '\n');
+                    } else if (c < 0x80) {
+                        out.put((byte) c);
+                    } else if (c < 0x800) {
+                        out.put((byte) (0xC0 | c >> 6)).put((byte) (0x80 | c & 0x3F));
+                    } else if (Character.isSurrogate(c)) {
+                        if (Character.isHighSurrogate(c) && i + 1 < text.length()
+                                && Character.isLowSurrogate(text.charAt(i + 1))) {
+                            int code = Character.toCodePoint(c, text.charAt(++i));
+                            out.put((byte) (0xF0 | code >> 18)).put((byte) (0x80 | code >> 12 & 0x3F))
+                                    .put((byte) (0x80 | code >> 6 & 0x3F)).put((byte) (0x80 | code & 0x3F));
+                        } else {
+                            out.put((byte) '?');
+                        }
+                    } else {
+                        out.put((byte) (0xE0 | c >> 12)).put((byte) (0x80 | c >> 6 & 0x3F))
+                                .put((byte) (0x80 | c & 0x3F));
+                    }
+                }
+                if (flushQueued) {
+                    return;
+                }
+                flushQueued = true;
+            }
+            loop.flushes.add(this);
+            loop.wake();
+        }
+
+        /**
+         * Write as much of the output as the network takes now, through the
+         * loop's direct buffer. Called by the loop.
+         */
+        void flush()
+        {
+            if (closed) {
+                return;
+            }
+            boolean waiting;
+            try {
+                synchronized (this) {
+                    flushQueued = false;
+                    out.flip();
+                    ByteBuffer direct = loop.writeBuffer;
+                    while (out.hasRemaining()) {
+                        direct.clear();
+                        int limit = out.limit();
+                        out.limit(Math.min(limit, out.position() + direct.capacity()));
+                        direct.put(out);
+                        out.limit(limit);
+                        direct.flip();
+                        channel.write(direct);
+                        if (direct.hasRemaining()) {
+                            out.position(out.position() - direct.remaining());
+                            break;
+                        }
+                    }
+                    out.compact();
+                    waiting = out.position() > 0;
+                }
+            } catch (IOException ex) {
+                close();
+                return;
+            }
+            key.interestOps(waiting ? SelectionKey.OP_READ | SelectionKey.OP_WRITE : SelectionKey.OP_READ);
+            if (!waiting && isDone()) {
+                close();
+            }
+        }
+
+        /**
+         * Read what the player sent and hand every whole line to the session. Called by the loop.
+         */
+        void read()
+        {
+            ByteBuffer buffer = loop.readBuffer;
+            buffer.clear();
+            int read;
+            try {
+                read = channel.read(buffer);
+            } catch (IOException ex) {
+                read = -1;
+            }
+            if (read < 0) {
+                close();
+                return;
+            }
+            lastActive = System.currentTimeMillis();
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                received(buffer.get() & 0xFF);
+            }
+        }
+
+        private void received(int b)
+        {
+            switch (telnetState) {
+                case IAC:
+                    telnetState = b == SB ? SB : b >= WILL && b <= DONT ? WILL : 0;
+                    return;
+                case WILL:          // the option of WILL, WONT, DO or DONT
+                    telnetState = 0;
+                    return;
+                case SB:
+                    telnetState = b == IAC ? SE : SB;
+                    return;
+                case SE:            // after an IAC inside a subnegotiation
+                    telnetState = b == SE ? 0 : SB;
+                    return;
+                default:
+                    break;
+            }
+            if (b == IAC) {
+                telnetState = IAC;
+            } else if (b == '\n') {
+                endLine();
+            } else if (b != '\r' && b != 0) {
+                if (lineLength < line.length) {
+                    line[lineLength++] = (byte) b;
+                } else {
+                    lineTooLong = true;
+                }
+            }
+        }
+
+        private void endLine()
+        {
+            String text = new String(line, 0, lineLength, StandardCharsets.UTF_8);
+            boolean tooLong = lineTooLong;
+            lineLength = 0;
+            lineTooLong = false;
+            if (session == null || closing) {
+                return;
+            }
+            if (tooLong) {
+                write("That is too long for a command.\n");
+                return;
+            }
+            // a token bucket: tokens come back at the rate, up to the burst
+            long now = System.nanoTime();
+            tokens = Math.min(burst, tokens + (now - refilled) * linesPerSecond / 1e9);
+            refilled = now;
+            if (tokens < 1) {
+                if (!throttled) {
+                    throttled = true;
+                    write("You are typing too fast; some commands were ignored.\n");
+                }
+                return;
+            }
+            tokens--;
+            throttled = false;
+            session.submit(text);
+        }
+
+        /**
+         * @return true if the connection should be closed: the game is over, the
+         *         player was told to go or does not read, and nothing is left to write.
+         */
+        boolean isDone()
+        {
+            synchronized (this) {
+                if (overflowed) {
+                    return true;
+                }
+                if (out.position() > 0 || flushQueued) {
+                    return false;
+                }
+            }
+            return closing || (session != null && session.getGame().isFinished());
+        }
+
+        void close()
+        {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            key.cancel();
+            try {
+                channel.close();
+            } catch (IOException ex) {
+                // it is closed anyway
+            }
+            if (session != null) {
+                session.close();
+            }
+            connections.decrementAndGet();
+        }
+    }
+}
@@ -1,24 +1,35 @@
 package com.company;
 
-import java.util.Random;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
 /**
  * This is a different kind of room that will transport the player to a random location
  *  with any direction they choose.
  *
+ * Every destination has a weight, 1 unless the world map says otherwise, and
+ * is chosen with a chance in proportion to it. The choice is made by a
+ * TeleportSampler: a UniformSampler when all weights are the same, an
+ * AliasSampler when they are not, or any sampler that is set. The random
+ * numbers come from the player's game, or from the thread's own
+ * ThreadLocalRandom, never from a Random shared by all players.
+ *
  * @author Kwinn Danforth
  * @version 1.0.01
  */
 public class TransporterRoom extends Room
 {
-    private final Random RANDOM_NUMBER_GENERATOR;
     private final ArrayList<Room> ROOMS;
+    private double[] weights;
+    private volatile TeleportSampler sampler;  // made when it is first needed
 
-    public TransporterRoom(String description)
+    public TransporterRoom(int number, String name, String description, String occupancy, String item)
     {
-        super(description, "no one", "no item");
-        RANDOM_NUMBER_GENERATOR = new Random();
+        super(number, name, description, occupancy, item);
         ROOMS = new ArrayList<>();
+        weights = new double[8];
     }
 
     /**
@@ -37,12 +48,47 @@ public class TransporterRoom extends Room
      * Return a random room, independent of the direction
      * parameter
      *
+     * @param  direction, ignored
+     * @param  random Where the randomness comes from.
      * @return   a random room
      */
+    public Room getExit(String direction, Random random)
+    {
+        return findRandomRoom(random);
+    }
+
+    /**
+     * A transporter has no real exits, any direction will do.
+     *
+     * @param builder The buffer to append the exits to.
+     */
+    protected void appendExits(StringBuilder builder)
+    {
+        builder.append("Exits: choose to 'go' + any direction to transport");
+    }
+
+    /**
+     * Return a random room, chosen with the thread's own random numbers.
+     *
+     * @return   a random room, or null if the room has no destinations
+     */
     public Room findRandomRoom()
     {
-        int random = this.RANDOM_NUMBER_GENERATOR.nextInt(ROOMS.size() - 1);
-        return ROOMS.get(random);
+        return findRandomRoom(ThreadLocalRandom.current());
+    }
+
+    /**
+     * Return a random room. The same random numbers give the same room.
+     *
+     * @param  random Where the randomness comes from.
+     * @return   a random room, or null if the room has no destinations
+     */
+    public Room findRandomRoom(Random random)
+    {
+        if (ROOMS.isEmpty()) {
+            return null;
+        }
+        return ROOMS.get(getSampler().sample(random));
     }
 
     /**
@@ -52,7 +98,105 @@ public class TransporterRoom extends Room
      */
     public void setRooms(Room room)
     {
+        setRooms(room, 1);
+    }
+
+    /**
+     * Add a possible random room that is more or less likely than others.
+     *
+     * @param  room to add
+     * @param  weight How likely the room is, compared with the weights of the others.
+     */
+    public void setRooms(Room room, double weight)
+    {
+        if (!(weight > 0) || Double.isInfinite(weight)) {
+            throw new IllegalArgumentException("weight " + weight + " is not a positive number");
+        }
+        if (ROOMS.size() == weights.length) {
+            double[] bigger = new double[weights.length * 2];
+            System.arraycopy(weights, 0, bigger, 0, weights.length);
+            weights = bigger;
+        }
+        weights[ROOMS.size()] = weight;
         ROOMS.add(room);
+        sampler = null;
     }
-}
 
+    /**
+     * Give this room the same destinations, weights and sampler as another,
+     * for example the version of it that this room replaces.
+     *
+     * @param  other The room to copy from.
+     */
+    void copyRooms(TransporterRoom other)
+    {
+        for (int i = 0; i < other.ROOMS.size(); i++) {
+            setRooms(other.ROOMS.get(i), other.weights[i]);
+        }
+        sampler = other.sampler;
+    }
+
+    /**
+     * Choose the rooms with a sampler of your own instead of by their weights.
+     *
+     * @param  sampler The sampler, which must choose from as many rooms as this room has.
+     */
+    public void setSampler(TeleportSampler sampler)
+    {
+        this.sampler = sampler;
+    }
+
+    /**
+     * @return The rooms this room may transport the player to.
+     */
+    public List<Room> getRooms()
+    {
+        return Collections.unmodifiableList(ROOMS);
+    }
+
+    /**
+     * @return true if every room is as likely as any other.
+     */
+    public boolean isUniform()
+    {
+        for (int i = 1; i < ROOMS.size(); i++) {
+            if (weights[i] != weights[0]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @param  room A room this room may transport the player to.
+     * @return The chance, between 0 and 1, that the player ends up there.
+     */
+    public double getChance(Room room)
+    {
+        double total = 0;
+        double chosen = 0;
+        for (int i = 0; i < ROOMS.size(); i++) {
+            total += weights[i];
+            if (ROOMS.get(i).getNumber() == room.getNumber()) {
+                chosen += weights[i];
+            }
+        }
+        return total == 0 ? 0 : chosen / total;
+    }
+
+    private TeleportSampler getSampler()
+    {
+        TeleportSampler current = sampler;
+        if (current == null) {
+            if (isUniform()) {
+                current = new UniformSampler(ROOMS.size());
+            } else {
+                double[] used = new double[ROOMS.size()];
+                System.arraycopy(weights, 0, used, 0, used.length);
+                current = new AliasSampler(used);
+            }
+            sampler = current;
+        }
+        return current;
+    }
+}
@@ -0,0 +1,30 @@
+package com.company;
+
+import java.util.Random;
+
+/**
+ * Chooses each of a number of destinations with the same chance.
+ *
+ * @author  Kwinn Danforth
+ * @version 1.0.01
+ */
+public class UniformSampler implements TeleportSampler
+{
+    private final int destinations;
+
+    /**
+     * @param destinations The number of destinations; at least one.
+     */
+    public UniformSampler(int destinations)
+    {
+        if (destinations < 1) {
+            throw new IllegalArgumentException("a transporter needs at least one destination");
+        }
+        this.destinations = destinations;
+    }
+
+    public int sample(Random random)
+    {
+        return random.nextInt(destinations);
+    }
+}
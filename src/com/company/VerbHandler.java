@@ -0,0 +1,20 @@
+package com.company;
+
+/**
+ * A handler of a verb the game does not know itself, such as "dance".
+ *
+ * It is registered and found through ServiceLoader like any other
+ * CommandHandler, but under its verb rather than a CommandWord: its
+ * getCommandWord returns UNKNOWN. A verb that is also the word of a
+ * CommandWord replaces the standard handler of that word.
+ *
+ * @author  Kwinn Danforth
+ * @version 1.0.01
+ */
+public interface VerbHandler extends CommandHandler
+{
+    /**
+     * @return The verb this handler handles, one word that players type first.
+     */
+    String getVerb();
+}
@@ -0,0 +1,402 @@
+package com.company;
+
+import java.io.IOException;
+import java.nio.IntBuffer;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The world of the Hogwarts adventure application.
+ *
+ * The world holds everything that is shared between players: the graph of
+ * rooms (a RoomGraph) built from the data files by a WorldBuilder. A world is
+ * created once and can then be played by any number of games (sessions),
+ * each of which only keeps track of its own player.
+ *
+ * A world too large to keep in memory can be opened with a room cache
+ * instead: its rooms are then read from the room data as players get to
+ * them, and only the most recently used ones are kept (see RoomStore).
+ *
+ * The rooms of a world that is kept in memory can be updated while it is
+ * played, when the room data is edited (see RoomDataWatcher): the changed
+ * rooms are replaced by new versions and the games move their players to
+ * the new version of the room they are in.
+ *
+ * @author  Kwinn Danforth
+ * @version 1.0.01
+ */
+public class World
+{
+    private static final String ROOM_DATA = "src/com/company/RoomData.csv";
+    private static final String WORLD_MAP = "src/com/company/WorldMap.csv";
+
+    private static final long ROUTE_CACHE_BYTES = 64L * 1024 * 1024;
+
+    private final RoomGraph graph;
+    private final Room startRoom;
+    private final String loadReport;
+    private final long loadNanos;
+    private final RouteIndex routes;
+    private final ItemCatalog items;
+    private final StringPool strings;
+    private final IntBuffer startItems; // the ID of the item each room starts with, or -1
+    private final Path roomData;        // null if the rooms were not read from a file
+    private volatile Map<String, Room> roomsByName;     // made the first time a room is looked up by name
+
+    /**
+     * Create the world from the game's own data files.
+     * @throws IOException if the data files can not be read or are malformed.
+     */
+    public World() throws IOException
+    {
+        this(Paths.get(ROOM_DATA), Paths.get(WORLD_MAP));
+    }
+
+    /**
+     * Create the world: load the room data and build the map.
+     * @param roomData The rooms, in the format of RoomData.csv.
+     * @param worldMap The exits, transporters and start room, in the format of WorldMap.csv.
+     * @throws IOException if the data files can not be read or are malformed.
+     */
+    public World(Path roomData, Path worldMap) throws IOException
+    {
+        this(read(roomData, worldMap));
+    }
+
+    /**
+     * Create a world whose rooms are read when they are needed. Only the
+     * exits are read now, and the index of the rooms, which is kept next to
+     * the room data so that later starts do not have to read it again.
+     * @param roomData The rooms, in the format of RoomData.csv.
+     * @param worldMap The exits, transporters and start room, in the format of WorldMap.csv.
+     * @param roomCacheSize How many recently used rooms to keep in memory.
+     * @throws IOException if the data files can not be read or are malformed.
+     */
+    public World(Path roomData, Path worldMap, int roomCacheSize) throws IOException
+    {
+        this(open(roomData, worldMap, roomCacheSize));
+    }
+
+    /**
+     * Create the world from rooms and exits that were added to a builder.
+     * @param builder The builder holding the rooms, exits and start room.
+     * @throws IOException if an exit leads to a room that does not exist,
+     *         or there is no start room.
+     */
+    public World(WorldBuilder builder) throws IOException
+    {
+        graph = builder.build();
+        startRoom = graph.getRoom(builder.getStart());
+        roomData = builder.getRoomData();
+        routes = new RouteIndex(graph, ROUTE_CACHE_BYTES);
+        graph.setRoutes(routes);
+        items = builder.getItems();
+        strings = builder.getStrings();
+        if (graph.getStore() != null) {
+            startItems = graph.getStore().getStartItems();
+        } else {
+            int[] ids = new int[graph.size()];
+            for (int r = 0; r < ids.length; r++) {
+                Room room = graph.getRoom(r);
+                ids[r] = room == null ? -1 : items.getId(room.getItem());
+            }
+            startItems = IntBuffer.wrap(ids);
+        }
+        long nanos = System.nanoTime() - builder.getCreatedNanos();
+        loadNanos = nanos;
+        loadReport = String.format("%d rooms in %.2f ms (%.0f rooms/s)", builder.getRoomCount(),
+                nanos / 1e6, builder.getRoomCount() * 1e9 / nanos);
+    }
+
+    private static WorldBuilder read(Path roomData, Path worldMap) throws IOException
+    {
+        WorldBuilder builder = new WorldBuilder();
+        builder.readWorldMap(worldMap);
+        builder.readRoomData(roomData);
+        return builder;
+    }
+
+    private static WorldBuilder open(Path roomData, Path worldMap, int roomCacheSize) throws IOException
+    {
+        WorldBuilder builder = new WorldBuilder();
+        builder.readWorldMap(worldMap);
+        builder.openRoomData(roomData, roomCacheSize);
+        return builder;
+    }
+
+    /**
+     * @return The room every new player starts in.
+     */
+    public Room getStartRoom()
+    {
+        return startRoom.isRetired() ? graph.getRoom(startRoom.getNumber()) : startRoom;
+    }
+
+    /**
+     * @param number The number of a room.
+     * @return The room with that number, or null if there is none.
+     */
+    public Room getRoom(int number)
+    {
+        return graph.getRoom(number);
+    }
+
+    /**
+     * Find a room by its name. Upper and lower case do not matter. In a
+     * world with a room cache only the rooms whose name has the same hash
+     * as the one asked for are read.
+     * @param name The name of a room, for example "main hall".
+     * @return The room, or null if there is no room with that name.
+     */
+    public Room findRoom(String name)
+    {
+        if (graph.getStore() != null) {
+            return graph.getStore().find(name);
+        }
+        Map<String, Room> byName = roomsByName;
+        if (byName == null) {
+            byName = indexNames();
+        }
+        return byName.get(name.toLowerCase());
+    }
+
+    /**
+     * Make the map of the rooms by name, once, and publish it for findRoom to read without a lock.
+     */
+    private synchronized Map<String, Room> indexNames()
+    {
+        if (roomsByName == null) {
+            HashMap<String, Room> byName = new HashMap<>();
+            for (int r = 0; r < graph.size(); r++) {
+                Room room = graph.getRoom(r);
+                if (room != null) {
+                    byName.put(room.getName().toLowerCase(), room);
+                }
+            }
+            roomsByName = byName;
+        }
+        return roomsByName;
+    }
+
+    /**
+     * @return All the items there are in the world.
+     */
+    public ItemCatalog getItems()
+    {
+        return items;
+    }
+
+    /**
+     * @return The pool the texts of the rooms were read through.
+     */
+    public StringPool getStrings()
+    {
+        return strings;
+    }
+
+    /**
+     * @return The routes between the rooms of the world.
+     */
+    public RouteIndex getRoutes()
+    {
+        return routes;
+    }
+
+    /**
+     * Write the rooms whose item is not the one they started with: first
+     * how many there are, then the number of each room and the ID of its
+     * item plus one, or 0 for no item.
+     * @param out The snapshot to write to.
+     * @throws IOException if the snapshot can not be written.
+     */
+    public void writeItems(SnapshotWriter out) throws IOException
+    {
+        int[] now = new int[graph.size()];
+        int changed = 0;
+        for (int r = 0; r < now.length; r++) {
+            String item = graph.getItem(r);
+            now[r] = item == null ? -1 : items.getId(item);
+            if (now[r] != startItems.get(r)) {
+                changed++;
+            }
+        }
+        out.writeVarint(graph.size());
+        out.writeVarint(items.size());
+        out.writeVarint(changed);
+        for (int r = 0; r < now.length; r++) {
+            if (now[r] != startItems.get(r)) {
+                out.writeVarint(r);
+                out.writeVarint(now[r] + 1);
+            }
+        }
+    }
+
+    /**
+     * Put every room's item back to what writeItems wrote.
+     * @param in The snapshot to read from.
+     * @throws IOException if the snapshot ends or was taken of another world.
+     */
+    public void readItems(SnapshotReader in) throws IOException
+    {
+        placeItems(readItemPlaces(in));
+    }
+
+    /**
+     * Read what writeItems wrote without changing the world, so the rest of
+     * the snapshot can be checked before anything is put back.
+     * @param in The snapshot to read from.
+     * @return The ID of every room's item, or -1 for no item, to give to placeItems.
+     * @throws IOException if the snapshot ends or was taken of another world.
+     */
+    public int[] readItemPlaces(SnapshotReader in) throws IOException
+    {
+        if (in.readVarint() != graph.size() || in.readVarint() != items.size()) {
+            throw new IOException("the snapshot was taken of another world");
+        }
+        int changed = in.readInt(graph.size());
+        int[] restored = new int[graph.size()];
+        startItems.duplicate().get(restored);
+        for (int i = 0; i < changed; i++) {
+            int r = in.readInt(graph.size() - 1);
+            if (!graph.hasRoom(r)) {
+                throw new IOException("the snapshot has room " + r + ", which does not exist");
+            }
+            restored[r] = in.readInt(items.size()) - 1;
+        }
+        return restored;
+    }
+
+    /**
+     * Put every room's item to what readItemPlaces read.
+     * @param places The ID of every room's item, or -1 for no item.
+     */
+    public void placeItems(int[] places)
+    {
+        for (int r = 0; r < places.length; r++) {
+            if (graph.hasRoom(r)) {
+                graph.setItem(r, places[r] < 0 ? Room.NO_ITEM : items.getName(places[r]));
+            }
+        }
+    }
+
+    /**
+     * Make sure every item is in exactly one place after a restore: items
+     * that a player carries are taken out of the rooms, and items that are
+     * nowhere (because a player picked one up while the snapshot was being
+     * taken) go back to the room they started in, if it is empty.
+     * @param carried The IDs of the items the players carry.
+     */
+    public void reconcileItems(BitSet carried)
+    {
+        BitSet placed = new BitSet(items.size());
+        for (int r = 0; r < graph.size(); r++) {
+            String item = graph.getItem(r);
+            if (item == null) {
+                continue;
+            }
+            int id = items.getId(item);
+            if (id >= 0 && (carried.get(id) || placed.get(id))) {
+                graph.setItem(r, Room.NO_ITEM);
+            } else if (id >= 0) {
+                placed.set(id);
+            }
+        }
+        for (int r = 0; r < graph.size(); r++) {
+            int id = startItems.get(r);
+            if (id >= 0 && !carried.get(id) && !placed.get(id) && graph.getRoom(r).putItem(items.getName(id))) {
+                placed.set(id);
+            }
+        }
+    }
+
+    /**
+     * Replace rooms by new versions of them, read from the room data after
+     * it was edited. Each room keeps the item it has, unless it still has
+     * the item it started with; then it gets the item the new version
+     * starts with. Players who are in an old room are passed on to the new
+     * one. Items that are not in the world's catalog can not be added this
+     * way: a new version must start with an item the world already has.
+     * @param replacements The new rooms, not in use yet, each with the number of a room of this world.
+     * @throws IllegalArgumentException if a room does not exist or starts with an unknown item.
+     * @throws IllegalStateException if the world reads its rooms from a room cache.
+     */
+    public synchronized void update(List<Room> replacements)
+    {
+        if (graph.getStore() != null) {
+            throw new IllegalStateException("a world with a room cache can not be updated");
+        }
+        int[] newStarts = new int[replacements.size()];
+        for (int i = 0; i < newStarts.length; i++) {
+            Room room = replacements.get(i);
+            if (!graph.hasRoom(room.getNumber())) {
+                throw new IllegalArgumentException("room " + room.getNumber() + " does not exist");
+            }
+            newStarts[i] = items.getId(room.getItem());
+            if (newStarts[i] < 0 && room.getItem() != Room.NO_ITEM) {
+                throw new IllegalArgumentException("room " + room.getNumber() + " starts with an unknown item, "
+                        + room.getItem());
+            }
+        }
+        for (int i = 0; i < newStarts.length; i++) {
+            Room room = replacements.get(i);
+            Room old = graph.getRoom(room.getNumber());
+            if (old instanceof TransporterRoom && room instanceof TransporterRoom) {
+                ((TransporterRoom) room).copyRooms((TransporterRoom) old);
+            }
+            int start = startItems.get(room.getNumber());
+            old.retire(room, start < 0 ? Room.NO_ITEM : items.getName(start),
+                    newStarts[i] < 0 ? Room.NO_ITEM : items.getName(newStarts[i]));
+            startItems.put(room.getNumber(), newStarts[i]);
+        }
+        graph.replaceRooms(replacements);
+        for (Room room : replacements) {
+            graph.itemChanged(room.getNumber());    // the new version may start with another item
+        }
+        roomsByName = null;
+    }
+
+    /**
+     * @return The room data the world was read from, or null if it was built otherwise.
+     */
+    public Path getRoomData()
+    {
+        return roomData;
+    }
+
+    /**
+     * @return One more than the highest room number in the world.
+     */
+    public int getRoomCount()
+    {
+        return graph.size();
+    }
+
+    /**
+     * @return The exits between the rooms of the world.
+     */
+    public RoomGraph getGraph()
+    {
+        return graph;
+    }
+
+    /**
+     * @return How long loading the world took, for example
+     * "8 rooms in 1.25 ms (6400 rooms/s)".
+     */
+    public String getLoadReport()
+    {
+        return loadReport;
+    }
+
+    /**
+     * @return How long loading the world took, in nanoseconds.
+     */
+    public long getLoadNanos()
+    {
+        return loadNanos;
+    }
+}
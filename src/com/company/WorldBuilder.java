@@ -0,0 +1,457 @@
+package com.company;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * Builds the graph of rooms from the game's data files.
+ *
+ * The rooms come from RoomData.csv (name, description, occupant, item,
+ * number) and everything that connects them comes from WorldMap.csv, keyed
+ * by room number. Each line of the map is one of:
+ *
+ *     start,&lt;room&gt;                       the room every player starts in
+ *     transporter,&lt;room&gt;                 the room transports the player
+ *     exit,&lt;room&gt;,&lt;direction&gt;,&lt;room&gt;     an exit from one room to another
+ *     teleport,&lt;room&gt;,&lt;room&gt;[,&lt;weight&gt;]  a room a transporter may send you to
+ *
+ * A teleport's weight says how likely it is compared with the other
+ * teleports of the same transporter; without one it is 1.
+ *
+ * The map is read first so that transporter rooms can be created as such,
+ * then the rooms, and finally the exits are linked. Every step is a single
+ * pass, so building takes time linear in the rooms plus the exits. An exit
+ * that leads to a room which does not exist stops the build with the line
+ * that declared it. The items the rooms start with are interned into an
+ * ItemCatalog as the rooms are added, and the names, descriptions and
+ * occupants of the rooms are read through a StringPool, so that rooms
+ * with the same text share one String.
+ *
+ * For worlds too large to read whole, the room data can be opened as a
+ * RoomStore instead: the rooms are then only indexed, and read one at a
+ * time when they are needed. The exits are still all read and linked.
+ *
+ * A builder can also keep only a slice of the world, such as the rooms a
+ * shard of a ShardedServer owns: the rooms of a range of numbers, with
+ * their exits and teleports, and the rooms those lead to, which players
+ * only pass through on their way out of the slice. The start room is
+ * always kept. The other rooms are read only for their items, so that an
+ * item has the same ID in every slice, and the room numbers stay those of
+ * the whole world.
+ *
+ * @author  Kwinn Danforth
+ * @version 1.0.01
+ */
+public class WorldBuilder
+{
+    private static final byte TELEPORT = -1;
+    private static final int POOL_SIZE = 4096;     // different texts the pool keeps
+
+    private Room[] rooms;               // indexed by room number
+    private int roomCount;
+    private RoomStore store;            // holds the rooms instead, if they are read lazily
+    private final BitSet transporters;
+    private final ItemCatalog items;
+    private final StringPool strings;
+    private int start;
+    private int sliceStart;
+    private int sliceEnd = -1;          // -1: every room is kept
+    private BitSet border;              // rooms outside the slice that its exits and teleports lead to
+    private int highestRead = -1;       // the highest room number read, also of rooms that were not kept
+    private String mapName = "the world map";
+    private Path roomData;
+    private final long createdNanos;
+
+    // the exits and teleports, kept as plain arrays until they can be linked
+    private int[] linkFrom;
+    private int[] linkTo;
+    private int[] linkLine;
+    private byte[] linkDirection;       // a Direction ordinal, or TELEPORT
+    private int[] linkWeight;           // only used by teleports
+    private int linkCount;
+
+    /**
+     * Create an empty builder.
+     */
+    public WorldBuilder()
+    {
+        createdNanos = System.nanoTime();
+        rooms = new Room[16];
+        transporters = new BitSet();
+        items = new ItemCatalog();
+        strings = new StringPool(POOL_SIZE);
+        start = -1;
+        linkFrom = new int[16];
+        linkTo = new int[16];
+        linkLine = new int[16];
+        linkDirection = new byte[16];
+        linkWeight = new int[16];
+    }
+
+    /**
+     * Keep only a slice of the world. Must be called before anything is read or added.
+     * @param first The number of the first room of the slice.
+     * @param end One more than the number of the last room of the slice.
+     */
+    public void keepRooms(int first, int end)
+    {
+        if (linkCount > 0 || roomCount > 0 || store != null) {
+            throw new IllegalStateException("the slice must be chosen before anything is read");
+        }
+        sliceStart = first;
+        sliceEnd = end;
+        border = new BitSet();
+    }
+
+    /**
+     * Find how many room numbers a room file uses, without keeping any rooms,
+     * for example to split the world into slices before they are read.
+     * @param file The room file, such as RoomData.csv.
+     * @return One more than the highest room number in the file.
+     * @throws IOException if the file can not be read or a line is malformed.
+     */
+    public static int countRoomNumbers(Path file) throws IOException
+    {
+        final int[] highest = {-1};
+        new CsvReader(file).read(new CsvReader.RowHandler() {
+            public void row(CsvReader.Row row) throws IOException
+            {
+                row.expectFields(5);
+                highest[0] = Math.max(highest[0], roomNumber(row, 4));
+            }
+        });
+        return highest[0] + 1;
+    }
+
+    /**
+     * Read the world map: the start room, the transporters and all exits.
+     * @param file The map file, such as WorldMap.csv.
+     * @throws IOException if the file can not be read or a line is malformed.
+     */
+    public void readWorldMap(Path file) throws IOException
+    {
+        mapName = file.getFileName().toString();
+        new CsvReader(file).read(new CsvReader.RowHandler() {
+            public void row(CsvReader.Row row) throws IOException
+            {
+                String kind = row.getString(0);
+                if (kind.equals("start")) {
+                    row.expectFields(2);
+                    start = row.getInt(1);
+                } else if (kind.equals("transporter")) {
+                    row.expectFields(2);
+                    transporters.set(roomNumber(row, 1));
+                } else if (kind.equals("exit")) {
+                    row.expectFields(4);
+                    Direction direction = Direction.fromString(row.getString(2).trim());
+                    if (direction == null) {
+                        throw row.error("unknown direction '" + row.getString(2) + "'");
+                    }
+                    addLink(roomNumber(row, 1), (byte) direction.ordinal(), roomNumber(row, 3), 1, row.getLineNumber());
+                } else if (kind.equals("teleport")) {
+                    if (row.size() != 4) {
+                        row.expectFields(3);
+                    }
+                    int weight = row.size() == 4 ? row.getInt(3) : 1;
+                    if (weight < 1) {
+                        throw row.error("a teleport's weight must be at least 1");
+                    }
+                    addLink(roomNumber(row, 1), TELEPORT, roomNumber(row, 2), weight, row.getLineNumber());
+                } else {
+                    throw row.error("unknown kind of line '" + kind + "'");
+                }
+            }
+        });
+    }
+
+    /**
+     * Read the rooms. The world map should be read first, so the builder
+     * knows which rooms are transporters.
+     * @param file The room file, such as RoomData.csv.
+     * @throws IOException if the file can not be read or a line is malformed.
+     */
+    public void readRoomData(Path file) throws IOException
+    {
+        roomData = file;
+        new CsvReader(file).read(new CsvReader.RowHandler() {
+            public void row(CsvReader.Row row) throws IOException
+            {
+                row.expectFields(5);
+                int number = roomNumber(row, 4);
+                highestRead = Math.max(highestRead, number);
+                if (!keeps(number)) {
+                    items.intern(row.getString(3));     // so every slice gives the items the same IDs
+                    return;
+                }
+                if (number < rooms.length && rooms[number] != null) {
+                    throw row.error("room " + number + " is defined twice");
+                }
+                String name = row.getString(0, strings);
+                String description = row.getString(1, strings);
+                String occupancy = row.getString(2, strings);
+                String item = row.getString(3, strings);
+                if (transporters.get(number)) {
+                    addRoom(new TransporterRoom(number, name, description, occupancy, item));
+                } else {
+                    addRoom(new Room(number, name, description, occupancy, item));
+                }
+            }
+        });
+    }
+
+    /**
+     * Open the rooms instead of reading them, so that each is only read when
+     * it is needed. The world map should be read first, so the builder knows
+     * which rooms are transporters. No rooms can be added after this.
+     * @param file The room file, such as RoomData.csv.
+     * @param cacheSize How many recently used rooms to keep in memory.
+     * @throws IOException if the file can not be read or a line is malformed.
+     */
+    public void openRoomData(Path file, int cacheSize) throws IOException
+    {
+        if (roomCount > 0 || store != null) {
+            throw new IllegalStateException("the builder already has rooms");
+        }
+        if (border != null) {
+            throw new IllegalStateException("a slice of the world can only be read, not opened");
+        }
+        store = new RoomStore(file, transporters, items, strings, cacheSize);
+        roomData = file;
+    }
+
+    /**
+     * @return The pool the texts of the rooms were read through.
+     */
+    public StringPool getStrings()
+    {
+        return strings;
+    }
+
+    /**
+     * Add a room that was not read from a file.
+     * @param room The room to add. Its number must not be in use yet.
+     */
+    public void addRoom(Room room)
+    {
+        if (store != null) {
+            throw new IllegalStateException("rooms can not be added to a room store");
+        }
+        int number = room.getNumber();
+        if (number >= rooms.length) {
+            Room[] bigger = new Room[Math.max(number + 1, rooms.length * 2)];
+            System.arraycopy(rooms, 0, bigger, 0, rooms.length);
+            rooms = bigger;
+        }
+        rooms[number] = room;
+        roomCount++;
+        room.setItem(items.intern(room.getItem()));
+    }
+
+    /**
+     * Add an exit that was not read from a file.
+     * @param from The number of the room the exit leaves.
+     * @param direction The direction of the exit.
+     * @param to The number of the room the exit leads to.
+     */
+    public void addExit(int from, Direction direction, int to)
+    {
+        addLink(from, (byte) direction.ordinal(), to, 1, 0);
+    }
+
+    /**
+     * Add a teleport that was not read from a file.
+     * @param from The number of the transporter room.
+     * @param to The number of the room it may send the player to.
+     * @param weight How likely that is, compared with its other teleports.
+     */
+    public void addTeleport(int from, int to, int weight)
+    {
+        addLink(from, TELEPORT, to, weight, 0);
+    }
+
+    /**
+     * Choose the room every player starts in, instead of reading it from a file.
+     * @param start The number of the start room.
+     */
+    public void setStart(int start)
+    {
+        this.start = start;
+    }
+
+    /**
+     * Link all exits and teleports and finish the world.
+     * @return The graph of the rooms.
+     * @throws IOException if a line of the map refers to a room that does not
+     *         exist, or there is no start room.
+     */
+    public RoomGraph build() throws IOException
+    {
+        int[] exitFrom = new int[linkCount];
+        int[] exitTo = new int[linkCount];
+        byte[] exitDirection = new byte[linkCount];
+        int exitCount = 0;
+        for (int i = 0; i < linkCount; i++) {
+            checkRoom(linkFrom[i], i);
+            checkRoom(linkTo[i], i);
+            if (linkDirection[i] != TELEPORT) {
+                exitFrom[exitCount] = linkFrom[i];
+                exitTo[exitCount] = linkTo[i];
+                exitDirection[exitCount] = linkDirection[i];
+                exitCount++;
+            } else if (getRoom(linkFrom[i]) instanceof TransporterRoom) {
+                ((TransporterRoom) getRoom(linkFrom[i])).setRooms(getRoom(linkTo[i]), linkWeight[i]);
+            } else {
+                throw error(i, "room " + linkFrom[i] + " is not a transporter");
+            }
+        }
+        if (!hasRoom(start)) {
+            throw new IOException(mapName + ": the start room " + start + " does not exist");
+        }
+        try {
+            if (store != null) {
+                return new RoomGraph(store, exitFrom, exitDirection, exitTo, exitCount);
+            }
+            Room[] built = Arrays.copyOf(rooms, Math.max(highestNumber(), highestRead) + 1);
+            return new RoomGraph(built, exitFrom, exitDirection, exitTo, exitCount);
+        } catch (IllegalArgumentException ex) {
+            throw new IOException(mapName + ": " + ex.getMessage());
+        }
+    }
+
+    /**
+     * @return The items of all rooms added so far.
+     */
+    public ItemCatalog getItems()
+    {
+        return items;
+    }
+
+    /**
+     * @return The store the rooms were opened in, or null if they were read.
+     */
+    public RoomStore getRoomStore()
+    {
+        return store;
+    }
+
+    /**
+     * @return The room file that was read, or null if the rooms were added.
+     */
+    public Path getRoomData()
+    {
+        return roomData;
+    }
+
+    /**
+     * @return The number of the room every player starts in.
+     */
+    public int getStart()
+    {
+        return start;
+    }
+
+    /**
+     * @return When the builder was created, by System.nanoTime(), so the
+     * time a world took to load can be told.
+     */
+    public long getCreatedNanos()
+    {
+        return createdNanos;
+    }
+
+    /**
+     * @return The number of rooms added so far.
+     */
+    public int getRoomCount()
+    {
+        return store != null ? store.getRoomCount() : roomCount;
+    }
+
+    private static int roomNumber(CsvReader.Row row, int field) throws IOException
+    {
+        int number = row.getInt(field);
+        if (number < 0) {
+            throw row.error("room numbers can not be negative: " + number);
+        }
+        return number;
+    }
+
+    private void addLink(int from, byte direction, int to, int weight, int line)
+    {
+        if (border != null) {
+            if (from < sliceStart || from >= sliceEnd) {
+                return;
+            }
+            if (to < sliceStart || to >= sliceEnd) {
+                border.set(to);
+            }
+        }
+        if (linkCount == linkFrom.length) {
+            int size = linkCount * 2;
+            linkFrom = grow(linkFrom, size);
+            linkTo = grow(linkTo, size);
+            linkLine = grow(linkLine, size);
+            linkWeight = grow(linkWeight, size);
+            byte[] biggerDirection = new byte[size];
+            System.arraycopy(linkDirection, 0, biggerDirection, 0, linkCount);
+            linkDirection = biggerDirection;
+        }
+        linkFrom[linkCount] = from;
+        linkTo[linkCount] = to;
+        linkLine[linkCount] = line;
+        linkDirection[linkCount] = direction;
+        linkWeight[linkCount] = weight;
+        linkCount++;
+    }
+
+    private static int[] grow(int[] array, int size)
+    {
+        int[] bigger = new int[size];
+        System.arraycopy(array, 0, bigger, 0, array.length);
+        return bigger;
+    }
+
+    /**
+     * @return true if a room is in the slice that is kept, or one of the rooms it leads to.
+     */
+    private boolean keeps(int number)
+    {
+        return border == null || number >= sliceStart && number < sliceEnd || border.get(number) || number == start;
+    }
+
+    private boolean hasRoom(int number)
+    {
+        if (store != null) {
+            return store.exists(number);
+        }
+        return number >= 0 && number < rooms.length && rooms[number] != null;
+    }
+
+    private Room getRoom(int number)
+    {
+        return store != null ? store.get(number) : rooms[number];
+    }
+
+    private void checkRoom(int number, int link) throws IOException
+    {
+        if (!hasRoom(number)) {
+            throw error(link, "room " + number + " does not exist");
+        }
+    }
+
+    private IOException error(int link, String message)
+    {
+        return new IOException(mapName + " line " + linkLine[link] + ": " + message);
+    }
+
+    private int highestNumber()
+    {
+        int highest = rooms.length - 1;
+        while (highest > 0 && rooms[highest] == null) {
+            highest--;
+        }
+        return highest;
+    }
+}
@@ -0,0 +1,326 @@
+package com.company;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.Locale;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Makes up worlds of any size and writes them as RoomData.csv and
+ * WorldMap.csv, so they are loaded like the game's own world.
+ *
+ * The rooms are laid out row by row on a square, and every room has an
+ * exit to the next room of its row and back, so each row is a corridor.
+ * The first rooms of the rows are joined from north to south, which makes
+ * every room reachable from every other. Further exits join rooms to the
+ * rooms north and south of them, as many as the branching asks for: with
+ * a branching of 2 the world is only corridors, with 4 it is a full grid.
+ * Names, descriptions, occupants and items are put together from short
+ * lists of words, so many rooms share their texts as in a real world.
+ * Some rooms are transporters, each of which sends players to a few rooms
+ * anywhere in the world.
+ *
+ * Every choice is made from the seed, the room and what is chosen, so the
+ * same seed makes the same world whatever the number of threads. The rooms
+ * are made in chunks on several threads, but the chunks are written in
+ * order and only a few are kept at a time, so even a world of ten million
+ * rooms is written with little memory.
+ *
+ *     java com.company.WorldGenerator <directory> <rooms> [seed] [branching] [item density] [transporter density]
+ *
+ * @author  Kwinn Danforth
+ * @version 1.0.01
+ */
+public class WorldGenerator
+{
+    private static final int CHUNK_ROOMS = 16384;      // rooms a thread makes at a time
+    private static final int TELEPORTS = 8;             // rooms a transporter may send players to
+
+    private static final String[] ADJECTIVES = {"Dusty", "Cold", "Narrow", "Grand", "Dark",
+            "Crooked", "Quiet", "Draughty", "Moonlit", "Forgotten", "Echoing", "Musty"};
+    private static final String[] PLACES = {"Corridor", "Classroom", "Staircase", "Tower", "Dungeon",
+            "Library", "Courtyard", "Cloister", "Gallery", "Attic", "Kitchen", "Greenhouse"};
+    private static final String[] OCCUPANTS = {"a ghost", "Peeves", "Nearly Headless Nick",
+            "a house-elf", "Mrs Norris", "a prefect"};
+    private static final String[] ITEMS = {"Chocolate Frog", "Every Flavour Bean", "Quill", "Wand",
+            "Spellbook", "Potion", "Cauldron", "Remembrall"};
+
+    // what a choice is about, so different choices for the same room are independent
+    private static final long SOUTH = 1;
+    private static final long NAME = 2;
+    private static final long OCCUPANT = 3;
+    private static final long ITEM = 4;
+    private static final long TRANSPORTER = 5;
+    private static final long TELEPORT = 6;
+
+    private final int rooms;
+    private final int width;
+    private final long seed;
+    private double branching;
+    private double occupantDensity;
+    private double itemDensity;
+    private double transporterDensity;
+    private int threads;
+
+    /**
+     * Create a generator with a branching of 3, an item in one room of
+     * seven, an occupant in one room of five and a transporter in one room
+     * of a thousand.
+     * @param rooms The number of rooms.
+     * @param seed Where the chance comes from.
+     */
+    public WorldGenerator(int rooms, long seed)
+    {
+        if (rooms < 1) {
+            throw new IllegalArgumentException("a world needs at least one room");
+        }
+        this.rooms = rooms;
+        this.seed = seed;
+        width = (int) Math.ceil(Math.sqrt(rooms));
+        branching = 3;
+        occupantDensity = 0.2;
+        itemDensity = 1.0 / 7;
+        transporterDensity = 0.001;
+        threads = Runtime.getRuntime().availableProcessors();
+    }
+
+    /**
+     * @param branching How many exits a room has on average, from 2 to 4.
+     */
+    public void setBranching(double branching)
+    {
+        if (branching < 2 || branching > 4) {
+            throw new IllegalArgumentException("the branching must be from 2 to 4, not " + branching);
+        }
+        this.branching = branching;
+    }
+
+    /**
+     * @param density The share of the rooms that have an occupant, from 0 to 1.
+     */
+    public void setOccupantDensity(double density)
+    {
+        occupantDensity = share(density);
+    }
+
+    /**
+     * @param density The share of the rooms that start with an item, from 0 to 1.
+     */
+    public void setItemDensity(double density)
+    {
+        itemDensity = share(density);
+    }
+
+    /**
+     * @param density The share of the rooms that are transporters, from 0 to 1.
+     */
+    public void setTransporterDensity(double density)
+    {
+        transporterDensity = share(density);
+    }
+
+    /**
+     * @param threads How many threads make rooms.
+     */
+    public void setThreads(int threads)
+    {
+        this.threads = Math.max(1, threads);
+    }
+
+    /**
+     * @return The room players start in, in the middle of the world.
+     */
+    public int getStartRoom()
+    {
+        return (int) (((long) width * (width / 2) + width / 2) % rooms);
+    }
+
+    /**
+     * Write the world's RoomData.csv and WorldMap.csv into a directory.
+     * @param directory Where the files are written.
+     * @throws IOException if the files can not be written.
+     */
+    public void write(Path directory) throws IOException
+    {
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try (OutputStream roomData = Files.newOutputStream(directory.resolve("RoomData.csv"));
+             OutputStream worldMap = Files.newOutputStream(directory.resolve("WorldMap.csv"))) {
+            worldMap.write(("start," + getStartRoom() + "\n").getBytes(StandardCharsets.UTF_8));
+            // a few chunks ahead of the one being written, so every thread has work
+            Queue<Future<Chunk>> chunks = new ArrayDeque<>();
+            int next = 0;
+            while (next < rooms || !chunks.isEmpty()) {
+                while (next < rooms && chunks.size() < threads * 2) {
+                    final int first = next;
+                    final int end = (int) Math.min(rooms, (long) next + CHUNK_ROOMS);
+                    chunks.add(pool.submit(new Callable<Chunk>() {
+                        public Chunk call()
+                        {
+                            return makeChunk(first, end);
+                        }
+                    }));
+                    next = end;
+                }
+                Chunk chunk = chunks.remove().get();
+                roomData.write(chunk.roomData);
+                worldMap.write(chunk.worldMap);
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IOException("interrupted while generating the world", ex);
+        } catch (ExecutionException ex) {
+            throw new IOException("could not generate the world", ex.getCause());
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * Generate a world and write it.
+     * @param args The directory, the number of rooms and optionally the
+     *             seed, the branching, the item density and the transporter density.
+     */
+    public static void main(String[] args) throws IOException
+    {
+        if (args.length < 2) {
+            System.err.println("usage: WorldGenerator <directory> <rooms> [seed] [branching] [item density] [transporter density]");
+            System.exit(2);
+        }
+        Path directory = Paths.get(args[0]);
+        WorldGenerator generator = new WorldGenerator(Integer.parseInt(args[1]),
+                args.length > 2 ? Long.parseLong(args[2]) : 1);
+        if (args.length > 3) {
+            generator.setBranching(Double.parseDouble(args[3]));
+        }
+        if (args.length > 4) {
+            generator.setItemDensity(Double.parseDouble(args[4]));
+        }
+        if (args.length > 5) {
+            generator.setTransporterDensity(Double.parseDouble(args[5]));
+        }
+        Files.createDirectories(directory);
+        long started = System.nanoTime();
+        generator.write(directory);
+        System.out.printf("Wrote %,d rooms to %s in %.1f s%n", generator.rooms, directory,
+                (System.nanoTime() - started) / 1e9);
+    }
+
+    /**
+     * Make the lines of the rooms from first up to, but not including, end.
+     */
+    private Chunk makeChunk(int first, int end)
+    {
+        StringBuilder roomData = new StringBuilder((end - first) * 80);
+        StringBuilder worldMap = new StringBuilder((end - first) * 64);
+        for (int r = first; r < end; r++) {
+            boolean transporter = chance(r, TRANSPORTER) < transporterDensity;
+            if (transporter) {
+                roomData.append("Transporter Room,in a transporter room that sends you to a random room!,");
+                worldMap.append("transporter,").append(r).append('\n');
+                for (int t = 0; t < TELEPORTS; t++) {
+                    long random = random(r, TELEPORT + t);
+                    worldMap.append("teleport,").append(r).append(',').append((random >>> 2) % rooms)
+                            .append(',').append(1 + (random & 3)).append('\n');
+                }
+            } else {
+                long random = random(r, NAME);
+                String adjective = ADJECTIVES[(int) ((random >>> 1) % ADJECTIVES.length)];
+                String place = PLACES[(int) ((random >>> 32) % PLACES.length)];
+                roomData.append(adjective).append(' ').append(place)
+                        .append("AEIOU".indexOf(adjective.charAt(0)) < 0 ? ",in a " : ",in an ")
+                        .append(adjective.toLowerCase(Locale.ROOT)).append(' ')
+                        .append(place.toLowerCase(Locale.ROOT)).append(".,");
+            }
+            roomData.append(chance(r, OCCUPANT) < occupantDensity
+                    ? OCCUPANTS[(int) ((random(r, OCCUPANT) >>> 32) % OCCUPANTS.length)] : Room.NO_ONE).append(',');
+            if (chance(r, ITEM) < itemDensity) {
+                roomData.append(ITEMS[(int) ((random(r, ITEM) >>> 32) % ITEMS.length)]).append(' ').append(r);
+            } else {
+                roomData.append(Room.NO_ITEM);
+            }
+            roomData.append(',').append(r).append('\n');
+
+            if (r >= width && hasSouthExit(r - width)) {
+                exit(worldMap, r, "north", r - width);
+            }
+            if (r % width != width - 1 && r + 1 < rooms) {
+                exit(worldMap, r, "east", r + 1);
+            }
+            if (r + width < rooms && hasSouthExit(r)) {
+                exit(worldMap, r, "south", r + width);
+            }
+            if (r % width != 0) {
+                exit(worldMap, r, "west", r - 1);
+            }
+        }
+        return new Chunk(roomData.toString().getBytes(StandardCharsets.UTF_8),
+                worldMap.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * @return Whether a room has an exit to the room south of it, and that room one back.
+     */
+    private boolean hasSouthExit(int room)
+    {
+        // the corridors give every room two exits, the rest come from north and south
+        return room % width == 0 || chance(room, SOUTH) < (branching - 2) / 2;
+    }
+
+    private static void exit(StringBuilder worldMap, int from, String direction, int to)
+    {
+        worldMap.append("exit,").append(from).append(',').append(direction).append(',').append(to).append('\n');
+    }
+
+    /**
+     * @return A number from 0 up to 1, the same for the same room and choice.
+     */
+    private double chance(int room, long choice)
+    {
+        return (random(room, choice) >>> 11) * 0x1.0p-53;
+    }
+
+    private long random(int room, long choice)
+    {
+        return mix(seed ^ mix(room * 0x9E3779B97F4A7C15L + choice));
+    }
+
+    private static long mix(long z)
+    {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;     // splitmix64's finalizer
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    private static double share(double density)
+    {
+        if (density < 0 || density > 1) {
+            throw new IllegalArgumentException("a density must be from 0 to 1, not " + density);
+        }
+        return density;
+    }
+
+    /**
+     * The lines of some rooms, ready to be written.
+     */
+    private static class Chunk
+    {
+        private final byte[] roomData;
+        private final byte[] worldMap;
+
+        Chunk(byte[] roomData, byte[] worldMap)
+        {
+            this.roomData = roomData;
+            this.worldMap = worldMap;
+        }
+    }
+}